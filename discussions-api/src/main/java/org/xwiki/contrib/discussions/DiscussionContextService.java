@@ -20,8 +20,11 @@
 package org.xwiki.contrib.discussions;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.discussions.domain.Discussion;
@@ -126,6 +129,42 @@ public interface DiscussionContextService
      */
     List<DiscussionContext> findByDiscussionReference(DiscussionReference reference);
 
+    /**
+     * Returns the entity references of the discussion contexts of a given type linked to a discussion, without
+     * loading the discussion contexts.
+     *
+     * @param reference the discussion reference
+     * @param entityReferenceType the type of the entity references of the discussion contexts
+     * @param offset the offset
+     * @param limit the limit, {@code 0} for no limit
+     * @return the distinct entity references, sorted
+     * @since 3.2.1
+     */
+    default List<String> findEntityReferencesByDiscussionReference(DiscussionReference reference,
+        String entityReferenceType, int offset, int limit)
+    {
+        Stream<String> entityReferences = getEntityReferences(reference, entityReferenceType).skip(offset);
+        if (limit > 0) {
+            entityReferences = entityReferences.limit(limit);
+        }
+        return entityReferences.collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the number of distinct entity references of the discussion contexts of a given type linked to a
+     * discussion, without loading the discussion contexts.
+     *
+     * @param reference the reference of the discussion
+     * @param entityReferenceType the type of the entity references of the discussion contexts
+     * @return the number of distinct entity references
+     * @since 3.2.1
+     */
+    default long countEntityReferencesByDiscussionReference(DiscussionReference reference,
+        String entityReferenceType)
+    {
+        return getEntityReferences(reference, entityReferenceType).count();
+    }
+
     /**
      * @return {@code true} if the current actor can create a discussion context, {@code false} otherwise
      */
@@ -147,4 +186,15 @@ public interface DiscussionContextService
      * @return {@code true} if the metadata was properly saved.
      */
     boolean saveMetadata(DiscussionContext context, Map<String, String> values);
+
+    private Stream<String> getEntityReferences(DiscussionReference reference, String entityReferenceType)
+    {
+        // By default, the discussion contexts are loaded.
+        return findByDiscussionReference(reference).stream()
+            .map(DiscussionContext::getEntityReference)
+            .filter(entityReference -> Objects.equals(entityReferenceType, entityReference.getType()))
+            .map(DiscussionContextEntityReference::getReference)
+            .distinct()
+            .sorted();
+    }
 }
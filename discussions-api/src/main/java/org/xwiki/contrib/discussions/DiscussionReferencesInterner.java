@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.ActorReference;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Shares a single instance between the equal references, so that the references loaded many times (e.g., the
+ * discussion and the authors of the messages of a discussion) are not duplicated in memory. The instances are only
+ * kept as long as they are used elsewhere.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+@Role
+public interface DiscussionReferencesInterner
+{
+    /**
+     * @param reference a reference
+     * @param <T> the type of the reference
+     * @return the shared instance equal to the given reference, which is the given reference if none was shared yet
+     */
+    <T extends AbstractDiscussionReference> T intern(T reference);
+
+    /**
+     * @param reference an actor reference
+     * @return the shared instance equal to the given reference, which is the given reference if none was shared yet
+     */
+    ActorReference intern(ActorReference reference);
+}
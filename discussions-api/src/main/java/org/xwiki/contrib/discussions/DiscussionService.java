@@ -24,6 +24,7 @@ import java.util.Optional;
 
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.DiscussionsPage;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
@@ -114,6 +115,24 @@ public interface DiscussionService
      */
     List<Discussion> findByEntityReferences(String type, List<String> references, Integer offset, Integer limit);
 
+    /**
+     * Find a page of the discussions linked to discussion contexts with the given entity references, along with the
+     * total number of discussions.
+     *
+     * @param type the entity reference type
+     * @param references the entity reference values
+     * @param offset the offset
+     * @param limit the limit
+     * @return the paginated list of discussions and the total number of discussions
+     * @since 3.2.1
+     */
+    default DiscussionsPage findPageByEntityReferences(String type, List<String> references, Integer offset,
+        Integer limit)
+    {
+        return new DiscussionsPage(findByEntityReferences(type, references, offset, limit),
+            countByEntityReferences(type, references));
+    }
+
     /**
      * Set the update date of the discussion to now.
      *
@@ -19,11 +19,19 @@
  */
 package org.xwiki.contrib.discussions;
 
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.discussions.domain.ActorDescriptor;
+import org.xwiki.contrib.discussions.domain.ActorsPage;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 
 /**
@@ -43,6 +51,23 @@ public interface DiscussionsActorService
      */
     Optional<ActorDescriptor> resolve(String reference);
 
+    /**
+     * Returns the actor descriptors of several actor references. Each distinct reference is resolved once.
+     *
+     * @param references the actor references
+     * @return the actor descriptors, by actor reference, in the order of the given references, without the actors
+     *     whose resolution failed
+     * @since 3.2.1
+     */
+    default Map<String, ActorDescriptor> resolveAll(Collection<String> references)
+    {
+        Map<String, ActorDescriptor> actorDescriptors = new LinkedHashMap<>();
+        for (String reference : new LinkedHashSet<>(references)) {
+            resolve(reference).ifPresent(it -> actorDescriptors.put(reference, it));
+        }
+        return actorDescriptors;
+    }
+
     /**
      * Returns the list of actors involved in a discussion. The definition of this involvement is up to interpretation
      * and can be implemented freely by services that implement this role.
@@ -52,6 +77,25 @@ public interface DiscussionsActorService
      */
     Stream<ActorDescriptor> listUsers(DiscussionReference discussionReference);
 
+    /**
+     * Returns a page of the actors involved in a discussion, along with the total number of actors. The order of the
+     * actors is defined by the implementation, the default implementation sorts them by name.
+     *
+     * @param discussionReference the discussion reference
+     * @param offset the offset of the first actor of the page
+     * @param limit the maximum number of actors of the page, or {@code 0} to get all of them
+     * @return the page of the actors involved in the discussion
+     * @since 3.2.1
+     */
+    default ActorsPage listUsers(DiscussionReference discussionReference, int offset, int limit)
+    {
+        List<ActorDescriptor> users = listUsers(discussionReference)
+            .sorted(Comparator.comparing(ActorDescriptor::getName))
+            .collect(Collectors.toList());
+        int end = limit > 0 ? Math.min(users.size(), offset + limit) : users.size();
+        return new ActorsPage(users.subList(Math.min(offset, end), end), users.size());
+    }
+
     /**
      * Returns the number of users involved in a discussion.
      *
@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Provides metrics about the dispatch of the discussions events on the current cluster node, to monitor whether the
+ * asynchronous dispatch keeps up with the events sent.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+@Role
+public interface DiscussionsEventsMetrics
+{
+    /**
+     * @return the number of events dispatched asynchronously since the startup
+     */
+    long getAsyncCount();
+
+    /**
+     * @return the number of events dispatched in the thread which sent them because the queue was full
+     */
+    long getCallerRunsCount();
+
+    /**
+     * @return the number of events waiting to be dispatched
+     */
+    int getQueueSize();
+}
@@ -19,9 +19,15 @@
  */
 package org.xwiki.contrib.discussions;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.MessagePermissions;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.security.authorization.RuleState;
@@ -70,6 +76,28 @@ public interface DiscussionsRightService
      */
     boolean canDeleteMessage(Message message, DocumentReference discussion);
 
+    /**
+     * Evaluates the permissions of the current user on messages of the same discussion. The rights on the discussion
+     * are only evaluated once for all the messages.
+     *
+     * @param messages the messages
+     * @param discussion the discussion page
+     * @return the permissions of the current user, by message reference
+     * @since 3.2.1
+     */
+    default Map<MessageReference, MessagePermissions> getMessagePermissions(List<Message> messages,
+        DocumentReference discussion)
+    {
+        int discussionBits = (canWriteDiscussion(discussion) ? MessagePermissions.WRITE : 0)
+            | (isAdminDiscussion(discussion) ? MessagePermissions.ADMIN : 0);
+        Map<MessageReference, MessagePermissions> permissions = new LinkedHashMap<>();
+        for (Message message : messages) {
+            permissions.put(message.getReference(), new MessagePermissions(
+                discussionBits | (canDeleteMessage(message, discussion) ? MessagePermissions.DELETE : 0)));
+        }
+        return permissions;
+    }
+
     /**
      * @param discussion the discussion
      * @return {@code} true if the current user is an administrator of the discussion, {@code} false otherwise
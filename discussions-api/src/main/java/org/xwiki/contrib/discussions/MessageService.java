@@ -19,12 +19,25 @@
  */
 package org.xwiki.contrib.discussions;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.MessagePermissions;
+import org.xwiki.contrib.discussions.domain.ThreadedMessage;
 import org.xwiki.contrib.discussions.domain.references.ActorReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
@@ -109,6 +122,22 @@ public interface MessageService
      */
     Optional<Message> getByReference(MessageReference reference);
 
+    /**
+     * Get messages by their unique references, loading them in batch.
+     *
+     * @param references the references
+     * @return the messages found, by reference, in the order of the given references
+     * @since 3.2.1
+     */
+    default Map<MessageReference, Message> getByReferences(Collection<MessageReference> references)
+    {
+        Map<MessageReference, Message> messages = new LinkedHashMap<>();
+        for (MessageReference reference : references) {
+            getByReference(reference).ifPresent(message -> messages.put(reference, message));
+        }
+        return messages;
+    }
+
     /**
      * Returns the paginated list of messages of the discussion.
      *
@@ -119,6 +148,92 @@ public interface MessageService
      */
     List<Message> getByDiscussion(DiscussionReference discussionReference, int offset, int limit);
 
+    /**
+     * Returns the messages of the discussion following the given message. The messages are ordered by update date,
+     * then by reference, and the last message of a page is used as the cursor of the next one.
+     *
+     * @param discussionReference the discussion reference
+     * @param after the last message of the previous page, or {@code null} to get the first page
+     * @param limit the maximum number of messages to return
+     * @return the list of messages
+     * @since 3.2.1
+     */
+    default List<Message> getByDiscussionAfter(DiscussionReference discussionReference, Message after, int limit)
+    {
+        // By default, the whole discussion is loaded (no limit), and the page is selected in memory.
+        Comparator<Message> order = Comparator.comparing(Message::getUpdateDate)
+            .thenComparing(message -> message.getReference().getReference());
+        List<Message> messages = new ArrayList<>(getByDiscussion(discussionReference, 0, 0));
+        messages.sort(order);
+        Stream<Message> page = messages.stream();
+        if (after != null) {
+            page = page.filter(message -> order.compare(message, after) > 0);
+        }
+        if (limit > 0) {
+            page = page.limit(limit);
+        }
+        return page.collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the messages of the discussion, assembled as reply trees. The thread is paginated by root message: the
+     * roots are the messages which are not replies, or reply to a message which no longer exists, ordered like
+     * {@link #getByDiscussion(DiscussionReference, int, int)}. Each root comes with all its replies.
+     *
+     * @param discussionReference the discussion reference
+     * @param offset the offset of the first root message
+     * @param limit the maximum number of root messages, or {@code 0} to get all of them
+     * @param maxDepth the maximum depth of the replies (at least {@code 1}), the replies nested deeper are flattened
+     *     at this depth, after their ancestor
+     * @return the root messages, with their replies
+     * @since 3.2.1
+     */
+    default List<ThreadedMessage> getThread(DiscussionReference discussionReference, int offset, int limit,
+        int maxDepth)
+    {
+        // By default, the whole discussion is loaded (no limit), and the thread is assembled in memory.
+        List<Message> messages = getByDiscussion(discussionReference, 0, 0);
+        Set<MessageReference> references = new HashSet<>();
+        messages.forEach(message -> references.add(message.getReference()));
+        List<Message> roots = new ArrayList<>();
+        Map<MessageReference, List<Message>> repliesByParent = new HashMap<>();
+        for (Message message : messages) {
+            if (message.getReplyTo() == null || !references.contains(message.getReplyTo())) {
+                roots.add(message);
+            } else {
+                repliesByParent.computeIfAbsent(message.getReplyTo(), key -> new ArrayList<>()).add(message);
+            }
+        }
+
+        List<ThreadedMessage> thread = new ArrayList<>();
+        // The node each reply is attached to, by reference of the message it replies to.
+        Map<MessageReference, ThreadedMessage> parents = new LinkedHashMap<>();
+        int end = limit > 0 ? Math.min(roots.size(), offset + limit) : roots.size();
+        for (Message root : roots.subList(Math.min(offset, end), end)) {
+            ThreadedMessage rootNode = new ThreadedMessage(root, 0);
+            thread.add(rootNode);
+            parents.put(root.getReference(), rootNode);
+        }
+        // Guards against a reply cycle stored in the database.
+        Set<MessageReference> visited = new HashSet<>(parents.keySet());
+        int depth = Math.max(1, maxDepth);
+        while (!parents.isEmpty()) {
+            Map<MessageReference, ThreadedMessage> nextParents = new LinkedHashMap<>();
+            parents.forEach((reference, parent) -> {
+                for (Message reply : repliesByParent.getOrDefault(reference, Collections.emptyList())) {
+                    if (visited.add(reply.getReference())) {
+                        ThreadedMessage replyNode = new ThreadedMessage(reply, parent.getDepth() + 1);
+                        parent.getReplies().add(replyNode);
+                        // At the maximum depth, the replies to the reply are attached next to it.
+                        nextParents.put(reply.getReference(), replyNode.getDepth() < depth ? replyNode : parent);
+                    }
+                }
+            });
+            parents = nextParents;
+        }
+        return thread;
+    }
+
     /**
      * Returns the count of messages of a discussion.
      *
@@ -127,6 +242,23 @@ public interface MessageService
      */
     long countByDiscussion(Discussion discussion);
 
+    /**
+     * Count the number of messages of several discussions. The discussions whose count is not already known are
+     * counted with a single grouped query on the messages.
+     *
+     * @param discussions the discussions
+     * @return the number of messages, by discussion reference, in the order of the given discussions
+     * @since 3.2.1
+     */
+    default Map<DiscussionReference, Long> countByDiscussions(Collection<Discussion> discussions)
+    {
+        Map<DiscussionReference, Long> counts = new LinkedHashMap<>();
+        for (Discussion discussion : discussions) {
+            counts.put(discussion.getReference(), countByDiscussion(discussion));
+        }
+        return counts;
+    }
+
     /**
      * Checks if the message can be deleted by the current user.
      *
@@ -135,6 +267,25 @@ public interface MessageService
      */
     boolean canDelete(Message message);
 
+    /**
+     * Evaluates the permissions of the current user on a list of messages. The holder of each discussion is resolved
+     * once, and the rights on it evaluated once, for all its messages. By default, only the permission to delete
+     * each message is evaluated, with {@link #canDelete(Message)}.
+     *
+     * @param messages the messages
+     * @return the permissions of the current user, by message reference
+     * @since 3.2.1
+     */
+    default Map<MessageReference, MessagePermissions> getPermissions(List<Message> messages)
+    {
+        Map<MessageReference, MessagePermissions> permissions = new LinkedHashMap<>();
+        for (Message message : messages) {
+            permissions.put(message.getReference(), new MessagePermissions(canDelete(message)
+                ? MessagePermissions.DELETE : 0));
+        }
+        return permissions;
+    }
+
     /**
      * Delete a message.
      *
@@ -150,6 +301,22 @@ public interface MessageService
      */
     String renderContent(MessageReference messageReference);
 
+    /**
+     * Safely renders the contents of several messages. The message objects are loaded in batch.
+     *
+     * @param messageReferences the references of the messages to render
+     * @return the results of the renderings in html, by message reference, in the order of the given references
+     * @since 3.2.1
+     */
+    default Map<MessageReference, String> renderContents(Collection<MessageReference> messageReferences)
+    {
+        Map<MessageReference, String> renderedContents = new LinkedHashMap<>();
+        for (MessageReference messageReference : messageReferences) {
+            renderedContents.put(messageReference, renderContent(messageReference));
+        }
+        return renderedContents;
+    }
+
     /**
      * Load a message object by its entity reference.
      *
@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.domain;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.xwiki.stability.Unstable;
+import org.xwiki.text.XWikiToStringBuilder;
+
+/**
+ * A page of the actors involved in a discussion, along with the total number of actors.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+public class ActorsPage
+{
+    private final List<ActorDescriptor> actors;
+
+    private final long total;
+
+    /**
+     * Default constructor.
+     *
+     * @param actors the actors of the page
+     * @param total the total number of actors
+     */
+    public ActorsPage(List<ActorDescriptor> actors, long total)
+    {
+        this.actors = Collections.unmodifiableList(actors);
+        this.total = total;
+    }
+
+    /**
+     * @return the actors of the page
+     */
+    public List<ActorDescriptor> getActors()
+    {
+        return this.actors;
+    }
+
+    /**
+     * @return the total number of actors
+     */
+    public long getTotal()
+    {
+        return this.total;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        ActorsPage that = (ActorsPage) o;
+
+        return new EqualsBuilder()
+            .append(this.total, that.total)
+            .append(this.actors, that.actors)
+            .isEquals();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder(17, 37)
+            .append(this.actors)
+            .append(this.total)
+            .toHashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return new XWikiToStringBuilder(this)
+            .append("actors", this.actors)
+            .append("total", this.total)
+            .toString();
+    }
+}
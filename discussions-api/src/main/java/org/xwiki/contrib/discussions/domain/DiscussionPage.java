@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.domain;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.stability.Unstable;
+import org.xwiki.text.XWikiToStringBuilder;
+
+/**
+ * A page of messages of a discussion, with everything needed to display them, assembled at once.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+public class DiscussionPage
+{
+    private final Discussion discussion;
+
+    private final String reference;
+
+    private final long messageCount;
+
+    private final int pageIndex;
+
+    private final List<DiscussionPageMessage> messages;
+
+    private final String nextCursor;
+
+    /**
+     * Default constructor.
+     *
+     * @param discussion the discussion
+     * @param reference the serialized reference of the discussion
+     * @param messageCount the total number of messages of the discussion
+     * @param pageIndex the index of the page, or {@code -1} when the page follows a cursor
+     * @param messages the messages of the page
+     * @param nextCursor the cursor of the next page, or {@code null} if this is the last page
+     */
+    public DiscussionPage(Discussion discussion, String reference, long messageCount, int pageIndex,
+        List<DiscussionPageMessage> messages, String nextCursor)
+    {
+        this.discussion = discussion;
+        this.reference = reference;
+        this.messageCount = messageCount;
+        this.pageIndex = pageIndex;
+        this.messages = Collections.unmodifiableList(messages);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the discussion
+     */
+    public Discussion getDiscussion()
+    {
+        return this.discussion;
+    }
+
+    /**
+     * @return the serialized reference of the discussion
+     */
+    public String getReference()
+    {
+        return this.reference;
+    }
+
+    /**
+     * @return the total number of messages of the discussion
+     */
+    public long getMessageCount()
+    {
+        return this.messageCount;
+    }
+
+    /**
+     * @return the index of the page, or {@code -1} when the page follows a cursor
+     */
+    public int getPageIndex()
+    {
+        return this.pageIndex;
+    }
+
+    /**
+     * @return the messages of the page
+     */
+    public List<DiscussionPageMessage> getMessages()
+    {
+        return this.messages;
+    }
+
+    /**
+     * @return the cursor of the next page, or {@code null} if this is the last page
+     */
+    public String getNextCursor()
+    {
+        return this.nextCursor;
+    }
+
+    @Override
+    public String toString()
+    {
+        return new XWikiToStringBuilder(this)
+            .append("reference", this.reference)
+            .append("messageCount", this.messageCount)
+            .append("pageIndex", this.pageIndex)
+            .append("messages", this.messages)
+            .append("nextCursor", this.nextCursor)
+            .toString();
+    }
+}
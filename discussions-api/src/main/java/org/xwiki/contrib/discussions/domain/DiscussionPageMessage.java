@@ -0,0 +1,112 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.domain;
+
+import org.xwiki.stability.Unstable;
+import org.xwiki.text.XWikiToStringBuilder;
+
+/**
+ * A message of a {@link DiscussionPage}, with everything needed to display it.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+public class DiscussionPageMessage
+{
+    private final Message message;
+
+    private final String reference;
+
+    private final String renderedContent;
+
+    private final ActorDescriptor actor;
+
+    private final MessagePermissions permissions;
+
+    /**
+     * Default constructor.
+     *
+     * @param message the message
+     * @param reference the serialized reference of the message
+     * @param renderedContent the content of the message rendered to HTML
+     * @param actor the descriptor of the author of the message, or {@code null} if it could not be resolved
+     * @param permissions the permissions of the current user on the message
+     */
+    public DiscussionPageMessage(Message message, String reference, String renderedContent, ActorDescriptor actor,
+        MessagePermissions permissions)
+    {
+        this.message = message;
+        this.reference = reference;
+        this.renderedContent = renderedContent;
+        this.actor = actor;
+        this.permissions = permissions;
+    }
+
+    /**
+     * @return the message
+     */
+    public Message getMessage()
+    {
+        return this.message;
+    }
+
+    /**
+     * @return the serialized reference of the message
+     */
+    public String getReference()
+    {
+        return this.reference;
+    }
+
+    /**
+     * @return the content of the message rendered to HTML
+     */
+    public String getRenderedContent()
+    {
+        return this.renderedContent;
+    }
+
+    /**
+     * @return the descriptor of the author of the message, or {@code null} if it could not be resolved
+     */
+    public ActorDescriptor getActor()
+    {
+        return this.actor;
+    }
+
+    /**
+     * @return the permissions of the current user on the message
+     */
+    public MessagePermissions getPermissions()
+    {
+        return this.permissions;
+    }
+
+    @Override
+    public String toString()
+    {
+        return new XWikiToStringBuilder(this)
+            .append("reference", this.reference)
+            .append("actor", this.actor)
+            .append("permissions", this.permissions)
+            .toString();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.domain;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.xwiki.stability.Unstable;
+import org.xwiki.text.XWikiToStringBuilder;
+
+/**
+ * The permissions of the current user on a message, stored as a bitmap.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+public class MessagePermissions
+{
+    /**
+     * Set when the current user can write in the discussion of the message.
+     */
+    public static final int WRITE = 1;
+
+    /**
+     * Set when the current user is an administrator of the discussion of the message.
+     */
+    public static final int ADMIN = 1 << 1;
+
+    /**
+     * Set when the current user can delete the message.
+     */
+    public static final int DELETE = 1 << 2;
+
+    private final int bits;
+
+    /**
+     * Default constructor.
+     *
+     * @param bits the bitmap of permissions, combining {@link #WRITE}, {@link #ADMIN} and {@link #DELETE}
+     */
+    public MessagePermissions(int bits)
+    {
+        this.bits = bits;
+    }
+
+    /**
+     * @return the bitmap of permissions, combining {@link #WRITE}, {@link #ADMIN} and {@link #DELETE}
+     */
+    public int getBits()
+    {
+        return this.bits;
+    }
+
+    /**
+     * @return {@code true} if the current user can write in the discussion of the message, {@code false} otherwise
+     */
+    public boolean canWrite()
+    {
+        return (this.bits & WRITE) != 0;
+    }
+
+    /**
+     * @return {@code true} if the current user is an administrator of the discussion of the message, {@code false}
+     *     otherwise
+     */
+    public boolean isAdmin()
+    {
+        return (this.bits & ADMIN) != 0;
+    }
+
+    /**
+     * @return {@code true} if the current user can delete the message, {@code false} otherwise
+     */
+    public boolean canDelete()
+    {
+        return (this.bits & DELETE) != 0;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        MessagePermissions that = (MessagePermissions) o;
+
+        return new EqualsBuilder()
+            .append(this.bits, that.bits)
+            .isEquals();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder(17, 37)
+            .append(this.bits)
+            .toHashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return new XWikiToStringBuilder(this)
+            .append("write", canWrite())
+            .append("admin", isAdmin())
+            .append("delete", canDelete())
+            .toString();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.xwiki.stability.Unstable;
+import org.xwiki.text.XWikiToStringBuilder;
+
+/**
+ * A message of a discussion thread, with the replies to the message.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+public class ThreadedMessage
+{
+    private final Message message;
+
+    private final int depth;
+
+    private final List<ThreadedMessage> replies = new ArrayList<>();
+
+    /**
+     * Default constructor.
+     *
+     * @param message the message
+     * @param depth the depth of the message in the thread, {@code 0} for the messages which are not replies
+     */
+    public ThreadedMessage(Message message, int depth)
+    {
+        this.message = message;
+        this.depth = depth;
+    }
+
+    /**
+     * @return the message
+     */
+    public Message getMessage()
+    {
+        return this.message;
+    }
+
+    /**
+     * @return the depth of the message in the thread, {@code 0} for the messages which are not replies
+     */
+    public int getDepth()
+    {
+        return this.depth;
+    }
+
+    /**
+     * @return the replies to the message, the list can be modified to add replies while the thread is assembled
+     */
+    public List<ThreadedMessage> getReplies()
+    {
+        return this.replies;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        ThreadedMessage that = (ThreadedMessage) o;
+
+        return new EqualsBuilder()
+            .append(this.message, that.message)
+            .append(this.depth, that.depth)
+            .append(this.replies, that.replies)
+            .isEquals();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder(17, 37)
+            .append(this.message)
+            .append(this.depth)
+            .append(this.replies)
+            .toHashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return new XWikiToStringBuilder(this)
+            .append("message", this.message)
+            .append("depth", this.depth)
+            .append("replies", this.replies)
+            .toString();
+    }
+}
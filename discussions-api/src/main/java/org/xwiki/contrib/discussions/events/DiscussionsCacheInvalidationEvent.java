@@ -0,0 +1,48 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.events;
+
+import java.io.Serializable;
+
+import org.xwiki.observation.event.Event;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Event sent when a discussion or a discussion context is changed, so that the caches of all the cluster nodes remove
+ * it. Its source is the identifier of the wiki of the changed entity, and its data is the
+ * {@link org.xwiki.contrib.discussions.domain.references.DiscussionReference} or the
+ * {@link org.xwiki.contrib.discussions.domain.references.DiscussionContextReference} of the changed entity. Unlike
+ * the ones of the {@link DiscussionsEvent}s, they are serializable, so that the remote observation manager sends the
+ * event to the other cluster nodes.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+public class DiscussionsCacheInvalidationEvent implements Event, Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        return otherEvent instanceof DiscussionsCacheInvalidationEvent;
+    }
+}
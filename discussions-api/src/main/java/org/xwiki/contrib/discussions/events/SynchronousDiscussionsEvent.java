@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.events;
+
+import org.xwiki.observation.event.Event;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Event sent before each {@link DiscussionsEvent}, in the thread which sends it, even when the asynchronous dispatch
+ * of the discussions events is enabled. It is typically listened to by the listeners keeping caches up to date, which
+ * must be done before the sender continues. The source and the data of this event are the ones of the wrapped event,
+ * for instance the changed {@link org.xwiki.contrib.discussions.domain.Message} for a {@link MessageEvent}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+public class SynchronousDiscussionsEvent implements Event
+{
+    private final DiscussionsEvent event;
+
+    /**
+     * Matches all the synchronous discussions events.
+     */
+    public SynchronousDiscussionsEvent()
+    {
+        this(null);
+    }
+
+    /**
+     * @param event the wrapped event, or {@code null} to match all the synchronous discussions events
+     */
+    public SynchronousDiscussionsEvent(DiscussionsEvent event)
+    {
+        this.event = event;
+    }
+
+    /**
+     * @return the wrapped event
+     */
+    public DiscussionsEvent getEvent()
+    {
+        return this.event;
+    }
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        return otherEvent instanceof SynchronousDiscussionsEvent
+            && (this.event == null || this.event.matches(((SynchronousDiscussionsEvent) otherEvent).event));
+    }
+}
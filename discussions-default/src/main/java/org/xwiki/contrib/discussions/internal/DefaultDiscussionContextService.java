@@ -27,6 +27,7 @@ import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.discussions.DiscussionContextService;
 import org.xwiki.contrib.discussions.DiscussionException;
@@ -43,7 +44,7 @@ import org.xwiki.contrib.discussions.events.DiscussionEvent;
 import org.xwiki.contrib.discussions.store.DiscussionContextMetadataStoreService;
 import org.xwiki.contrib.discussions.store.DiscussionContextStoreService;
 import org.xwiki.contrib.discussions.store.DiscussionStoreService;
-import org.xwiki.observation.ObservationManager;
+import org.xwiki.model.reference.DocumentReference;
 
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -66,7 +67,7 @@ import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata
 public class DefaultDiscussionContextService implements DiscussionContextService
 {
     @Inject
-    private ObservationManager observationManager;
+    private DiscussionsEventNotifier discussionsEventNotifier;
 
     @Inject
     private DiscussionContextStoreService discussionContextStoreService;
@@ -83,6 +84,9 @@ public class DefaultDiscussionContextService implements DiscussionContextService
     @Inject
     private DiscussionContextMetadataStoreService discussionContextMetadataStoreService;
 
+    @Inject
+    private DiscussionCache discussionCache;
+
     @Override
     public DiscussionContext create(String applicationHint, String name, String description,
         DiscussionContextEntityReference entityReference,
@@ -92,7 +96,7 @@ public class DefaultDiscussionContextService implements DiscussionContextService
             this.discussionContextStoreService.create(applicationHint, name, description, entityReference,
                 configurationParameters);
         DiscussionContext discussionContext = new DiscussionContext(reference, name, description, entityReference);
-        this.observationManager.notify(new DiscussionContextEvent(CREATE), applicationHint, discussionContext);
+        this.discussionsEventNotifier.notify(new DiscussionContextEvent(CREATE), applicationHint, discussionContext);
         return discussionContext;
     }
 
@@ -106,6 +110,22 @@ public class DefaultDiscussionContextService implements DiscussionContextService
             .collect(Collectors.toList());
     }
 
+    @Override
+    public List<String> findEntityReferencesByDiscussionReference(DiscussionReference reference,
+        String entityReferenceType, int offset, int limit)
+    {
+        return this.discussionContextStoreService.findEntityReferencesByDiscussionReference(reference,
+            entityReferenceType, offset, limit);
+    }
+
+    @Override
+    public long countEntityReferencesByDiscussionReference(DiscussionReference reference,
+        String entityReferenceType)
+    {
+        return this.discussionContextStoreService.countEntityReferencesByDiscussionReference(reference,
+            entityReferenceType);
+    }
+
     @Override
     public boolean canCreateDiscussionContext()
     {
@@ -115,8 +135,8 @@ public class DefaultDiscussionContextService implements DiscussionContextService
     @Override
     public boolean canViewDiscussionContext(DiscussionContextReference reference)
     {
-        return this.discussionContextStoreService.get(reference)
-            .map(o -> this.discussionsRightService.canWriteDiscussionContext(o.getDocumentReference()))
+        return getWithHolder(reference)
+            .map(o -> this.discussionsRightService.canWriteDiscussionContext(o.getRight()))
             .orElse(false);
     }
 
@@ -150,7 +170,7 @@ public class DefaultDiscussionContextService implements DiscussionContextService
         DiscussionContextReference reference = discussionContext.getReference();
         this.discussionContextStoreService
             .updateExistingDiscussionContext(reference, name, description, entityReference);
-        this.observationManager.notify(new DiscussionContextEvent(UPDATE), reference.getApplicationHint(),
+        this.discussionsEventNotifier.notify(new DiscussionContextEvent(UPDATE), reference.getApplicationHint(),
             discussionContext);
     }
 
@@ -166,11 +186,13 @@ public class DefaultDiscussionContextService implements DiscussionContextService
         DiscussionContextReference discussionContextReference = discussionContext.getReference();
         DiscussionReference discussionReference = discussion.getReference();
         String applicationHint = discussionContextReference.getApplicationHint();
-        if (this.discussionContextStoreService.link(discussionContextReference, discussionReference)) {
-            this.observationManager.notify(new DiscussionContextEvent(UPDATE), applicationHint, discussionContext);
-        }
-        if (this.discussionStoreService.link(discussionReference, discussionContextReference)) {
-            this.observationManager.notify(new DiscussionEvent(UPDATE), applicationHint, discussion);
+        // Both stores can share the same link, in which case only the first call creates it.
+        boolean linked = this.discussionContextStoreService.link(discussionContextReference, discussionReference);
+        linked |= this.discussionStoreService.link(discussionReference, discussionContextReference);
+        if (linked) {
+            this.discussionsEventNotifier.notify(new DiscussionContextEvent(UPDATE), applicationHint,
+                discussionContext);
+            this.discussionsEventNotifier.notify(new DiscussionEvent(UPDATE), applicationHint, discussion);
         }
     }
 
@@ -181,21 +203,32 @@ public class DefaultDiscussionContextService implements DiscussionContextService
         DiscussionReference discussionReference = discussion.getReference();
         String applicationHint = discussionContextReference.getApplicationHint();
 
-        if (this.discussionContextStoreService.unlink(discussionContextReference, discussionReference)) {
-            this.observationManager.notify(new DiscussionContextEvent(UPDATE), applicationHint, discussionContext);
-        }
-        if (this.discussionStoreService.unlink(discussionReference, discussionContextReference)) {
-            this.observationManager.notify(new DiscussionEvent(UPDATE), applicationHint, discussion);
+        boolean unlinked = this.discussionContextStoreService.unlink(discussionContextReference, discussionReference);
+        unlinked |= this.discussionStoreService.unlink(discussionReference, discussionContextReference);
+        if (unlinked) {
+            this.discussionsEventNotifier.notify(new DiscussionContextEvent(UPDATE), applicationHint,
+                discussionContext);
+            this.discussionsEventNotifier.notify(new DiscussionEvent(UPDATE), applicationHint, discussion);
         }
     }
 
     @Override
     public Optional<DiscussionContext> get(DiscussionContextReference reference)
     {
-        return this.discussionContextStoreService.get(reference).flatMap(baseObject -> {
+        return getWithHolder(reference).map(Pair::getLeft);
+    }
+
+    private Optional<Pair<DiscussionContext, DocumentReference>> getWithHolder(DiscussionContextReference reference)
+    {
+        Pair<DiscussionContext, DocumentReference> cached = this.discussionCache.getDiscussionContext(reference);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        return this.discussionContextStoreService.get(reference).map(baseObject -> {
             DiscussionContext discussionContext = mapBaseObject(baseObject);
             this.discussionContextMetadataStoreService.loadMetadata(baseObject.getOwnerDocument(), discussionContext);
-            return Optional.of(discussionContext);
+            this.discussionCache.setDiscussionContext(reference, discussionContext, baseObject.getDocumentReference());
+            return Pair.of(discussionContext, baseObject.getDocumentReference());
         });
     }
 
@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.DiscussionReferencesInterner;
+import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.ActorReference;
+
+/**
+ * Default implementation of {@link DiscussionReferencesInterner}, based on weak maps so that the references which are
+ * not used anymore can be garbage collected. The pool is split in independently locked segments to limit the
+ * contention.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component
+@Singleton
+public class DefaultDiscussionReferencesInterner implements DiscussionReferencesInterner
+{
+    private static final int SEGMENTS_COUNT = 16;
+
+    // The values are weak references, since strong values would keep their keys alive.
+    private final Map<Object, WeakReference<Object>>[] segments;
+
+    /**
+     * Default constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public DefaultDiscussionReferencesInterner()
+    {
+        this.segments = new Map[SEGMENTS_COUNT];
+        for (int i = 0; i < SEGMENTS_COUNT; i++) {
+            this.segments[i] = new WeakHashMap<>();
+        }
+    }
+
+    @Override
+    public <T extends AbstractDiscussionReference> T intern(T reference)
+    {
+        return internObject(reference);
+    }
+
+    @Override
+    public ActorReference intern(ActorReference reference)
+    {
+        return internObject(reference);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T internObject(T reference)
+    {
+        if (reference == null) {
+            return null;
+        }
+        Map<Object, WeakReference<Object>> segment =
+            this.segments[Math.floorMod(reference.hashCode(), SEGMENTS_COUNT)];
+        synchronized (segment) {
+            WeakReference<Object> shared = segment.get(reference);
+            Object sharedReference = shared != null ? shared.get() : null;
+            if (sharedReference != null) {
+                return (T) sharedReference;
+            }
+            segment.put(reference, new WeakReference<>(reference));
+            return reference;
+        }
+    }
+}
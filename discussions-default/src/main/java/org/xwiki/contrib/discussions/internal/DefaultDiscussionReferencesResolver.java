@@ -21,8 +21,9 @@ package org.xwiki.contrib.discussions.internal;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -30,8 +31,12 @@ import javax.inject.Singleton;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.DiscussionReferencesInterner;
 import org.xwiki.contrib.discussions.DiscussionReferencesResolver;
 import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
 
 /**
  * Default implementation of {@link DiscussionReferencesResolver} based on the serialization defined in
@@ -45,28 +50,51 @@ import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReferen
 @Singleton
 public class DefaultDiscussionReferencesResolver implements DiscussionReferencesResolver
 {
-    private static final String REFERENCE_PATTERN_REGEX = "^(?<reference>.+);applicationHint=(?<applicationHint>.+)$";
-    private static final Pattern REFERENCE_PATTERN = Pattern.compile(REFERENCE_PATTERN_REGEX);
+    private static final String APPLICATION_HINT_SEPARATOR =
+        DefaultDiscussionReferencesSerializer.APPLICATION_HINT_SEPARATOR;
+
+    private static final Map<Class<?>, BiFunction<String, String, ? extends AbstractDiscussionReference>> FACTORIES =
+        new HashMap<>();
+
+    static {
+        FACTORIES.put(DiscussionReference.class, DiscussionReference::new);
+        FACTORIES.put(DiscussionContextReference.class, DiscussionContextReference::new);
+        FACTORIES.put(MessageReference.class, MessageReference::new);
+    }
 
     @Inject
     private Logger logger;
 
+    @Inject
+    private DiscussionReferencesInterner discussionReferencesInterner;
+
     @Override
     public <T extends AbstractDiscussionReference> T resolve(String serializedReference, Class<T> type)
     {
-        Matcher matcher = REFERENCE_PATTERN.matcher(serializedReference);
         String applicationHint = "";
         String reference = serializedReference;
-        if (matcher.matches()) {
-            applicationHint = matcher.group("applicationHint");
-            reference = matcher.group("reference");
+        // Same as matching "^(.+);applicationHint=(.+)$": the last separator followed by a non-empty hint and preceded
+        // by a non-empty reference.
+        int separatorIndex = serializedReference.lastIndexOf(APPLICATION_HINT_SEPARATOR);
+        int hintLength = serializedReference.length() - separatorIndex - APPLICATION_HINT_SEPARATOR.length();
+        if (separatorIndex >= 0 && hintLength == 0) {
+            separatorIndex = serializedReference.lastIndexOf(APPLICATION_HINT_SEPARATOR, separatorIndex - 1);
+        }
+        if (separatorIndex > 0) {
+            applicationHint = serializedReference.substring(separatorIndex + APPLICATION_HINT_SEPARATOR.length());
+            reference = serializedReference.substring(0, separatorIndex);
         }
 
-        return build(type, applicationHint, reference);
+        return this.discussionReferencesInterner.intern(build(type, applicationHint, reference));
     }
 
     private <T extends AbstractDiscussionReference> T build(Class<T> type, String applicationHint, String reference)
     {
+        BiFunction<String, String, ? extends AbstractDiscussionReference> factory = FACTORIES.get(type);
+        if (factory != null) {
+            return type.cast(factory.apply(applicationHint, reference));
+        }
+        // Fallback for the other types of references.
         Constructor<T> constructor = null;
         try {
             constructor = type.getConstructor(String.class, String.class);
@@ -40,13 +40,23 @@ import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReferen
 @Singleton
 public class DefaultDiscussionReferencesSerializer implements DiscussionReferencesSerializer
 {
+    /**
+     * Separator between the reference and the application hint.
+     */
+    static final String APPLICATION_HINT_SEPARATOR = ";applicationHint=";
+
     @Override
     public String serialize(AbstractDiscussionReference discussionReference)
     {
-        String result = discussionReference.getReference();
-        if (!StringUtils.isEmpty(discussionReference.getApplicationHint())) {
-            result = String.format("%s;applicationHint=%s", result, discussionReference.getApplicationHint());
+        String reference = discussionReference.getReference();
+        String applicationHint = discussionReference.getApplicationHint();
+        if (StringUtils.isEmpty(applicationHint)) {
+            return reference;
         }
-        return result;
+        return new StringBuilder(reference.length() + APPLICATION_HINT_SEPARATOR.length() + applicationHint.length())
+            .append(reference)
+            .append(APPLICATION_HINT_SEPARATOR)
+            .append(applicationHint)
+            .toString();
     }
 }
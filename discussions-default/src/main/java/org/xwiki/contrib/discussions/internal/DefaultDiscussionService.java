@@ -27,6 +27,7 @@ import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.discussions.DiscussionException;
 import org.xwiki.contrib.discussions.DiscussionReferencesResolver;
@@ -34,13 +35,14 @@ import org.xwiki.contrib.discussions.DiscussionService;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
 import org.xwiki.contrib.discussions.DiscussionsRightService;
 import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.DiscussionsPage;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.events.DiscussionEvent;
 import org.xwiki.contrib.discussions.store.DiscussionContextStoreService;
 import org.xwiki.contrib.discussions.store.DiscussionStoreService;
-import org.xwiki.observation.ObservationManager;
+import org.xwiki.model.reference.DocumentReference;
 
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -63,7 +65,7 @@ import static org.xwiki.contrib.discussions.store.meta.DiscussionMetadata.UPDATE
 public class DefaultDiscussionService implements DiscussionService
 {
     @Inject
-    private ObservationManager observationManager;
+    private DiscussionsEventNotifier discussionsEventNotifier;
 
     @Inject
     private DiscussionStoreService discussionStoreService;
@@ -77,6 +79,9 @@ public class DefaultDiscussionService implements DiscussionService
     @Inject
     private DiscussionReferencesResolver discussionReferencesResolver;
 
+    @Inject
+    private DiscussionCache discussionCache;
+
     @Override
     public Discussion create(String applicationHint, String title, String description, String mainDocument,
         DiscussionStoreConfigurationParameters configurationParameters) throws DiscussionException
@@ -84,7 +89,7 @@ public class DefaultDiscussionService implements DiscussionService
         BaseObject baseObject = this.discussionStoreService.create(applicationHint, title, description, mainDocument,
             configurationParameters);
         Discussion discussion = this.mapBaseObject(baseObject);
-        this.observationManager.notify(new DiscussionEvent(CREATE), applicationHint, discussion);
+        this.discussionsEventNotifier.notify(new DiscussionEvent(CREATE), applicationHint, discussion);
         return discussion;
     }
 
@@ -115,21 +120,34 @@ public class DefaultDiscussionService implements DiscussionService
     @Override
     public Optional<Discussion> get(DiscussionReference reference)
     {
-        return this.discussionStoreService.get(reference).map(this::mapBaseObject);
+        return getWithHolder(reference).map(Pair::getLeft);
     }
 
     @Override
     public boolean canRead(DiscussionReference reference)
     {
-        return this.discussionStoreService.get(reference)
-            .map(d -> this.discussionsRightService.canReadDiscussion(d.getDocumentReference())).orElse(false);
+        return getWithHolder(reference)
+            .map(d -> this.discussionsRightService.canReadDiscussion(d.getRight())).orElse(false);
     }
 
     @Override
     public boolean canWrite(DiscussionReference reference)
     {
-        return this.discussionStoreService.get(reference)
-            .map(d -> this.discussionsRightService.canWriteDiscussion(d.getDocumentReference())).orElse(false);
+        return getWithHolder(reference)
+            .map(d -> this.discussionsRightService.canWriteDiscussion(d.getRight())).orElse(false);
+    }
+
+    private Optional<Pair<Discussion, DocumentReference>> getWithHolder(DiscussionReference reference)
+    {
+        Pair<Discussion, DocumentReference> cached = this.discussionCache.getDiscussion(reference);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        return this.discussionStoreService.get(reference).map(baseObject -> {
+            Discussion discussion = mapBaseObject(baseObject);
+            this.discussionCache.setDiscussion(reference, discussion, baseObject.getDocumentReference());
+            return Pair.of(discussion, baseObject.getDocumentReference());
+        });
     }
 
     @Override
@@ -157,11 +175,23 @@ public class DefaultDiscussionService implements DiscussionService
             .collect(Collectors.toList());
     }
 
+    @Override
+    public DiscussionsPage findPageByEntityReferences(String type, List<String> references, Integer offset,
+        Integer limit)
+    {
+        Pair<Long, List<BaseObject>> page =
+            this.discussionStoreService.findPageByEntityReferences(type, references, offset, limit);
+        return new DiscussionsPage(page.getRight().stream().map(this::mapBaseObject).collect(Collectors.toList()),
+            page.getLeft());
+    }
+
     @Override
     public void touch(DiscussionReference discussionReference)
     {
         this.discussionStoreService.touch(discussionReference);
-        this.get(discussionReference).ifPresent(discussion -> this.observationManager
+        // The update date of the cached discussion is outdated.
+        this.discussionCache.removeDiscussion(discussionReference);
+        this.get(discussionReference).ifPresent(discussion -> this.discussionsEventNotifier
                 .notify(new DiscussionEvent(UPDATE), discussionReference.getApplicationHint(), discussion));
     }
 
@@ -180,9 +210,7 @@ public class DefaultDiscussionService implements DiscussionService
     @Override
     public boolean canViewDiscussion(DiscussionReference reference)
     {
-        return this.discussionStoreService.get(reference)
-            .map(o -> this.discussionsRightService.canReadDiscussion(o.getDocumentReference()))
-            .orElse(false);
+        return canRead(reference);
     }
 
     private Discussion mapBaseObject(BaseObject baseObject)
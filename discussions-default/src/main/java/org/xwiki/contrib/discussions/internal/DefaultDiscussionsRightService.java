@@ -19,6 +19,9 @@
  */
 package org.xwiki.contrib.discussions.internal;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import javax.inject.Inject;
@@ -31,6 +34,8 @@ import org.xwiki.component.phase.InitializationException;
 import org.xwiki.contrib.discussions.DiscussionsRightService;
 import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.MessagePermissions;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
 import org.xwiki.contrib.discussions.internal.rights.AdminDiscussionRight;
 import org.xwiki.contrib.discussions.internal.rights.ReadDiscussionRight;
 import org.xwiki.contrib.discussions.internal.rights.WriteDiscussionRight;
@@ -55,6 +60,8 @@ import com.xpn.xwiki.XWikiContext;
 @Singleton
 public class DefaultDiscussionsRightService implements DiscussionsRightService, Initializable
 {
+    private static final String USER_ACTOR_TYPE = "user";
+
     @Inject
     private AuthorizationManager authorizationManager;
 
@@ -126,7 +133,7 @@ public class DefaultDiscussionsRightService implements DiscussionsRightService,
         // Or the current user is an administrator of the discussion.
         DocumentReference userReference = this.xcontextProvider.get().getUserReference();
         String serialize = this.entityReferenceSerializer.serialize(userReference);
-        boolean isLocalUser = Objects.equals(message.getActorReference().getType(), "user");
+        boolean isLocalUser = Objects.equals(message.getActorReference().getType(), USER_ACTOR_TYPE);
         if (isLocalUser) {
             boolean isAuthor = Objects.equals(message.getActorReference().getReference(), serialize);
             if (isAuthor && this.canWriteDiscussion(discussion)) {
@@ -137,6 +144,30 @@ public class DefaultDiscussionsRightService implements DiscussionsRightService,
         return false;
     }
 
+    @Override
+    public Map<MessageReference, MessagePermissions> getMessagePermissions(List<Message> messages,
+        DocumentReference discussion)
+    {
+        Map<MessageReference, MessagePermissions> permissions = new LinkedHashMap<>();
+        if (messages.isEmpty()) {
+            return permissions;
+        }
+        // Same rules as canDeleteMessage, with the rights on the discussion evaluated once.
+        String serializedUser =
+            this.entityReferenceSerializer.serialize(this.xcontextProvider.get().getUserReference());
+        boolean write = this.canWriteDiscussion(discussion);
+        boolean admin = this.isAdminDiscussion(discussion);
+        int discussionBits = (write ? MessagePermissions.WRITE : 0) | (admin ? MessagePermissions.ADMIN : 0);
+        for (Message message : messages) {
+            boolean isLocalUser = Objects.equals(message.getActorReference().getType(), USER_ACTOR_TYPE);
+            boolean isAuthor = Objects.equals(message.getActorReference().getReference(), serializedUser);
+            boolean delete = isLocalUser && ((isAuthor && write) || admin);
+            permissions.put(message.getReference(),
+                new MessagePermissions(discussionBits | (delete ? MessagePermissions.DELETE : 0)));
+        }
+        return permissions;
+    }
+
     @Override
     public boolean isAdminDiscussion(DocumentReference discussion)
     {
@@ -19,19 +19,31 @@
  */
 package org.xwiki.contrib.discussions.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.discussions.DiscussionException;
+import org.xwiki.contrib.discussions.DiscussionReferencesInterner;
 import org.xwiki.contrib.discussions.DiscussionReferencesResolver;
 import org.xwiki.contrib.discussions.DiscussionService;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
@@ -40,6 +52,8 @@ import org.xwiki.contrib.discussions.MessageService;
 import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
 import org.xwiki.contrib.discussions.domain.MessageContent;
+import org.xwiki.contrib.discussions.domain.MessagePermissions;
+import org.xwiki.contrib.discussions.domain.ThreadedMessage;
 import org.xwiki.contrib.discussions.domain.references.ActorReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
@@ -49,10 +63,12 @@ import org.xwiki.contrib.discussions.store.MessageStoreService;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.EntityReferenceSerializer;
-import org.xwiki.observation.ObservationManager;
 import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.transformation.RenderingContext;
+import org.xwiki.user.UserReferenceSerializer;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
 import static org.xwiki.contrib.discussions.events.ActionType.CREATE;
@@ -78,6 +94,10 @@ public class DefaultMessageService implements MessageService
 {
     private static final String DEFAULT_ACTOR_TYPE = "user";
 
+    private static final String DISPLAY_CONTEXT_KEY = "display";
+
+    private static final String IN_RENDERING_ENGINE_CONTEXT_KEY = "isInRenderingEngine";
+
     @Inject
     private DiscussionsRightService discussionsRightService;
 
@@ -97,11 +117,27 @@ public class DefaultMessageService implements MessageService
     private EntityReferenceSerializer<String> entityReferenceSerializer;
 
     @Inject
-    private ObservationManager observationManager;
+    private DiscussionsEventNotifier discussionsEventNotifier;
 
     @Inject
     private DiscussionReferencesResolver discussionReferencesResolver;
 
+    @Inject
+    private DiscussionReferencesInterner discussionReferencesInterner;
+
+    @Inject
+    private DiscussionCache discussionCache;
+
+    @Inject
+    private RenderingContext renderingContext;
+
+    @Inject
+    private SkinExtensionsRecorder skinExtensionsRecorder;
+
+    @Inject
+    @Named("document")
+    private UserReferenceSerializer<DocumentReference> documentUserReferenceSerializer;
+
     @Override
     public Message create(String content, Syntax syntax, DiscussionReference discussionReference,
         DiscussionStoreConfigurationParameters configurationParameters) throws DiscussionException
@@ -141,7 +177,8 @@ public class DefaultMessageService implements MessageService
         this.discussionService.touch(discussionReference);
         Message result = createMessage(baseObject, discussionReference);
         if (notify) {
-            this.observationManager.notify(new MessageEvent(CREATE), discussionReference.getApplicationHint(), result);
+            this.discussionsEventNotifier.notify(new MessageEvent(CREATE), discussionReference.getApplicationHint(),
+                result);
         }
         return result;
     }
@@ -160,7 +197,8 @@ public class DefaultMessageService implements MessageService
         this.discussionService.touch(discussionReference);
         Message result = createMessage(baseObject, discussionReference);
         if (notify) {
-            this.observationManager.notify(new MessageEvent(CREATE), discussionReference.getApplicationHint(), result);
+            this.discussionsEventNotifier.notify(new MessageEvent(CREATE), discussionReference.getApplicationHint(),
+                result);
         }
         return result;
     }
@@ -191,21 +229,112 @@ public class DefaultMessageService implements MessageService
             });
     }
 
+    @Override
+    public Map<MessageReference, Message> getByReferences(Collection<MessageReference> references)
+    {
+        Map<MessageReference, Message> messages = new LinkedHashMap<>();
+        // The messages of a batch usually belong to a few discussions, which are resolved only once.
+        Map<String, Optional<Discussion>> discussions = new HashMap<>();
+        this.messageStoreService.getByReferences(references).forEach((reference, messageObject) -> {
+            Optional<Discussion> discussion =
+                discussions.computeIfAbsent(messageObject.getStringValue(DISCUSSION_REFERENCE_NAME),
+                    serializedReference -> this.discussionService.get(
+                        this.discussionReferencesResolver.resolve(serializedReference, DiscussionReference.class)));
+            discussion.ifPresent(it -> messages.put(reference, convertToMessage(it).apply(messageObject)));
+        });
+        return messages;
+    }
+
     @Override
     public List<Message> getByDiscussion(DiscussionReference discussionReference, int offset, int limit)
     {
         return this.discussionService.get(discussionReference)
-            .map(discussion -> this.messageStoreService.getByDiscussion(discussionReference, offset, limit)
-                .stream()
-                .map(convertToMessage(discussion))
-                .collect(Collectors.toList()))
+            .map(discussion -> this.messageStoreService.getMessagesByDiscussion(discussion, offset, limit))
+            .orElse(Collections.emptyList());
+    }
+
+    @Override
+    public List<Message> getByDiscussionAfter(DiscussionReference discussionReference, Message after, int limit)
+    {
+        return this.discussionService.get(discussionReference)
+            .map(discussion -> this.messageStoreService.getMessagesByDiscussionAfter(discussion, after, limit))
             .orElse(Collections.emptyList());
     }
 
+    @Override
+    public List<ThreadedMessage> getThread(DiscussionReference discussionReference, int offset, int limit,
+        int maxDepth)
+    {
+        return this.discussionService.get(discussionReference)
+            .map(discussion -> assembleThread(discussion, offset, limit, Math.max(1, maxDepth)))
+            .orElse(Collections.emptyList());
+    }
+
+    private List<ThreadedMessage> assembleThread(Discussion discussion, int offset, int limit, int maxDepth)
+    {
+        // Only the page of roots is loaded, then their replies are loaded level by level, with a query per level.
+        List<ThreadedMessage> thread = new ArrayList<>();
+        // The node each reply is attached to, by reference of the message it replies to.
+        Map<MessageReference, ThreadedMessage> parents = new LinkedHashMap<>();
+        for (Message root : this.messageStoreService.getRootMessagesByDiscussion(discussion, offset, limit)) {
+            ThreadedMessage rootNode = new ThreadedMessage(root, 0);
+            thread.add(rootNode);
+            parents.put(root.getReference(), rootNode);
+        }
+        // Guards against a reply cycle stored in the database.
+        Set<MessageReference> visited = new HashSet<>(parents.keySet());
+        while (!parents.isEmpty()) {
+            Map<MessageReference, ThreadedMessage> nextParents = new LinkedHashMap<>();
+            for (Message reply : this.messageStoreService.getRepliesByMessages(discussion, parents.keySet())) {
+                ThreadedMessage parent = parents.get(reply.getReplyTo());
+                if (parent != null && visited.add(reply.getReference())) {
+                    ThreadedMessage replyNode = new ThreadedMessage(reply, parent.getDepth() + 1);
+                    parent.getReplies().add(replyNode);
+                    // At the maximum depth, the replies to the reply are attached next to it.
+                    nextParents.put(reply.getReference(), replyNode.getDepth() < maxDepth ? replyNode : parent);
+                }
+            }
+            parents = nextParents;
+        }
+        return thread;
+    }
+
     @Override
     public long countByDiscussion(Discussion discussion)
     {
-        return this.messageStoreService.countByDiscussion(discussion.getReference());
+        DiscussionReference discussionReference = discussion.getReference();
+        Long messageCount = this.discussionCache.getMessageCount(discussionReference);
+        if (messageCount == null) {
+            long version = this.discussionCache.getMessageCountVersion(discussionReference);
+            messageCount = this.messageStoreService.countByDiscussion(discussionReference);
+            this.discussionCache.setMessageCount(discussionReference, messageCount, version);
+        }
+        return messageCount;
+    }
+
+    @Override
+    public Map<DiscussionReference, Long> countByDiscussions(Collection<Discussion> discussions)
+    {
+        Map<DiscussionReference, Long> counts = new LinkedHashMap<>();
+        Map<DiscussionReference, Long> versions = new LinkedHashMap<>();
+        for (Discussion discussion : discussions) {
+            Long messageCount = this.discussionCache.getMessageCount(discussion.getReference());
+            counts.put(discussion.getReference(), messageCount);
+            if (messageCount == null) {
+                versions.put(discussion.getReference(),
+                    this.discussionCache.getMessageCountVersion(discussion.getReference()));
+            }
+        }
+        if (!versions.isEmpty()) {
+            Map<DiscussionReference, Long> storedCounts =
+                this.messageStoreService.countByDiscussions(new ArrayList<>(versions.keySet()));
+            storedCounts.forEach((reference, messageCount) -> this.discussionCache.setMessageCount(reference,
+                messageCount, versions.get(reference)));
+            counts.putAll(storedCounts);
+            // The discussions the store failed to count are not cached, and are returned without messages.
+            counts.replaceAll((reference, messageCount) -> messageCount != null ? messageCount : 0L);
+        }
+        return counts;
     }
 
     @Override
@@ -214,7 +343,7 @@ public class DefaultMessageService implements MessageService
         this.getByReference(reference)
             .ifPresent(message -> {
                 this.messageStoreService.delete(message.getReference());
-                this.observationManager.notify(new MessageEvent(DELETE), reference.getApplicationHint(), message);
+                this.discussionsEventNotifier.notify(new MessageEvent(DELETE), reference.getApplicationHint(), message);
             });
     }
 
@@ -222,10 +351,67 @@ public class DefaultMessageService implements MessageService
     public String renderContent(MessageReference messageReference)
     {
         return this.messageStoreService.getByReference(messageReference)
-            .map(it -> it.getOwnerDocument().display(CONTENT_NAME, it, this.xcontextProvider.get()))
+            .map(it -> renderContent(messageReference, it))
             .orElse("");
     }
 
+    @Override
+    public Map<MessageReference, String> renderContents(Collection<MessageReference> messageReferences)
+    {
+        Map<MessageReference, BaseObject> messageObjects =
+            this.messageStoreService.getByReferences(messageReferences);
+        Map<MessageReference, String> contents = new LinkedHashMap<>();
+        for (MessageReference messageReference : messageReferences) {
+            BaseObject messageObject = messageObjects.get(messageReference);
+            contents.put(messageReference,
+                messageObject != null ? renderContent(messageReference, messageObject) : "");
+        }
+        return contents;
+    }
+
+    private String renderContent(MessageReference messageReference, BaseObject messageObject)
+    {
+        XWikiContext context = this.xcontextProvider.get();
+        String variant = getRenderingVariant(messageObject, context);
+        Pair<String, Map<String, Set<String>>> renderedContent =
+            this.discussionCache.getRenderedContent(messageReference, variant);
+        if (renderedContent == null) {
+            renderedContent = this.skinExtensionsRecorder.record(
+                () -> messageObject.getOwnerDocument().display(CONTENT_NAME, messageObject, context));
+            this.discussionCache.setRenderedContent(messageReference, variant, renderedContent);
+        } else {
+            // The styles and scripts the content needs are pulled as if it was rendered again.
+            this.skinExtensionsRecorder.use(renderedContent.getRight());
+        }
+        return renderedContent.getLeft();
+    }
+
+    private String getRenderingVariant(BaseObject messageObject, XWikiContext context)
+    {
+        // Everything the rendering depends on: the version of the content, the syntaxes, the display mode, the locale,
+        // the author of the content, whose rights the content is executed with, and the current user. Even without
+        // scripts, macros such as include or display check the view right of the current user, so a rendering is
+        // never shared between users.
+        XWikiDocument ownerDocument = messageObject.getOwnerDocument();
+        DocumentReference contentAuthor =
+            this.documentUserReferenceSerializer.serialize(ownerDocument.getAuthors().getContentAuthor());
+        Date updateDate = messageObject.getDateValue(UPDATE_DATE_NAME);
+        return String.join("|",
+            updateDate != null ? String.valueOf(updateDate.getTime()) : "",
+            toIdString(ownerDocument.getSyntax()),
+            toIdString(this.renderingContext.getTargetSyntax()),
+            Objects.toString(context.get(DISPLAY_CONTEXT_KEY), ""),
+            String.valueOf(BooleanUtils.toBoolean((Boolean) context.get(IN_RENDERING_ENGINE_CONTEXT_KEY))),
+            Objects.toString(context.getLocale(), ""),
+            Objects.toString(contentAuthor, ""),
+            Objects.toString(context.getUserReference(), ""));
+    }
+
+    private static String toIdString(Syntax syntax)
+    {
+        return syntax != null ? syntax.toIdString() : "";
+    }
+
     @Override
     public boolean canDelete(Message message)
     {
@@ -235,6 +421,30 @@ public class DefaultMessageService implements MessageService
             .orElse(false);
     }
 
+    @Override
+    public Map<MessageReference, MessagePermissions> getPermissions(List<Message> messages)
+    {
+        Map<DiscussionReference, List<Message>> messagesByDiscussion = new LinkedHashMap<>();
+        for (Message message : messages) {
+            messagesByDiscussion.computeIfAbsent(message.getDiscussion().getReference(), key -> new ArrayList<>())
+                .add(message);
+        }
+        Map<MessageReference, MessagePermissions> permissions = new LinkedHashMap<>();
+        messagesByDiscussion.forEach((discussionReference, discussionMessages) ->
+            getDiscussionHolder(discussionReference).ifPresent(holder -> permissions.putAll(
+                this.discussionsRightService.getMessagePermissions(discussionMessages, holder))));
+        return permissions;
+    }
+
+    private Optional<DocumentReference> getDiscussionHolder(DiscussionReference discussionReference)
+    {
+        Pair<Discussion, DocumentReference> cached = this.discussionCache.getDiscussion(discussionReference);
+        if (cached != null) {
+            return Optional.of(cached.getRight());
+        }
+        return this.discussionStoreService.get(discussionReference).map(BaseObject::getDocumentReference);
+    }
+
     @Override
     public Optional<Message> getByEntity(EntityReference entityReference)
     {
@@ -260,7 +470,8 @@ public class DefaultMessageService implements MessageService
             return new Message(
                 messageReference,
                 new MessageContent(bo.getLargeStringValue(CONTENT_NAME), bo.getOwnerDocument().getSyntax()),
-                new ActorReference(bo.getStringValue(AUTHOR_TYPE_NAME), bo.getStringValue(AUTHOR_REFERENCE_NAME)),
+                this.discussionReferencesInterner.intern(
+                    new ActorReference(bo.getStringValue(AUTHOR_TYPE_NAME), bo.getStringValue(AUTHOR_REFERENCE_NAME))),
                 bo.getDateValue(CREATE_DATE_NAME),
                 bo.getDateValue(UPDATE_DATE_NAME),
                 discussion,
@@ -0,0 +1,433 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
+import org.xwiki.contrib.discussions.domain.ActorDescriptor;
+import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.DiscussionContext;
+import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Local cache of the discussions and discussion contexts, along with the references of their holder pages, of the
+ * number of messages of the discussions and of the rendered contents of the messages, indexed by wiki and serialized
+ * reference. The descriptors of the actors are also
+ * cached, indexed by actor type and absolute actor identifier. The cached discussions and discussion
+ * contexts are never returned directly, only copies of them, so that the callers can't modify the cache.
+ * <p>
+ * The size of the caches is configured with the {@value #SIZE_PROPERTY} property of {@code xwiki.properties}, and the
+ * time after which the entries expire, in seconds, with the {@value #LIFESPAN_PROPERTY} property. The number of
+ * messages whose rendered contents are cached is configured separately with the
+ * {@value #RENDERED_CONTENT_SIZE_PROPERTY} property, {@code 0} disabling this cache. The entries are removed when the
+ * discussions, the discussion contexts, the messages, their holder pages or the user profiles are modified, by
+ * {@link DiscussionCacheListener}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = DiscussionCache.class)
+@Singleton
+public class DiscussionCache implements Initializable, Disposable
+{
+    /**
+     * The name of the configuration property holding the maximum number of entries of each cache.
+     */
+    public static final String SIZE_PROPERTY = "discussions.cache.size";
+
+    /**
+     * The name of the configuration property holding the lifespan of the entries, in seconds.
+     */
+    public static final String LIFESPAN_PROPERTY = "discussions.cache.lifespan";
+
+    /**
+     * The name of the configuration property holding the maximum number of messages whose rendered contents are
+     * cached.
+     */
+    public static final String RENDERED_CONTENT_SIZE_PROPERTY = "discussions.cache.renderedContent.size";
+
+    private static final int DEFAULT_SIZE = 1000;
+
+    // The contents of a message are rendered for each user, only the renderings of the last users are kept.
+    private static final int MAX_RENDERING_VARIANTS = 8;
+
+    private static final int DEFAULT_LIFESPAN = 3600;
+
+    private static final int MESSAGE_COUNT_VERSIONS = 64;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private DiscussionReferencesSerializer discussionReferencesSerializer;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    private Cache<Pair<Discussion, DocumentReference>> discussionCache;
+
+    private Cache<Pair<DiscussionContext, DocumentReference>> discussionContextCache;
+
+    private Cache<Long> messageCountCache;
+
+    private Cache<Map<String, Pair<String, Map<String, Set<String>>>>> renderedContentCache;
+
+    private Cache<ActorDescriptor> actorCache;
+
+    // Incremented before the numbers of messages are removed, so that a number counted concurrently is not kept.
+    private final AtomicLongArray messageCountVersions = new AtomicLongArray(MESSAGE_COUNT_VERSIONS);
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int size = this.configuration.getProperty(SIZE_PROPERTY, DEFAULT_SIZE);
+        int lifespan = this.configuration.getProperty(LIFESPAN_PROPERTY, DEFAULT_LIFESPAN);
+        try {
+            this.discussionCache =
+                this.cacheManager.createNewLocalCache(newConfiguration("discussions.discussions", size, lifespan));
+            this.discussionContextCache =
+                this.cacheManager.createNewLocalCache(newConfiguration("discussions.contexts", size, lifespan));
+            this.messageCountCache =
+                this.cacheManager.createNewLocalCache(newConfiguration("discussions.messageCounts", size, lifespan));
+            this.actorCache =
+                this.cacheManager.createNewLocalCache(newConfiguration("discussions.actors", size, lifespan));
+            int renderedContentSize = this.configuration.getProperty(RENDERED_CONTENT_SIZE_PROPERTY, DEFAULT_SIZE);
+            if (renderedContentSize > 0) {
+                this.renderedContentCache = this.cacheManager.createNewLocalCache(
+                    newConfiguration("discussions.renderedContents", renderedContentSize, lifespan));
+            }
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the discussions caches.", e);
+        }
+    }
+
+    private LRUCacheConfiguration newConfiguration(String name, int size, int lifespan)
+    {
+        LRUCacheConfiguration cacheConfiguration = new LRUCacheConfiguration(name, size);
+        cacheConfiguration.getLRUEvictionConfiguration().setLifespan(lifespan);
+        return cacheConfiguration;
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.discussionCache.dispose();
+        this.discussionContextCache.dispose();
+        this.messageCountCache.dispose();
+        this.actorCache.dispose();
+        if (this.renderedContentCache != null) {
+            this.renderedContentCache.dispose();
+        }
+    }
+
+    /**
+     * @param reference the reference of a discussion of the current wiki
+     * @return a copy of the cached discussion and the reference of its holder page, or {@code null} if the
+     *     discussion is not in the cache
+     */
+    public Pair<Discussion, DocumentReference> getDiscussion(DiscussionReference reference)
+    {
+        Pair<Discussion, DocumentReference> entry = this.discussionCache.get(getKey(reference));
+        return entry != null ? Pair.of(copy(entry.getLeft()), entry.getRight()) : null;
+    }
+
+    /**
+     * @param reference the reference of a discussion of the current wiki
+     * @param discussion the discussion, which is copied before being cached
+     * @param holderReference the reference of the page holding the discussion
+     */
+    public void setDiscussion(DiscussionReference reference, Discussion discussion, DocumentReference holderReference)
+    {
+        this.discussionCache.set(getKey(reference), Pair.of(copy(discussion), holderReference));
+    }
+
+    /**
+     * @param reference the reference of a discussion of the current wiki
+     */
+    public void removeDiscussion(DiscussionReference reference)
+    {
+        this.discussionCache.remove(getKey(reference));
+    }
+
+    /**
+     * @param wiki the identifier of the wiki of the discussion
+     * @param serializedReference the serialized reference of the discussion
+     */
+    public void removeDiscussion(String wiki, String serializedReference)
+    {
+        this.discussionCache.remove(getKey(wiki, serializedReference));
+    }
+
+    /**
+     * @param reference the reference of a discussion of the current wiki
+     * @return the number of messages of the discussion, or {@code null} if it is not in the cache
+     */
+    public Long getMessageCount(DiscussionReference reference)
+    {
+        return this.messageCountCache.get(getKey(reference));
+    }
+
+    /**
+     * @param reference the reference of a discussion of the current wiki
+     * @return the version of the number of messages of the discussion, to read before counting the messages and to
+     *     give to {@link #setMessageCount(DiscussionReference, long, long)}
+     */
+    public long getMessageCountVersion(DiscussionReference reference)
+    {
+        return this.messageCountVersions.get(getMessageCountVersionIndex(getKey(reference)));
+    }
+
+    /**
+     * Caches the number of messages of a discussion, unless it has been removed since the given version was read, in
+     * which case the given number may not include the latest messages.
+     *
+     * @param reference the reference of a discussion of the current wiki
+     * @param messageCount the number of messages of the discussion
+     * @param version the version of the number of messages read before counting them
+     */
+    public void setMessageCount(DiscussionReference reference, long messageCount, long version)
+    {
+        String key = getKey(reference);
+        int versionIndex = getMessageCountVersionIndex(key);
+        this.messageCountCache.set(key, messageCount);
+        // The version is checked after the number is cached, so that a concurrent removal either changes the version
+        // before the check, or removes the number after it is cached.
+        if (this.messageCountVersions.get(versionIndex) != version) {
+            this.messageCountCache.remove(key);
+        }
+    }
+
+    /**
+     * @param wiki the identifier of the wiki of the discussion
+     * @param serializedReference the serialized reference of the discussion
+     */
+    public void removeMessageCount(String wiki, String serializedReference)
+    {
+        String key = getKey(wiki, serializedReference);
+        this.messageCountVersions.incrementAndGet(getMessageCountVersionIndex(key));
+        this.messageCountCache.remove(key);
+    }
+
+    private int getMessageCountVersionIndex(String key)
+    {
+        return Math.floorMod(key.hashCode(), MESSAGE_COUNT_VERSIONS);
+    }
+
+    /**
+     * @param reference the reference of a discussion context of the current wiki
+     * @return a copy of the cached discussion context and the reference of its holder page, or {@code null} if the
+     *     discussion context is not in the cache
+     */
+    public Pair<DiscussionContext, DocumentReference> getDiscussionContext(DiscussionContextReference reference)
+    {
+        Pair<DiscussionContext, DocumentReference> entry = this.discussionContextCache.get(getKey(reference));
+        return entry != null ? Pair.of(copy(entry.getLeft()), entry.getRight()) : null;
+    }
+
+    /**
+     * @param reference the reference of a discussion context of the current wiki
+     * @param discussionContext the discussion context, which is copied before being cached
+     * @param holderReference the reference of the page holding the discussion context
+     */
+    public void setDiscussionContext(DiscussionContextReference reference, DiscussionContext discussionContext,
+        DocumentReference holderReference)
+    {
+        this.discussionContextCache.set(getKey(reference), Pair.of(copy(discussionContext), holderReference));
+    }
+
+    /**
+     * @param wiki the identifier of the wiki of the discussion context
+     * @param serializedReference the serialized reference of the discussion context
+     */
+    public void removeDiscussionContext(String wiki, String serializedReference)
+    {
+        this.discussionContextCache.remove(getKey(wiki, serializedReference));
+    }
+
+    /**
+     * @param reference the reference of a message of the current wiki
+     * @param variant identifies the rendering of the message content, including the update date of the message and
+     *     everything else the result depends on
+     * @return the rendered content of the message along with the resources of the skin extensions it uses, by
+     *     plugin name, or {@code null} if it is not in the cache
+     */
+    public Pair<String, Map<String, Set<String>>> getRenderedContent(MessageReference reference, String variant)
+    {
+        if (this.renderedContentCache == null) {
+            return null;
+        }
+        Map<String, Pair<String, Map<String, Set<String>>>> variants = this.renderedContentCache.get(getKey(reference));
+        return variants != null ? variants.get(variant) : null;
+    }
+
+    /**
+     * @param reference the reference of a message of the current wiki
+     * @param variant identifies the rendering of the message content, including the update date of the message and
+     *     everything else the result depends on
+     * @param renderedContent the rendered content of the message along with the resources of the skin extensions it
+     *     uses, by plugin name
+     */
+    public void setRenderedContent(MessageReference reference, String variant,
+        Pair<String, Map<String, Set<String>>> renderedContent)
+    {
+        if (this.renderedContentCache == null) {
+            return;
+        }
+        String key = getKey(reference);
+        Map<String, Pair<String, Map<String, Set<String>>>> variants = this.renderedContentCache.get(key);
+        if (variants == null) {
+            variants = Collections.synchronizedMap(new RenderingVariants());
+            this.renderedContentCache.set(key, variants);
+        }
+        variants.put(variant, renderedContent);
+    }
+
+    /**
+     * @param wiki the identifier of the wiki of the message
+     * @param serializedReference the serialized reference of the message
+     */
+    public void removeRenderedContent(String wiki, String serializedReference)
+    {
+        if (this.renderedContentCache != null) {
+            this.renderedContentCache.remove(getKey(wiki, serializedReference));
+        }
+    }
+
+    /**
+     * @param type the type of the actor
+     * @param identifier the absolute identifier of the actor, independent of the current wiki
+     * @return a copy of the cached actor descriptor, or {@code null} if it is not in the cache
+     */
+    public ActorDescriptor getActorDescriptor(String type, String identifier)
+    {
+        ActorDescriptor entry = this.actorCache.get(getActorKey(type, identifier));
+        return entry != null ? copy(entry) : null;
+    }
+
+    /**
+     * @param type the type of the actor
+     * @param identifier the absolute identifier of the actor, independent of the current wiki
+     * @param actorDescriptor the actor descriptor, which is copied before being cached
+     */
+    public void setActorDescriptor(String type, String identifier, ActorDescriptor actorDescriptor)
+    {
+        this.actorCache.set(getActorKey(type, identifier), copy(actorDescriptor));
+    }
+
+    /**
+     * @param type the type of the actor
+     * @param identifier the absolute identifier of the actor, independent of the current wiki
+     */
+    public void removeActorDescriptor(String type, String identifier)
+    {
+        this.actorCache.remove(getActorKey(type, identifier));
+    }
+
+    private String getActorKey(String type, String identifier)
+    {
+        // The actor types cannot contain a slash.
+        return type + '/' + identifier;
+    }
+
+    private String getKey(AbstractDiscussionReference reference)
+    {
+        return getKey(this.xcontextProvider.get().getWikiId(),
+            this.discussionReferencesSerializer.serialize(reference));
+    }
+
+    private String getKey(String wiki, String serializedReference)
+    {
+        // The wiki identifiers cannot contain a colon.
+        return wiki + ':' + serializedReference;
+    }
+
+    private static Discussion copy(Discussion discussion)
+    {
+        Date updateDate = discussion.getUpdateDate();
+        return new Discussion(discussion.getReference(), discussion.getTitle(),
+            discussion.getDescription(), updateDate != null ? new Date(updateDate.getTime()) : null,
+            discussion.getMainDocument());
+    }
+
+    private static DiscussionContext copy(DiscussionContext discussionContext)
+    {
+        DiscussionContext copy = new DiscussionContext(discussionContext.getReference(), discussionContext.getName(),
+            discussionContext.getDescription(), discussionContext.getEntityReference());
+        copy.getMetadata().putAll(discussionContext.getMetadata());
+        return copy;
+    }
+
+    private static ActorDescriptor copy(ActorDescriptor actorDescriptor)
+    {
+        ActorDescriptor copy = new ActorDescriptor();
+        copy.setName(actorDescriptor.getName());
+        copy.setLink(actorDescriptor.getLink());
+        return copy;
+    }
+
+    private static final class RenderingVariants
+        extends LinkedHashMap<String, Pair<String, Map<String, Set<String>>>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        RenderingVariants()
+        {
+            super(16, 0.75F, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pair<String, Map<String, Set<String>>>> eldest)
+        {
+            return size() > MAX_RENDERING_VARIANTS;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
+import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.DiscussionContext;
+import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.events.DiscussionContextEvent;
+import org.xwiki.contrib.discussions.events.DiscussionEvent;
+import org.xwiki.contrib.discussions.events.DiscussionsCacheInvalidationEvent;
+import org.xwiki.contrib.discussions.events.SynchronousDiscussionsEvent;
+import org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata;
+import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
+import org.xwiki.contrib.discussions.store.meta.MessageMetadata;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.xwiki.contrib.discussions.events.ActionType.CREATE;
+import static org.xwiki.contrib.discussions.events.ActionType.DELETE;
+import static org.xwiki.contrib.discussions.events.ActionType.UPDATE;
+
+/**
+ * Removes the modified discussions, discussion contexts, messages and user profiles from the
+ * {@link DiscussionCache}, as well as the message counts of the discussions whose messages are created or deleted.
+ * The discussion and discussion context events are converted to {@link DiscussionsCacheInvalidationEvent}s, which
+ * are also received from the other cluster nodes, and the document events of the holder pages and user profiles are
+ * already sent to the other cluster nodes by XWiki.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component
+@Singleton
+@Named(DiscussionCacheListener.NAME)
+public class DiscussionCacheListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "org.xwiki.contrib.discussions.internal.DiscussionCacheListener";
+
+    private static final LocalDocumentReference USER_CLASS_REFERENCE =
+        new LocalDocumentReference(XWiki.SYSTEM_SPACE, "XWikiUsers");
+
+    @Inject
+    private Provider<DiscussionCache> discussionCacheProvider;
+
+    @Inject
+    private Provider<ObservationManager> observationManagerProvider;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private DiscussionReferencesSerializer discussionReferencesSerializer;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    /**
+     * Default constructor.
+     */
+    public DiscussionCacheListener()
+    {
+        super(NAME, Arrays.asList(new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent(),
+            new SynchronousDiscussionsEvent(new DiscussionEvent(CREATE)),
+            new SynchronousDiscussionsEvent(new DiscussionEvent(UPDATE)),
+            new SynchronousDiscussionsEvent(new DiscussionEvent(DELETE)),
+            new SynchronousDiscussionsEvent(new DiscussionContextEvent(CREATE)),
+            new SynchronousDiscussionsEvent(new DiscussionContextEvent(UPDATE)),
+            new SynchronousDiscussionsEvent(new DiscussionContextEvent(DELETE)),
+            new DiscussionsCacheInvalidationEvent()));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        DiscussionCache discussionCache = this.discussionCacheProvider.get();
+        if (event instanceof SynchronousDiscussionsEvent) {
+            if (((SynchronousDiscussionsEvent) event).getEvent() instanceof DiscussionEvent) {
+                notifyInvalidation(((Discussion) data).getReference());
+            } else {
+                notifyInvalidation(((DiscussionContext) data).getReference());
+            }
+        } else if (event instanceof DiscussionsCacheInvalidationEvent) {
+            onInvalidationEvent(discussionCache, (String) source, data);
+        } else {
+            XWikiDocument document = (XWikiDocument) source;
+            onDocumentEvent(discussionCache, document);
+            if (document.getOriginalDocument() != null) {
+                onDocumentEvent(discussionCache, document.getOriginalDocument());
+            }
+        }
+    }
+
+    private void notifyInvalidation(AbstractDiscussionReference reference)
+    {
+        this.observationManagerProvider.get()
+            .notify(new DiscussionsCacheInvalidationEvent(), this.xcontextProvider.get().getWikiId(), reference);
+    }
+
+    private void onInvalidationEvent(DiscussionCache discussionCache, String wiki, Object reference)
+    {
+        if (reference instanceof DiscussionReference) {
+            String serializedReference = this.discussionReferencesSerializer.serialize((DiscussionReference) reference);
+            discussionCache.removeDiscussion(wiki, serializedReference);
+            discussionCache.removeMessageCount(wiki, serializedReference);
+        } else if (reference instanceof DiscussionContextReference) {
+            discussionCache.removeDiscussionContext(wiki,
+                this.discussionReferencesSerializer.serialize((DiscussionContextReference) reference));
+        }
+    }
+
+    private void onDocumentEvent(DiscussionCache discussionCache, XWikiDocument document)
+    {
+        String wiki = document.getDocumentReference().getWikiReference().getName();
+        BaseObject discussionObject = document.getXObject(DiscussionMetadata.XCLASS_REFERENCE);
+        if (discussionObject != null) {
+            discussionCache.removeDiscussion(wiki, discussionObject.getStringValue(DiscussionMetadata.REFERENCE_NAME));
+        }
+        BaseObject discussionContextObject = document.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE);
+        if (discussionContextObject != null) {
+            discussionCache.removeDiscussionContext(wiki,
+                discussionContextObject.getStringValue(DiscussionContextMetadata.REFERENCE_NAME));
+        }
+        BaseObject messageObject = document.getXObject(MessageMetadata.XCLASS_REFERENCE);
+        if (messageObject != null) {
+            discussionCache.removeRenderedContent(wiki, messageObject.getStringValue(MessageMetadata.REFERENCE_NAME));
+            // The message has been created, moved or deleted.
+            discussionCache.removeMessageCount(wiki,
+                messageObject.getStringValue(MessageMetadata.DISCUSSION_REFERENCE_NAME));
+        }
+        if (document.getXObject(USER_CLASS_REFERENCE) != null) {
+            discussionCache.removeActorDescriptor(UserDiscussionsActorsService.TYPE,
+                this.entityReferenceSerializer.serialize(document.getDocumentReference()));
+        }
+    }
+}
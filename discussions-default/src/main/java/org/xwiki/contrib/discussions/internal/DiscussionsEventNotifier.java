@@ -0,0 +1,259 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.context.concurrent.ContextStoreManager;
+import org.xwiki.contrib.discussions.DiscussionsEventsMetrics;
+import org.xwiki.contrib.discussions.events.DiscussionsEvent;
+import org.xwiki.contrib.discussions.events.SynchronousDiscussionsEvent;
+import org.xwiki.observation.ObservationManager;
+
+import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCauseMessage;
+
+/**
+ * Sends the {@link DiscussionsEvent}s with the {@link ObservationManager}. Each event is first sent wrapped in a
+ * {@link SynchronousDiscussionsEvent}, in the thread which sends it. By default the event itself is then sent in the
+ * same thread. When the {@value #ASYNC_PROPERTY} property of {@code xwiki.properties} is {@code true}, the event itself
+ * is sent from a pool of {@value #THREADS_PROPERTY} threads instead, in a new context holding the wiki, the users, the
+ * locale, the document and the URL of the sender, saved and restored with the {@link ContextStoreManager} like the
+ * asynchronous listeners of XWiki. The request and the response of the sender are not used after the request.
+ * <p>
+ * The events waiting for the pool are kept in a queue of {@value #QUEUE_SIZE_PROPERTY} events. When the queue is full,
+ * the events are dispatched in the thread which sent them, which slows down the senders until the pool catches up.
+ * The events sent while the pool is shutting down are dispatched in the thread which sent them as well.
+ * The pool uses virtual threads when the JVM supports them.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = { DiscussionsEventNotifier.class, DiscussionsEventsMetrics.class })
+@Singleton
+public class DiscussionsEventNotifier implements DiscussionsEventsMetrics, Initializable, Disposable
+{
+    /**
+     * The name of the configuration property enabling the asynchronous dispatch.
+     */
+    public static final String ASYNC_PROPERTY = "discussions.events.async";
+
+    /**
+     * The name of the configuration property holding the number of threads dispatching the events.
+     */
+    public static final String THREADS_PROPERTY = "discussions.events.async.threads";
+
+    /**
+     * The name of the configuration property holding the maximum number of events waiting to be dispatched.
+     */
+    public static final String QUEUE_SIZE_PROPERTY = "discussions.events.async.queueSize";
+
+    private static final int DEFAULT_THREADS = 2;
+
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final long SHUTDOWN_TIMEOUT = 10;
+
+    // The parts of the context of the sender the listeners can rely on.
+    private static final List<String> CONTEXT_ENTRIES = List.of("wiki", "user", "author", "locale", "request.wiki",
+        "doc.reference", "request.base", "request.url", "request.contextpath", "action");
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    @Inject
+    private Provider<ContextStoreManager> contextStoreManagerProvider;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private Logger logger;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong asyncCount = new AtomicLong();
+
+    private final AtomicLong callerRunsCount = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        if (this.configuration.getProperty(ASYNC_PROPERTY, false)) {
+            int threads = this.configuration.getProperty(THREADS_PROPERTY, DEFAULT_THREADS);
+            int queueSize = this.configuration.getProperty(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE);
+            RejectedExecutionHandler callerRuns = (runnable, pool) -> {
+                if (pool.isShutdown()) {
+                    this.logger.debug("The discussions events dispatch is shut down, the event is dispatched in the "
+                        + "thread which sent it.");
+                } else {
+                    this.callerRunsCount.incrementAndGet();
+                }
+                runnable.run();
+            };
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), createThreadFactory(), callerRuns);
+        }
+    }
+
+    private ThreadFactory createThreadFactory()
+    {
+        try {
+            // Thread.ofVirtual().name(...).factory(), only available since Java 21.
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, "Discussions events dispatch ", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return new BasicThreadFactory.Builder().namingPattern("Discussions events dispatch %d").daemon(true)
+                .build();
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        if (this.executor != null) {
+            this.executor.shutdown();
+            try {
+                if (!this.executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                    this.logger.warn("[{}] discussions events have not been dispatched before the shutdown.",
+                        this.executor.shutdownNow().size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the events are dispatched asynchronously, after the {@link SynchronousDiscussionsEvent}
+     */
+    public boolean isAsync()
+    {
+        return this.executor != null;
+    }
+
+    /**
+     * Sends an event to the listeners.
+     *
+     * @param event the event
+     * @param source the source of the event
+     * @param data the data of the event
+     */
+    public void notify(DiscussionsEvent event, Object source, Object data)
+    {
+        this.observationManager.notify(new SynchronousDiscussionsEvent(event), source, data);
+        if (this.executor == null) {
+            this.observationManager.notify(event, source, data);
+        } else {
+            Map<String, Serializable> contextStore;
+            try {
+                contextStore = this.contextStoreManagerProvider.get().save(CONTEXT_ENTRIES);
+            } catch (ComponentLookupException e) {
+                this.logger.warn("Failed to save the context to dispatch the event [{}], it is dispatched in the "
+                    + "thread which sent it. Cause: [{}]", event, getRootCauseMessage(e));
+                this.observationManager.notify(event, source, data);
+                return;
+            }
+            this.executor.execute(() -> dispatch(event, source, data, contextStore));
+        }
+    }
+
+    private void dispatch(DiscussionsEvent event, Object source, Object data, Map<String, Serializable> contextStore)
+    {
+        // Already in the caller thread when the queue was full or the pool is shut down.
+        boolean newContext = this.execution.getContext() == null;
+        try {
+            if (newContext) {
+                this.executionContextManager.initialize(new ExecutionContext());
+                this.contextStoreManagerProvider.get().restore(contextStore);
+                this.asyncCount.incrementAndGet();
+            }
+            this.observationManager.notify(event, source, data);
+        } catch (ExecutionContextException | ComponentLookupException e) {
+            this.logger.warn("Failed to initialize the context to dispatch the event [{}]. Cause: [{}]", event,
+                getRootCauseMessage(e));
+        } finally {
+            if (newContext) {
+                this.execution.removeContext();
+            }
+        }
+    }
+
+    @Override
+    public long getAsyncCount()
+    {
+        return this.asyncCount.get();
+    }
+
+    @Override
+    public long getCallerRunsCount()
+    {
+        return this.callerRunsCount.get();
+    }
+
+    @Override
+    public int getQueueSize()
+    {
+        return this.executor != null ? this.executor.getQueue().size() : 0;
+    }
+
+    /**
+     * @return the number of events which are being dispatched
+     */
+    public int getActiveCount()
+    {
+        return this.executor != null ? this.executor.getActiveCount() : 0;
+    }
+}
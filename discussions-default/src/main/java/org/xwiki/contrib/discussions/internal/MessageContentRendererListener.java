@@ -0,0 +1,73 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.MessageService;
+import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.events.ActionType;
+import org.xwiki.contrib.discussions.events.MessageEvent;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Renders the content of the created messages, to put it in the rendered contents cache of the
+ * {@link DiscussionCache} before the message is displayed. Nothing is saved: the rendering depends on the viewer, whose
+ * rights, user and locale change what the macros display, so it is only kept in the cache.
+ * The listener is dispatched asynchronously when the asynchronous dispatch of the discussions events is enabled, so
+ * that the rendering is not part of the creation request.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component
+@Singleton
+@Named(MessageContentRendererListener.NAME)
+public class MessageContentRendererListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "org.xwiki.contrib.discussions.internal.MessageContentRendererListener";
+
+    @Inject
+    private Provider<MessageService> messageServiceProvider;
+
+    /**
+     * Default constructor.
+     */
+    public MessageContentRendererListener()
+    {
+        super(NAME, Arrays.asList(new MessageEvent(ActionType.CREATE)));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        this.messageServiceProvider.get().renderContent(((Message) data).getReference());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.xwiki.component.annotation.Component;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.plugin.XWikiPluginInterface;
+import com.xpn.xwiki.plugin.skinx.AbstractSkinExtensionPlugin;
+
+/**
+ * Records the skin extensions (SSX, JSX, etc.) used while rendering a content, and uses them again when the rendered
+ * content is reused without rendering it, so that the content keeps its styles and scripts.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = SkinExtensionsRecorder.class)
+@Singleton
+public class SkinExtensionsRecorder
+{
+    // The skin extension plugins whose resources are used with their name only.
+    private static final List<String> SKIN_EXTENSIONS = List.of("ssx", "jsx", "ssfx", "jsfx", "ssrx", "jsrx");
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /**
+     * Runs a rendering and records the skin extensions it uses, including the ones already used in the current
+     * request before the rendering.
+     *
+     * @param rendering the rendering to run
+     * @return the result of the rendering and the resources of the skin extensions it used, by plugin name
+     */
+    public Pair<String, Map<String, Set<String>>> record(Supplier<String> rendering)
+    {
+        XWikiContext context = this.xcontextProvider.get();
+        // The resources already pulled in the current request are put aside, for the rendering to pull again the
+        // ones it uses.
+        Map<String, Set<String>> pulledBefore = new LinkedHashMap<>();
+        for (String name : SKIN_EXTENSIONS) {
+            Set<String> pulledResources = getPulledResources(name, context);
+            if (pulledResources != null) {
+                pulledBefore.put(name, new LinkedHashSet<>(pulledResources));
+                pulledResources.clear();
+            }
+        }
+        Map<String, Set<String>> uses = new LinkedHashMap<>();
+        try {
+            String result = rendering.get();
+            pulledBefore.forEach((name, resources) -> {
+                Set<String> used = new LinkedHashSet<>(getPulledResources(name, context));
+                if (!used.isEmpty()) {
+                    uses.put(name, used);
+                }
+            });
+            return Pair.of(result, uses);
+        } finally {
+            pulledBefore.forEach((name, resources) -> {
+                Set<String> pulledResources = getPulledResources(name, context);
+                // Keeps the order in which the resources were first pulled.
+                resources.addAll(pulledResources);
+                pulledResources.clear();
+                pulledResources.addAll(resources);
+            });
+        }
+    }
+
+    /**
+     * Uses again the skin extensions recorded by {@link #record(Supplier)}.
+     *
+     * @param uses the resources of the skin extensions to use, by plugin name
+     */
+    public void use(Map<String, Set<String>> uses)
+    {
+        XWikiContext context = this.xcontextProvider.get();
+        uses.forEach((name, resources) -> {
+            AbstractSkinExtensionPlugin plugin = getPlugin(name, context);
+            if (plugin != null) {
+                resources.forEach(resource -> plugin.use(resource, context));
+            }
+        });
+    }
+
+    private Set<String> getPulledResources(String name, XWikiContext context)
+    {
+        AbstractSkinExtensionPlugin plugin = getPlugin(name, context);
+        return plugin != null ? plugin.getPulledResources(context) : null;
+    }
+
+    private AbstractSkinExtensionPlugin getPlugin(String name, XWikiContext context)
+    {
+        XWikiPluginInterface plugin = context.getWiki().getPlugin(name, context);
+        return plugin instanceof AbstractSkinExtensionPlugin ? (AbstractSkinExtensionPlugin) plugin : null;
+    }
+}
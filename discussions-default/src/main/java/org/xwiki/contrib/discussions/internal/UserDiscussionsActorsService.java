@@ -20,6 +20,11 @@
 package org.xwiki.contrib.discussions.internal;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -32,10 +37,11 @@ import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.discussions.DiscussionContextService;
 import org.xwiki.contrib.discussions.DiscussionsActorService;
 import org.xwiki.contrib.discussions.domain.ActorDescriptor;
-import org.xwiki.contrib.discussions.domain.DiscussionContext;
+import org.xwiki.contrib.discussions.domain.ActorsPage;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
@@ -47,10 +53,19 @@ import com.xpn.xwiki.XWikiContext;
  * @since 1.0
  */
 @Component
-@Named("user")
+@Named(UserDiscussionsActorsService.TYPE)
 @Singleton
 public class UserDiscussionsActorsService implements DiscussionsActorService
 {
+    /**
+     * The type of the actors resolved by this service.
+     *
+     * @since 3.2.1
+     */
+    public static final String TYPE = "user";
+
+    private static final String MESSAGE_STREAM_USER_TYPE = "messagestream-user";
+
     @Inject
     private DocumentReferenceResolver<String> documentReferenceResolver;
 
@@ -60,22 +75,45 @@ public class UserDiscussionsActorsService implements DiscussionsActorService
     @Inject
     private DiscussionContextService discussionContextService;
 
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @Inject
+    private DiscussionCache discussionCache;
+
     @Override
     public Optional<ActorDescriptor> resolve(String reference)
     {
         return Optional.of(internalResolve(reference));
     }
 
+    @Override
+    public Map<String, ActorDescriptor> resolveAll(Collection<String> references)
+    {
+        // The duplicated references are resolved once.
+        Map<String, ActorDescriptor> actorDescriptors = new LinkedHashMap<>();
+        for (String reference : references) {
+            actorDescriptors.computeIfAbsent(reference, this::internalResolve);
+        }
+        return actorDescriptors;
+    }
+
     /**
-     * Same as {@link #resolve(String)}, without the wrapping in an {@link Optional}.
+     * Same as {@link #resolve(String)}, without the wrapping in an {@link Optional}. The names of the users are
+     * cached by user profile, the link is always the given reference.
      */
     private ActorDescriptor internalResolve(String reference)
     {
         DocumentReference userDocumentReference = this.documentReferenceResolver.resolve(reference);
-        ActorDescriptor actorDescriptor = new ActorDescriptor();
-        XWikiContext context = this.xcontextProvider.get();
-        XWiki wiki = context.getWiki();
-        actorDescriptor.setName(wiki.getPlainUserName(userDocumentReference, context));
+        String identifier = this.entityReferenceSerializer.serialize(userDocumentReference);
+        ActorDescriptor actorDescriptor = this.discussionCache.getActorDescriptor(TYPE, identifier);
+        if (actorDescriptor == null) {
+            actorDescriptor = new ActorDescriptor();
+            XWikiContext context = this.xcontextProvider.get();
+            XWiki wiki = context.getWiki();
+            actorDescriptor.setName(wiki.getPlainUserName(userDocumentReference, context));
+            this.discussionCache.setActorDescriptor(TYPE, identifier, actorDescriptor);
+        }
         actorDescriptor.setLink(URI.create(reference));
         return actorDescriptor;
     }
@@ -83,21 +121,34 @@ public class UserDiscussionsActorsService implements DiscussionsActorService
     @Override
     public Stream<ActorDescriptor> listUsers(DiscussionReference discussionReference)
     {
-        return discussionUserStream(discussionReference)
-            .map(it -> internalResolve(it.getEntityReference().getReference()));
+        return getUserReferences(discussionReference, 0, 0).stream().map(this::internalResolve);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The users are sorted by reference, the page is selected by the store and only the users of the page are
+     * resolved.
+     */
+    @Override
+    public ActorsPage listUsers(DiscussionReference discussionReference, int offset, int limit)
+    {
+        List<String> userReferences = getUserReferences(discussionReference, offset, limit);
+        Collection<ActorDescriptor> users = resolveAll(userReferences).values();
+        return new ActorsPage(new ArrayList<>(users), countUsers(discussionReference));
     }
 
     @Override
     public long countUsers(DiscussionReference discussionReference)
     {
-        return discussionUserStream(discussionReference).count();
+        return this.discussionContextService.countEntityReferencesByDiscussionReference(discussionReference,
+            MESSAGE_STREAM_USER_TYPE);
     }
 
-    private Stream<DiscussionContext> discussionUserStream(DiscussionReference discussionReference)
+    private List<String> getUserReferences(DiscussionReference discussionReference, int offset, int limit)
     {
-        return this.discussionContextService.findByDiscussionReference(discussionReference)
-            .stream()
-            .filter(it -> it.getEntityReference().getType().equals("messagestream-user"))
-            .filter(it -> !it.getEntityReference().getType().equals("*"));
+        // Only the entity references of the discussion contexts are loaded.
+        return this.discussionContextService.findEntityReferencesByDiscussionReference(discussionReference,
+            MESSAGE_STREAM_USER_TYPE, offset, limit);
     }
 }
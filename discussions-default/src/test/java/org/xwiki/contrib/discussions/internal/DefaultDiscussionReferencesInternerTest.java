@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.discussions.domain.references.ActorReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for {@link DefaultDiscussionReferencesInterner}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@ComponentTest
+class DefaultDiscussionReferencesInternerTest
+{
+    @InjectMockComponents
+    private DefaultDiscussionReferencesInterner interner;
+
+    @Test
+    void intern()
+    {
+        DiscussionReference reference = new DiscussionReference("hint", "ref");
+        assertSame(reference, this.interner.intern(reference));
+        assertSame(reference, this.interner.intern(new DiscussionReference("hint", "ref")));
+
+        // Equal values of different types are not shared.
+        MessageReference messageReference = new MessageReference("hint", "ref");
+        MessageReference interned = this.interner.intern(messageReference);
+        assertSame(messageReference, interned);
+        assertEquals(MessageReference.class, interned.getClass());
+
+        ActorReference actorReference = new ActorReference("user", "XWiki.U1");
+        assertSame(actorReference, this.interner.intern(actorReference));
+        assertSame(actorReference, this.interner.intern(new ActorReference("user", "XWiki.U1")));
+    }
+
+    @Test
+    void internNull()
+    {
+        assertNull(this.interner.intern((DiscussionReference) null));
+        assertNull(this.interner.intern((ActorReference) null));
+    }
+}
@@ -23,10 +23,12 @@ import org.junit.jupiter.api.Test;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
+import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.junit5.mockito.ComponentTest;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /**
  * Tests for {@link DefaultDiscussionReferencesResolver}.
@@ -35,6 +37,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
  * @since 2.0
  */
 @ComponentTest
+@ComponentList(DefaultDiscussionReferencesInterner.class)
 class DefaultDiscussionReferencesResolverTest
 {
     @InjectMockComponents
@@ -84,4 +87,27 @@ class DefaultDiscussionReferencesResolverTest
         discussionContextReference = new DiscussionContextReference("", reference4);
         assertEquals(discussionContextReference, this.resolver.resolve(reference4, DiscussionContextReference.class));
     }
+
+    @Test
+    void resolveSeparatorEdgeCases()
+    {
+        // The hint starts after the last separator followed by a non-empty value.
+        assertEquals(new DiscussionReference("b", "a;applicationHint=c"),
+            this.resolver.resolve("a;applicationHint=c;applicationHint=b", DiscussionReference.class));
+        assertEquals(new DiscussionReference(";applicationHint=", "a"),
+            this.resolver.resolve("a;applicationHint=;applicationHint=", DiscussionReference.class));
+        // An empty reference or an empty hint is not a match.
+        assertEquals(new DiscussionReference("", ";applicationHint=foo"),
+            this.resolver.resolve(";applicationHint=foo", DiscussionReference.class));
+        assertEquals(new DiscussionReference("", "foo;applicationHint="),
+            this.resolver.resolve("foo;applicationHint=", DiscussionReference.class));
+        assertEquals(new DiscussionReference("", ""), this.resolver.resolve("", DiscussionReference.class));
+    }
+
+    @Test
+    void resolveSharesInstances()
+    {
+        DiscussionReference reference = this.resolver.resolve("foo;applicationHint=42", DiscussionReference.class);
+        assertSame(reference, this.resolver.resolve("foo;applicationHint=42", DiscussionReference.class));
+    }
 }
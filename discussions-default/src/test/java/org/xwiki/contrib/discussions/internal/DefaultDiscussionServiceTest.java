@@ -25,6 +25,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.xwiki.contrib.discussions.DiscussionException;
@@ -47,6 +48,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionMetadata.DESCRIPTION_NAME;
@@ -79,6 +81,9 @@ class DefaultDiscussionServiceTest
     @MockComponent
     private DiscussionReferencesResolver discussionReferencesResolver;
 
+    @MockComponent
+    private DiscussionCache discussionCache;
+
     private DiscussionReference discussionReference;
 
     @BeforeEach
@@ -192,6 +197,38 @@ class DefaultDiscussionServiceTest
         assertTrue(reference);
     }
 
+    @Test
+    void canReadCached()
+    {
+        DocumentReference documentReference = new DocumentReference("xwiki", "XWiki", "Discussion");
+        Discussion discussion = new Discussion(this.discussionReference, "title", "description", new Date(), null);
+        when(this.discussionCache.getDiscussion(this.discussionReference))
+            .thenReturn(Pair.of(discussion, documentReference));
+        when(this.discussionsRightService.canReadDiscussion(documentReference)).thenReturn(true);
+
+        assertTrue(this.defaultDiscussionService.canRead(this.discussionReference));
+        assertEquals(Optional.of(discussion), this.defaultDiscussionService.get(this.discussionReference));
+        verify(this.discussionStoreService, never()).get(this.discussionReference);
+    }
+
+    @Test
+    void getCachesDiscussion()
+    {
+        BaseObject baseObject = mock(BaseObject.class);
+        DocumentReference documentReference = new DocumentReference("xwiki", "XWiki", "Discussion");
+        when(baseObject.getDocumentReference()).thenReturn(documentReference);
+        when(baseObject.getStringValue(REFERENCE_NAME)).thenReturn("reference");
+        when(baseObject.getStringValue(TITLE_NAME)).thenReturn("title");
+        when(this.discussionReferencesResolver.resolve("reference", DiscussionReference.class))
+            .thenReturn(this.discussionReference);
+        when(this.discussionStoreService.get(this.discussionReference)).thenReturn(Optional.of(baseObject));
+
+        Discussion discussion = this.defaultDiscussionService.get(this.discussionReference).get();
+
+        assertEquals("title", discussion.getTitle());
+        verify(this.discussionCache).setDiscussion(this.discussionReference, discussion, documentReference);
+    }
+
     @Test
     void canWriteNotFound()
     {
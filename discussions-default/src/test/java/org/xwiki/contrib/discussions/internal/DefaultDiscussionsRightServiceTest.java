@@ -20,6 +20,8 @@
 package org.xwiki.contrib.discussions.internal;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import javax.inject.Provider;
 
@@ -31,6 +33,7 @@ import org.mockito.Mock;
 import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
 import org.xwiki.contrib.discussions.domain.MessageContent;
+import org.xwiki.contrib.discussions.domain.MessagePermissions;
 import org.xwiki.contrib.discussions.domain.references.ActorReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
@@ -52,6 +55,8 @@ import com.xpn.xwiki.XWikiContext;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.xwiki.rendering.syntax.Syntax.*;
 
@@ -273,6 +278,30 @@ class DefaultDiscussionsRightServiceTest
         assertTrue(b);
     }
 
+    @Test
+    void getMessagePermissions()
+    {
+        Message ownMessage = new Message(new MessageReference("hint", "own"),
+            new MessageContent("content", XWIKI_2_1), new ActorReference("user", USER_REFERENCE), new Date(),
+            new Date(), DISCUSSION);
+        Message otherMessage = new Message(new MessageReference("hint", "other"),
+            new MessageContent("content", XWIKI_2_1), new ActorReference("user", "xwiki:XWiki.Other"), new Date(),
+            new Date(), DISCUSSION);
+        when(this.authorizationManager
+            .hasAccess(this.writeDiscussionRight, USER_DOCUMENT_REFERENCE, DISCUSSION_REFERENCE)).thenReturn(true);
+
+        Map<MessageReference, MessagePermissions> permissions = this.defaultDiscussionsRightService
+            .getMessagePermissions(List.of(ownMessage, otherMessage), DISCUSSION_REFERENCE);
+
+        assertEquals(new MessagePermissions(MessagePermissions.WRITE | MessagePermissions.DELETE),
+            permissions.get(ownMessage.getReference()));
+        assertEquals(new MessagePermissions(MessagePermissions.WRITE), permissions.get(otherMessage.getReference()));
+        verify(this.authorizationManager, times(1))
+            .hasAccess(this.writeDiscussionRight, USER_DOCUMENT_REFERENCE, DISCUSSION_REFERENCE);
+        verify(this.authorizationManager, times(1))
+            .hasAccess(this.adminDiscussionRight, USER_DOCUMENT_REFERENCE, DISCUSSION_REFERENCE);
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = { true, false })
     void isAdminDiscussion(boolean isAllowed)
@@ -19,15 +19,27 @@
  */
 package org.xwiki.contrib.discussions.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import javax.inject.Named;
 import javax.inject.Provider;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.xwiki.contrib.discussions.DiscussionException;
+import org.xwiki.contrib.discussions.DiscussionReferencesInterner;
 import org.xwiki.contrib.discussions.DiscussionReferencesResolver;
 import org.xwiki.contrib.discussions.DiscussionService;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
@@ -35,18 +47,23 @@ import org.xwiki.contrib.discussions.DiscussionsRightService;
 import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
 import org.xwiki.contrib.discussions.domain.MessageContent;
+import org.xwiki.contrib.discussions.domain.ThreadedMessage;
 import org.xwiki.contrib.discussions.domain.references.ActorReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
 import org.xwiki.contrib.discussions.store.DiscussionStoreService;
 import org.xwiki.contrib.discussions.store.MessageStoreService;
+import org.xwiki.model.document.DocumentAuthors;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.model.reference.ObjectReference;
 import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.transformation.RenderingContext;
 import org.xwiki.test.junit5.mockito.ComponentTest;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
 import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.user.UserReference;
+import org.xwiki.user.UserReferenceSerializer;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
@@ -55,7 +72,14 @@ import com.xpn.xwiki.objects.BaseObject;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.xwiki.contrib.discussions.store.meta.MessageMetadata.AUTHOR_REFERENCE_NAME;
 import static org.xwiki.contrib.discussions.store.meta.MessageMetadata.AUTHOR_TYPE_NAME;
@@ -79,6 +103,9 @@ class DefaultMessageServiceTest
 
     private static final String USER_REFERENCE = "xwiki:XWiki.User";
 
+    private static final DocumentReference AUTHOR_DOCUMENT_REFERENCE =
+        new DocumentReference("xwiki", "XWiki", "Author");
+
     @InjectMockComponents
     private DefaultMessageService defaultMessageService;
 
@@ -103,6 +130,22 @@ class DefaultMessageServiceTest
     @MockComponent
     private DiscussionReferencesResolver referencesResolver;
 
+    @MockComponent
+    private DiscussionReferencesInterner referencesInterner;
+
+    @MockComponent
+    private DiscussionCache discussionCache;
+
+    @MockComponent
+    private RenderingContext renderingContext;
+
+    @MockComponent
+    private SkinExtensionsRecorder skinExtensionsRecorder;
+
+    @MockComponent
+    @Named("document")
+    private UserReferenceSerializer<DocumentReference> documentUserReferenceSerializer;
+
     @Mock
     private XWikiContext context;
 
@@ -112,6 +155,11 @@ class DefaultMessageServiceTest
         when(this.xcontextProvider.get()).thenReturn(this.context);
         when(this.context.getUserReference()).thenReturn(USER_DOCUMENT_REFERENCE);
         when(this.entityReferenceSerializer.serialize(USER_DOCUMENT_REFERENCE)).thenReturn(USER_REFERENCE);
+        when(this.referencesInterner.intern(any(ActorReference.class))).then(invocation -> invocation.getArgument(0));
+        when(this.skinExtensionsRecorder.record(any())).then(invocation -> {
+            Supplier<String> rendering = invocation.getArgument(0);
+            return Pair.of(rendering.get(), Map.of());
+        });
     }
 
     @Test
@@ -223,7 +271,7 @@ class DefaultMessageServiceTest
     {
         MessageReference messageReference = new MessageReference("hint", "messageReference");
         BaseObject baseObject = mock(BaseObject.class);
-        XWikiDocument xWikiDocument = mock(XWikiDocument.class);
+        XWikiDocument xWikiDocument = mockMessageDocument();
         when(baseObject.getOwnerDocument()).thenReturn(xWikiDocument);
         when(this.messageStoreService.getByReference(messageReference)).thenReturn(Optional.of(baseObject));
         when(xWikiDocument.display(CONTENT_NAME, baseObject, context)).thenReturn("html result");
@@ -231,6 +279,54 @@ class DefaultMessageServiceTest
         assertEquals("html result", actual);
     }
 
+    @Test
+    void renderContents()
+    {
+        MessageReference messageReference = new MessageReference("hint", "messageReference");
+        MessageReference missingReference = new MessageReference("hint", "missingReference");
+        BaseObject baseObject = mock(BaseObject.class);
+        XWikiDocument xWikiDocument = mockMessageDocument();
+        when(baseObject.getOwnerDocument()).thenReturn(xWikiDocument);
+        List<MessageReference> references = List.of(missingReference, messageReference);
+        when(this.messageStoreService.getByReferences(references)).thenReturn(Map.of(messageReference, baseObject));
+        when(xWikiDocument.display(CONTENT_NAME, baseObject, context)).thenReturn("html result");
+
+        Map<MessageReference, String> actual = this.defaultMessageService.renderContents(references);
+        assertEquals(references, new ArrayList<>(actual.keySet()));
+        assertEquals("", actual.get(missingReference));
+        assertEquals("html result", actual.get(messageReference));
+        verify(this.messageStoreService, never()).getByReference(any());
+    }
+
+    @Test
+    void renderContentCached()
+    {
+        MessageReference messageReference = new MessageReference("hint", "messageReference");
+        BaseObject baseObject = mock(BaseObject.class);
+        XWikiDocument xWikiDocument = mockMessageDocument();
+        when(baseObject.getOwnerDocument()).thenReturn(xWikiDocument);
+        when(xWikiDocument.getSyntax()).thenReturn(XWIKI_2_1);
+        when(baseObject.getDateValue(UPDATE_DATE_NAME)).thenReturn(new Date(42));
+        when(this.renderingContext.getTargetSyntax()).thenReturn(Syntax.XHTML_1_0);
+        when(this.messageStoreService.getByReference(messageReference)).thenReturn(Optional.of(baseObject));
+        Map<String, Set<String>> uses = Map.of("ssx", Set.of("Discussions.Code"));
+        when(this.context.getLocale()).thenReturn(Locale.FRENCH);
+        String variant = "42|xwiki/2.1|xhtml/1.0||false|fr|xwiki:XWiki.Author|xwiki:XWiki.User";
+        when(this.discussionCache.getRenderedContent(messageReference, variant))
+            .thenReturn(Pair.of("cached html", uses));
+
+        assertEquals("cached html", this.defaultMessageService.renderContent(messageReference));
+        verify(xWikiDocument, never()).display(any(), any(BaseObject.class), any());
+        verify(this.skinExtensionsRecorder).use(uses);
+
+        // The rendering made for a user is never served to another user.
+        when(this.context.getUserReference()).thenReturn(new DocumentReference("xwiki", "XWiki", "Guest"));
+        when(xWikiDocument.display(CONTENT_NAME, baseObject, this.context)).thenReturn("html result");
+        assertEquals("html result", this.defaultMessageService.renderContent(messageReference));
+        verify(this.discussionCache).setRenderedContent(messageReference,
+            "42|xwiki/2.1|xhtml/1.0||false|fr|xwiki:XWiki.Author|xwiki:XWiki.Guest", Pair.of("html result", Map.of()));
+    }
+
     @Test
     void getByEntityReference()
     {
@@ -269,4 +365,106 @@ class DefaultMessageServiceTest
             this.defaultMessageService.getByEntity(entityReference);
         assertEquals(Optional.of(message), actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    void getThread()
+    {
+        DiscussionReference discussionReference = new DiscussionReference("hint", "discussion");
+        Discussion discussion = new Discussion(discussionReference, "title", "description", new Date(), null);
+        when(this.discussionService.get(discussionReference)).thenReturn(Optional.of(discussion));
+        Message root = createMessage("root", null, discussion);
+        Message reply = createMessage("reply", "root", discussion);
+        Message nestedReply = createMessage("nestedReply", "reply", discussion);
+        Message deepReply = createMessage("deepReply", "nestedReply", discussion);
+        Message otherRoot = createMessage("otherRoot", null, discussion);
+        Message orphan = createMessage("orphan", "deleted", discussion);
+        List<Message> messages = List.of(root, reply, otherRoot, nestedReply, orphan, deepReply);
+        when(this.messageStoreService.getRootMessagesByDiscussion(discussion, 0, 0))
+            .thenReturn(List.of(root, otherRoot, orphan));
+        when(this.messageStoreService.getRootMessagesByDiscussion(discussion, 1, 1)).thenReturn(List.of(otherRoot));
+        when(this.messageStoreService.getRepliesByMessages(eq(discussion), any())).thenAnswer(invocation -> {
+            Collection<MessageReference> parents = invocation.getArgument(1);
+            return messages.stream().filter(message -> parents.contains(message.getReplyTo()))
+                .collect(Collectors.toList());
+        });
+
+        List<ThreadedMessage> thread = this.defaultMessageService.getThread(discussionReference, 0, 0, 2);
+
+        assertEquals(3, thread.size());
+        ThreadedMessage rootNode = thread.get(0);
+        assertEquals(root, rootNode.getMessage());
+        assertEquals(1, rootNode.getReplies().size());
+        ThreadedMessage replyNode = rootNode.getReplies().get(0);
+        assertEquals(reply, replyNode.getMessage());
+        assertEquals(1, replyNode.getDepth());
+        // The deep reply exceeds the maximum depth and is flattened next to its parent.
+        assertEquals(2, replyNode.getReplies().size());
+        assertEquals(nestedReply, replyNode.getReplies().get(0).getMessage());
+        assertEquals(deepReply, replyNode.getReplies().get(1).getMessage());
+        assertEquals(2, replyNode.getReplies().get(1).getDepth());
+        assertEquals(otherRoot, thread.get(1).getMessage());
+        assertEquals(orphan, thread.get(2).getMessage());
+        assertEquals(0, thread.get(2).getDepth());
+
+        List<ThreadedMessage> page = this.defaultMessageService.getThread(discussionReference, 1, 1, 2);
+        assertEquals(List.of(new ThreadedMessage(otherRoot, 0)), page);
+        // The whole discussion is never loaded, only the roots of the page and their replies, level by level.
+        verify(this.messageStoreService, never()).getMessagesByDiscussion(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void countByDiscussions()
+    {
+        DiscussionReference reference1 = new DiscussionReference("hint", "d1");
+        DiscussionReference reference2 = new DiscussionReference("hint", "d2");
+        Discussion discussion1 = new Discussion(reference1, "d1", "", new Date(), null);
+        Discussion discussion2 = new Discussion(reference2, "d2", "", new Date(), null);
+        // The store fails to count the third discussion.
+        DiscussionReference reference3 = new DiscussionReference("hint", "d3");
+        Discussion discussion3 = new Discussion(reference3, "d3", "", new Date(), null);
+        when(this.discussionCache.getMessageCount(reference1)).thenReturn(3L);
+        when(this.discussionCache.getMessageCountVersion(reference2)).thenReturn(7L);
+        when(this.messageStoreService.countByDiscussions(List.of(reference2, reference3)))
+            .thenReturn(Map.of(reference2, 5L));
+
+        assertEquals(Map.of(reference1, 3L, reference2, 5L, reference3, 0L),
+            this.defaultMessageService.countByDiscussions(List.of(discussion1, discussion2, discussion3)));
+        verify(this.discussionCache).setMessageCount(reference2, 5L, 7L);
+        verify(this.discussionCache, never()).setMessageCount(eq(reference1), anyLong(), anyLong());
+        verify(this.discussionCache, never()).setMessageCount(eq(reference3), anyLong(), anyLong());
+    }
+
+    @Test
+    void countByDiscussion()
+    {
+        DiscussionReference reference = new DiscussionReference("hint", "d1");
+        Discussion discussion = new Discussion(reference, "d1", "", new Date(), null);
+        when(this.discussionCache.getMessageCountVersion(reference)).thenReturn(3L);
+        when(this.messageStoreService.countByDiscussion(reference)).thenReturn(12L);
+
+        assertEquals(12L, this.defaultMessageService.countByDiscussion(discussion));
+        // The version is read before counting, so that a count made stale by a concurrent change is not kept.
+        InOrder inOrder = inOrder(this.discussionCache, this.messageStoreService);
+        inOrder.verify(this.discussionCache).getMessageCountVersion(reference);
+        inOrder.verify(this.messageStoreService).countByDiscussion(reference);
+        inOrder.verify(this.discussionCache).setMessageCount(reference, 12L, 3L);
+    }
+
+    private XWikiDocument mockMessageDocument()
+    {
+        XWikiDocument xWikiDocument = mock(XWikiDocument.class);
+        DocumentAuthors authors = mock(DocumentAuthors.class);
+        when(xWikiDocument.getAuthors()).thenReturn(authors);
+        UserReference contentAuthor = mock(UserReference.class);
+        when(authors.getContentAuthor()).thenReturn(contentAuthor);
+        when(this.documentUserReferenceSerializer.serialize(contentAuthor)).thenReturn(AUTHOR_DOCUMENT_REFERENCE);
+        return xWikiDocument;
+    }
+
+    private Message createMessage(String reference, String replyTo, Discussion discussion)
+    {
+        return new Message(new MessageReference("hint", reference), new MessageContent(reference, XWIKI_2_1), null,
+            null, null, discussion,
+            replyTo == null ? null : new MessageReference("hint", replyTo));
+    }
+}
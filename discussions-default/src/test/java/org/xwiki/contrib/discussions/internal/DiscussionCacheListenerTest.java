@@ -0,0 +1,234 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
+import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.DiscussionContext;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.events.ActionType;
+import org.xwiki.contrib.discussions.events.DiscussionContextEvent;
+import org.xwiki.contrib.discussions.events.DiscussionEvent;
+import org.xwiki.contrib.discussions.events.DiscussionsCacheInvalidationEvent;
+import org.xwiki.contrib.discussions.events.SynchronousDiscussionsEvent;
+import org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata;
+import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
+import org.xwiki.contrib.discussions.store.meta.MessageMetadata;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link DiscussionCacheListener}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@ComponentTest
+class DiscussionCacheListenerTest
+{
+    private static final DocumentReference HOLDER = new DocumentReference("subwiki", "Discussions", "D1");
+
+    @InjectMockComponents
+    private DiscussionCacheListener listener;
+
+    @MockComponent
+    private Provider<DiscussionCache> discussionCacheProvider;
+
+    @MockComponent
+    private Provider<ObservationManager> observationManagerProvider;
+
+    @MockComponent
+    private Provider<XWikiContext> xcontextProvider;
+
+    @MockComponent
+    private DiscussionReferencesSerializer discussionReferencesSerializer;
+
+    @MockComponent
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    private DiscussionCache discussionCache;
+
+    private ObservationManager observationManager;
+
+    @BeforeEach
+    void setup()
+    {
+        this.discussionCache = mock(DiscussionCache.class);
+        when(this.discussionCacheProvider.get()).thenReturn(this.discussionCache);
+        this.observationManager = mock(ObservationManager.class);
+        when(this.observationManagerProvider.get()).thenReturn(this.observationManager);
+        XWikiContext context = mock(XWikiContext.class);
+        when(context.getWikiId()).thenReturn("subwiki");
+        when(this.xcontextProvider.get()).thenReturn(context);
+    }
+
+    @Test
+    void onDiscussionEvent()
+    {
+        DiscussionReference reference = new DiscussionReference("hint", "D1");
+        this.listener.onEvent(new SynchronousDiscussionsEvent(new DiscussionEvent(ActionType.UPDATE)), "hint",
+            new Discussion(reference, "title", "description", new Date(), null));
+
+        verify(this.observationManager).notify(any(DiscussionsCacheInvalidationEvent.class), eq("subwiki"),
+            eq(reference));
+    }
+
+    @Test
+    void onDiscussionContextEvent()
+    {
+        DiscussionContextReference reference = new DiscussionContextReference("hint", "C1");
+        this.listener.onEvent(new SynchronousDiscussionsEvent(new DiscussionContextEvent(ActionType.UPDATE)), "hint",
+            new DiscussionContext(reference, "name", "description",
+                new DiscussionContextEntityReference("type", "entity")));
+
+        verify(this.observationManager).notify(any(DiscussionsCacheInvalidationEvent.class), eq("subwiki"),
+            eq(reference));
+    }
+
+    @Test
+    void onInvalidationEventFromOtherNode() throws Exception
+    {
+        DiscussionReference reference = new DiscussionReference("hint", "D1");
+        DiscussionContextReference contextReference = new DiscussionContextReference("hint", "C1");
+        when(this.discussionReferencesSerializer.serialize(reference)).thenReturn("D1;applicationHint=hint");
+        when(this.discussionReferencesSerializer.serialize(contextReference)).thenReturn("C1;applicationHint=hint");
+
+        // The remote observation manager serializes the events sent to the other cluster nodes.
+        this.listener.onEvent(transfer(new DiscussionsCacheInvalidationEvent()), transfer("subwiki"),
+            transfer(reference));
+        this.listener.onEvent(transfer(new DiscussionsCacheInvalidationEvent()), transfer("subwiki"),
+            transfer(contextReference));
+
+        verify(this.discussionCache).removeDiscussion("subwiki", "D1;applicationHint=hint");
+        verify(this.discussionCache).removeMessageCount("subwiki", "D1;applicationHint=hint");
+        verify(this.discussionCache).removeDiscussionContext("subwiki", "C1;applicationHint=hint");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Serializable> T transfer(T value) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) input.readObject();
+        }
+    }
+
+    @Test
+    void onDocumentUpdatedEvent()
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(HOLDER);
+        BaseObject discussionObject = mock(BaseObject.class);
+        when(discussionObject.getStringValue(DiscussionMetadata.REFERENCE_NAME)).thenReturn("D1;applicationHint=hint");
+        when(document.getXObject(DiscussionMetadata.XCLASS_REFERENCE)).thenReturn(discussionObject);
+        BaseObject messageObject = mock(BaseObject.class);
+        when(messageObject.getStringValue(MessageMetadata.REFERENCE_NAME)).thenReturn("M1;applicationHint=hint");
+        when(document.getXObject(MessageMetadata.XCLASS_REFERENCE)).thenReturn(messageObject);
+
+        this.listener.onEvent(new DocumentUpdatedEvent(), document, null);
+
+        verify(this.discussionCache).removeDiscussion("subwiki", "D1;applicationHint=hint");
+        verify(this.discussionCache).removeRenderedContent("subwiki", "M1;applicationHint=hint");
+    }
+
+    @Test
+    void onMessageDocumentCreatedEvent()
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(HOLDER);
+        BaseObject messageObject = mock(BaseObject.class);
+        when(messageObject.getStringValue(MessageMetadata.REFERENCE_NAME)).thenReturn("M1;applicationHint=hint");
+        when(messageObject.getStringValue(MessageMetadata.DISCUSSION_REFERENCE_NAME))
+            .thenReturn("D1;applicationHint=hint");
+        when(document.getXObject(MessageMetadata.XCLASS_REFERENCE)).thenReturn(messageObject);
+
+        this.listener.onEvent(new DocumentCreatedEvent(), document, null);
+
+        verify(this.discussionCache).removeMessageCount("subwiki", "D1;applicationHint=hint");
+        verify(this.discussionCache, never()).removeDiscussion(any(), any());
+    }
+
+    @Test
+    void onUserProfileUpdatedEvent()
+    {
+        DocumentReference userReference = new DocumentReference("xwiki", "XWiki", "U1");
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(userReference);
+        when(document.getXObject(new LocalDocumentReference("XWiki", "XWikiUsers"))).thenReturn(mock(BaseObject.class));
+        when(this.entityReferenceSerializer.serialize(userReference)).thenReturn("xwiki:XWiki.U1");
+
+        this.listener.onEvent(new DocumentUpdatedEvent(), document, null);
+
+        verify(this.discussionCache).removeActorDescriptor("user", "xwiki:XWiki.U1");
+    }
+
+    @Test
+    void onDocumentDeletedEvent()
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        XWikiDocument originalDocument = mock(XWikiDocument.class);
+        when(document.getOriginalDocument()).thenReturn(originalDocument);
+        when(document.getDocumentReference()).thenReturn(HOLDER);
+        when(originalDocument.getDocumentReference()).thenReturn(HOLDER);
+        BaseObject contextObject = mock(BaseObject.class);
+        when(contextObject.getStringValue(DiscussionContextMetadata.REFERENCE_NAME))
+            .thenReturn("C1;applicationHint=hint");
+        when(originalDocument.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE)).thenReturn(contextObject);
+
+        this.listener.onEvent(new DocumentDeletedEvent(), document, null);
+
+        verify(this.discussionCache).removeDiscussionContext("subwiki", "C1;applicationHint=hint");
+    }
+}
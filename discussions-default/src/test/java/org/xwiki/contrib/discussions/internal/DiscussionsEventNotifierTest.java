@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.concurrent.ContextStoreManager;
+import org.xwiki.contrib.discussions.events.ActionType;
+import org.xwiki.contrib.discussions.events.DiscussionEvent;
+import org.xwiki.contrib.discussions.events.MessageEvent;
+import org.xwiki.contrib.discussions.events.SynchronousDiscussionsEvent;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link DiscussionsEventNotifier}, with the asynchronous dispatch enabled.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@ComponentTest
+class DiscussionsEventNotifierTest
+{
+    @InjectMockComponents
+    private DiscussionsEventNotifier notifier;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @MockComponent
+    private ObservationManager observationManager;
+
+    @MockComponent
+    private Provider<ContextStoreManager> contextStoreManagerProvider;
+
+    private ContextStoreManager contextStoreManager;
+
+    @BeforeComponent
+    void configure()
+    {
+        when(this.configuration.getProperty(DiscussionsEventNotifier.ASYNC_PROPERTY, false)).thenReturn(true);
+        when(this.configuration.getProperty(DiscussionsEventNotifier.THREADS_PROPERTY, 2)).thenReturn(1);
+        when(this.configuration.getProperty(DiscussionsEventNotifier.QUEUE_SIZE_PROPERTY, 1000)).thenReturn(10);
+    }
+
+    @BeforeEach
+    void setup()
+    {
+        this.contextStoreManager = mock(ContextStoreManager.class);
+        when(this.contextStoreManagerProvider.get()).thenReturn(this.contextStoreManager);
+    }
+
+    @Test
+    void notifyAsync() throws Exception
+    {
+        Map<String, Serializable> contextStore = Map.of("wiki", "subwiki");
+        when(this.contextStoreManager.save(any())).thenReturn(contextStore);
+        DiscussionEvent event = new DiscussionEvent(ActionType.UPDATE);
+        CompletableFuture<Thread> asyncThread = new CompletableFuture<>();
+        doAnswer(invocation -> asyncThread.complete(Thread.currentThread())).when(this.observationManager)
+            .notify(same(event), eq("hint"), eq("data"));
+
+        assertTrue(this.notifier.isAsync());
+        this.notifier.notify(event, "hint", "data");
+
+        // The synchronous event is sent before the notification returns.
+        verify(this.observationManager).notify(argThat(e -> e instanceof SynchronousDiscussionsEvent
+            && ((SynchronousDiscussionsEvent) e).getEvent() == event), eq("hint"), eq("data"));
+        assertNotEquals(Thread.currentThread(), asyncThread.get(10, TimeUnit.SECONDS));
+        // The context of the sender is restored for the listeners, without its request.
+        verify(this.contextStoreManager).restore(contextStore);
+        assertEquals(1, this.notifier.getAsyncCount());
+        assertEquals(0, this.notifier.getCallerRunsCount());
+    }
+
+    @Test
+    void synchronousEventMatches()
+    {
+        SynchronousDiscussionsEvent listened = new SynchronousDiscussionsEvent(new DiscussionEvent(ActionType.UPDATE));
+
+        assertTrue(listened.matches(new SynchronousDiscussionsEvent(new DiscussionEvent(ActionType.UPDATE))));
+        assertFalse(listened.matches(new SynchronousDiscussionsEvent(new DiscussionEvent(ActionType.DELETE))));
+        assertFalse(listened.matches(new SynchronousDiscussionsEvent(new MessageEvent(ActionType.UPDATE))));
+        assertFalse(listened.matches(new DiscussionEvent(ActionType.UPDATE)));
+        assertTrue(new SynchronousDiscussionsEvent()
+            .matches(new SynchronousDiscussionsEvent(new MessageEvent(ActionType.CREATE))));
+    }
+}
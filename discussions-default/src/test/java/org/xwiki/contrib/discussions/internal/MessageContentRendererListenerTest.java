@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.discussions.MessageService;
+import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
+import org.xwiki.contrib.discussions.events.ActionType;
+import org.xwiki.contrib.discussions.events.MessageEvent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link MessageContentRendererListener}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@ComponentTest
+class MessageContentRendererListenerTest
+{
+    @InjectMockComponents
+    private MessageContentRendererListener listener;
+
+    @MockComponent
+    private Provider<MessageService> messageServiceProvider;
+
+    @Test
+    void onEvent()
+    {
+        MessageService messageService = mock(MessageService.class);
+        when(this.messageServiceProvider.get()).thenReturn(messageService);
+        MessageReference reference = new MessageReference("hint", "message");
+        Message message = mock(Message.class);
+        when(message.getReference()).thenReturn(reference);
+
+        this.listener.onEvent(new MessageEvent(ActionType.CREATE), "hint", message);
+
+        verify(messageService).renderContent(reference);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Provider;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.plugin.skinx.AbstractSkinExtensionPlugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link SkinExtensionsRecorder}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@ComponentTest
+class SkinExtensionsRecorderTest
+{
+    @InjectMockComponents
+    private SkinExtensionsRecorder recorder;
+
+    @MockComponent
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Mock
+    private XWikiContext context;
+
+    private AbstractSkinExtensionPlugin ssx;
+
+    private final Set<String> pulledResources = new LinkedHashSet<>();
+
+    @BeforeEach
+    void setUp()
+    {
+        when(this.xcontextProvider.get()).thenReturn(this.context);
+        XWiki wiki = mock(XWiki.class);
+        when(this.context.getWiki()).thenReturn(wiki);
+        this.ssx = mock(AbstractSkinExtensionPlugin.class);
+        when(wiki.getPlugin("ssx", this.context)).thenReturn(this.ssx);
+        when(this.ssx.getPulledResources(this.context)).thenReturn(this.pulledResources);
+    }
+
+    @Test
+    void record()
+    {
+        this.pulledResources.add("Skin.Before");
+        this.pulledResources.add("Skin.Shared");
+
+        Pair<String, Map<String, Set<String>>> result = this.recorder.record(() -> {
+            this.pulledResources.add("Skin.Shared");
+            this.pulledResources.add("Skin.Message");
+            return "html";
+        });
+
+        assertEquals("html", result.getLeft());
+        // The resources already pulled before the rendering are recorded too, when the rendering uses them.
+        assertEquals(Map.of("ssx", Set.of("Skin.Shared", "Skin.Message")), result.getRight());
+        assertEquals(List.of("Skin.Before", "Skin.Shared", "Skin.Message"), List.copyOf(this.pulledResources));
+    }
+
+    @Test
+    void use()
+    {
+        this.recorder.use(Map.of("ssx", Set.of("Skin.Message"), "jsx", Set.of("Skin.Script")));
+
+        verify(this.ssx).use("Skin.Message", this.context);
+    }
+}
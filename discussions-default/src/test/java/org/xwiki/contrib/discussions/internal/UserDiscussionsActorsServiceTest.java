@@ -20,6 +20,9 @@
 package org.xwiki.contrib.discussions.internal;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.inject.Provider;
@@ -27,9 +30,13 @@ import javax.inject.Provider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
+import org.xwiki.contrib.discussions.DiscussionContextService;
 import org.xwiki.contrib.discussions.domain.ActorDescriptor;
+import org.xwiki.contrib.discussions.domain.ActorsPage;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.test.junit5.mockito.ComponentTest;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
 import org.xwiki.test.junit5.mockito.MockComponent;
@@ -38,6 +45,10 @@ import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -58,6 +69,15 @@ class UserDiscussionsActorsServiceTest
     @MockComponent
     private Provider<XWikiContext> xcontextProvider;
 
+    @MockComponent
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @MockComponent
+    private DiscussionCache discussionCache;
+
+    @MockComponent
+    private DiscussionContextService discussionContextService;
+
     @Mock
     private XWikiContext xWikiContext;
 
@@ -84,4 +104,64 @@ class UserDiscussionsActorsServiceTest
         expected.setLink(URI.create("actorRef"));
         assertEquals(Optional.of(expected), actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    void resolveCached()
+    {
+        DocumentReference actorDocumentReference = new DocumentReference("xwiki", "XWiki", "ar");
+        when(this.documentReferenceResolver.resolve("XWiki.ar")).thenReturn(actorDocumentReference);
+        when(this.entityReferenceSerializer.serialize(actorDocumentReference)).thenReturn("xwiki:XWiki.ar");
+        ActorDescriptor cached = new ActorDescriptor();
+        cached.setName("NAME");
+        when(this.discussionCache.getActorDescriptor("user", "xwiki:XWiki.ar")).thenReturn(cached);
+
+        ActorDescriptor expected = new ActorDescriptor();
+        expected.setName("NAME");
+        expected.setLink(URI.create("XWiki.ar"));
+        assertEquals(Optional.of(expected), this.userDiscussionsActorsService.resolve("XWiki.ar"));
+        verify(this.xWiki, never()).getPlainUserName(any(), any());
+    }
+
+    @Test
+    void resolveAll()
+    {
+        DocumentReference user1 = new DocumentReference("xwiki", "XWiki", "U1");
+        DocumentReference user2 = new DocumentReference("xwiki", "XWiki", "U2");
+        when(this.documentReferenceResolver.resolve("XWiki.U1")).thenReturn(user1);
+        when(this.documentReferenceResolver.resolve("XWiki.U2")).thenReturn(user2);
+        when(this.entityReferenceSerializer.serialize(user1)).thenReturn("xwiki:XWiki.U1");
+        when(this.entityReferenceSerializer.serialize(user2)).thenReturn("xwiki:XWiki.U2");
+        when(this.xWiki.getPlainUserName(user1, this.xWikiContext)).thenReturn("User 1");
+        when(this.xWiki.getPlainUserName(user2, this.xWikiContext)).thenReturn("User 2");
+
+        Map<String, ActorDescriptor> actual =
+            this.userDiscussionsActorsService.resolveAll(List.of("XWiki.U2", "XWiki.U1", "XWiki.U2"));
+
+        assertEquals(List.of("XWiki.U2", "XWiki.U1"), new ArrayList<>(actual.keySet()));
+        assertEquals("User 1", actual.get("XWiki.U1").getName());
+        assertEquals("User 2", actual.get("XWiki.U2").getName());
+        verify(this.xWiki).getPlainUserName(user2, this.xWikiContext);
+        verify(this.discussionCache).setActorDescriptor(eq("user"), eq("xwiki:XWiki.U2"), any());
+    }
+
+    @Test
+    void listUsersPage()
+    {
+        DiscussionReference discussionReference = new DiscussionReference("hint", "D1");
+        when(this.discussionContextService.findEntityReferencesByDiscussionReference(discussionReference,
+            "messagestream-user", 1, 1)).thenReturn(List.of("XWiki.U2"));
+        when(this.discussionContextService.countEntityReferencesByDiscussionReference(discussionReference,
+            "messagestream-user")).thenReturn(3L);
+        DocumentReference user2 = new DocumentReference("xwiki", "XWiki", "U2");
+        when(this.documentReferenceResolver.resolve("XWiki.U2")).thenReturn(user2);
+        when(this.xWiki.getPlainUserName(user2, this.xWikiContext)).thenReturn("User 2");
+
+        ActorDescriptor expected = new ActorDescriptor();
+        expected.setName("User 2");
+        expected.setLink(URI.create("XWiki.U2"));
+        assertEquals(new ActorsPage(List.of(expected), 3),
+            this.userDiscussionsActorsService.listUsers(discussionReference, 1, 1));
+        verify(this.discussionContextService, never()).findEntityReferencesByDiscussionReference(discussionReference,
+            "messagestream-user", 0, 0);
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.xwiki.contrib.discussions.rest;
 
+import java.util.List;
+import java.util.Map;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -27,8 +30,10 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.Message;
 import org.xwiki.contrib.discussions.rest.model.CreateDiscussion;
 import org.xwiki.rest.XWikiRestException;
+import org.xwiki.stability.Unstable;
 
 /**
  * REST API for the Discussion CRUD.
@@ -50,6 +55,19 @@ public interface DiscussionREST
     @GET
     Discussion get(@PathParam("reference") String reference) throws XWikiRestException;
 
+    /**
+     * Retrieves messages from their references, in batch. The messages of the discussions the current user is not
+     * allowed to view are not returned.
+     *
+     * @param references the serialized message references
+     * @return the messages found, by serialized reference, in the order of the given references
+     * @since 3.2.1
+     */
+    @Path("/messages")
+    @GET
+    @Unstable
+    Map<String, Message> getMessages(@QueryParam("reference") List<String> references);
+
     /**
      * Returns a list of discussions, paginated and possibly filtered.
      *
@@ -74,7 +92,9 @@ public interface DiscussionREST
 
     /**
      * Returns of list of users of a discussion, paginated. The list of users is retrieved based on the type of the
-     * discussion and a discussion reference.
+     * discussion and a discussion reference. The users are in the order of the actor service of the type: the users
+     * are sorted by user reference, which lets the store select the page, while the other actor types are sorted by
+     * name. The list cannot be sorted otherwise.
      *
      * @param type the type of the discussion
      * @param reference the reference of a discussion
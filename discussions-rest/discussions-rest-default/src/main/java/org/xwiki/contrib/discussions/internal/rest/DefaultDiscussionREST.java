@@ -22,10 +22,10 @@ package org.xwiki.contrib.discussions.internal.rest;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -43,9 +43,12 @@ import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
 import org.xwiki.contrib.discussions.DiscussionsActorService;
 import org.xwiki.contrib.discussions.DiscussionsActorServiceResolver;
 import org.xwiki.contrib.discussions.MessageService;
-import org.xwiki.contrib.discussions.domain.ActorDescriptor;
+import org.xwiki.contrib.discussions.domain.ActorsPage;
 import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.DiscussionsPage;
+import org.xwiki.contrib.discussions.domain.Message;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
 import org.xwiki.contrib.discussions.rest.DiscussionLiveTableRow;
 import org.xwiki.contrib.discussions.rest.DiscussionREST;
 import org.xwiki.contrib.discussions.rest.DiscussionUserRow;
@@ -110,6 +113,24 @@ public class DefaultDiscussionREST implements DiscussionREST, XWikiRestComponent
                 String.format("Discussion with reference=[%s] not found.", reference)));
     }
 
+    @Override
+    public Map<String, Message> getMessages(List<String> references)
+    {
+        Map<String, Message> messages = new LinkedHashMap<>();
+        if (references == null || references.isEmpty()) {
+            return messages;
+        }
+        List<MessageReference> messageReferences = references.stream()
+            .map(reference -> this.discussionReferencesResolver.resolve(reference, MessageReference.class))
+            .collect(Collectors.toList());
+        this.messageService.getByReferences(messageReferences).forEach((reference, message) -> {
+            if (this.discussionService.canRead(message.getDiscussion().getReference())) {
+                messages.put(this.discussionReferencesSerializer.serialize(reference), message);
+            }
+        });
+        return messages;
+    }
+
     @Override
     public Response livetable(String type, String reference, Integer offset, Integer limit, String sort, String dir,
         Integer reqNo, String linkTemplate, Boolean jokerAllowed)
@@ -123,8 +144,12 @@ public class DefaultDiscussionREST implements DiscussionREST, XWikiRestComponent
         } else {
             references = Arrays.asList(reference);
         }
-        ltr.setTotalrows(this.discussionService.countByEntityReferences(type, references));
-        ltr.setRows(this.discussionService.findByEntityReferences(type, references, offset - 1, limit)
+        DiscussionsPage discussions =
+            this.discussionService.findPageByEntityReferences(type, references, offset - 1, limit);
+        Map<DiscussionReference, Long> messageCounts =
+            this.messageService.countByDiscussions(discussions.getDiscussions());
+        ltr.setTotalrows(discussions.getTotal());
+        ltr.setRows(discussions.getDiscussions()
             .stream()
             .map(d -> {
                 DiscussionLiveTableRow discussionLiveTableRow = new DiscussionLiveTableRow();
@@ -137,7 +162,7 @@ public class DefaultDiscussionREST implements DiscussionREST, XWikiRestComponent
                         getRootCauseMessage(e));
                 }
                 discussionLiveTableRow.setUpdateDate(d.getUpdateDate());
-                discussionLiveTableRow.setMessageCount(this.messageService.countByDiscussion(d));
+                discussionLiveTableRow.setMessageCount(messageCounts.getOrDefault(d.getReference(), 0L));
 
                 return discussionLiveTableRow;
             }).collect(Collectors.toList()));
@@ -159,17 +184,16 @@ public class DefaultDiscussionREST implements DiscussionREST, XWikiRestComponent
         ltr.setReqNo(reqNo);
         DiscussionsActorService discussionsActorService = this.discussionsActorServiceResolver.get(type);
 
-        Stream<ActorDescriptor> users = discussionsActorService.listUsers(discussionReference);
-        Stream<ActorDescriptor> collect = users.sorted(Comparator.comparing(ActorDescriptor::getName));
+        // The live table offsets start at 1.
+        int start = 0;
         if (offset != null) {
             ltr.setOffset(offset);
-            collect = collect.skip(offset - 1);
-        }
-        if (limit != null) {
-            collect = collect.limit(limit);
+            start = Math.max(0, offset - 1);
         }
-        ltr.setTotalrows(discussionsActorService.countUsers(discussionReference));
-        ltr.setRows(collect.map(it -> {
+        ActorsPage users =
+            discussionsActorService.listUsers(discussionReference, start, limit != null ? limit : 0);
+        ltr.setTotalrows(users.getTotal());
+        ltr.setRows(users.getActors().stream().map(it -> {
             EntityReference resolve = this.documentReferenceResolver.resolve(it.getLink().toASCIIString());
             String serialize = this.urlSerializer.serialize(resolve);
             return new DiscussionUserRow(it.getName(), serialize);
@@ -23,10 +23,11 @@ import java.net.URI;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TimeZone;
-import java.util.stream.Stream;
 
 import javax.inject.Named;
 import javax.ws.rs.core.Response;
@@ -44,8 +45,12 @@ import org.xwiki.contrib.discussions.DiscussionsActorService;
 import org.xwiki.contrib.discussions.DiscussionsActorServiceResolver;
 import org.xwiki.contrib.discussions.MessageService;
 import org.xwiki.contrib.discussions.domain.ActorDescriptor;
+import org.xwiki.contrib.discussions.domain.ActorsPage;
 import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.DiscussionsPage;
+import org.xwiki.contrib.discussions.domain.Message;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
 import org.xwiki.contrib.discussions.rest.model.CreateDiscussion;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
@@ -59,7 +64,10 @@ import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -122,6 +130,28 @@ class DefaultDiscussionRESTTest
         assertEquals("Discussion with reference=[ref] not found.", ref.getMessage());
     }
 
+    @Test
+    void getMessages()
+    {
+        DiscussionReference otherDiscussionReference = new DiscussionReference("hint", "other");
+        MessageReference messageReference1 = new MessageReference("hint", "m1");
+        MessageReference messageReference2 = new MessageReference("hint", "m2");
+        when(this.discussionReferencesResolver.resolve("m1", MessageReference.class)).thenReturn(messageReference1);
+        when(this.discussionReferencesResolver.resolve("m2", MessageReference.class)).thenReturn(messageReference2);
+        when(this.discussionReferencesSerializer.serialize(messageReference1)).thenReturn("m1");
+        Message message1 = new Message(messageReference1, null, null, null, null,
+            new Discussion(this.discussionReference, "ttl", "desc", new Date(), null), null);
+        Message message2 = new Message(messageReference2, null, null, null, null,
+            new Discussion(otherDiscussionReference, "ttl", "desc", new Date(), null), null);
+        Map<MessageReference, Message> messages = new LinkedHashMap<>();
+        messages.put(messageReference1, message1);
+        messages.put(messageReference2, message2);
+        when(this.messageService.getByReferences(asList(messageReference1, messageReference2))).thenReturn(messages);
+        when(this.discussionService.canRead(this.discussionReference)).thenReturn(true);
+
+        assertEquals(Map.of("m1", message1), this.target.getMessages(asList("m1", "m2")));
+    }
+
     @ParameterizedTest
     @CsvSource(value = { "true;{\"reqNo\":1,\"totalrows\":123,\"rows\":[{\"title\":\"d1-ttl\","
         + "\"updateDate\":\"2020/06/03 "
@@ -140,20 +170,18 @@ class DefaultDiscussionRESTTest
         Calendar calendar = Calendar.getInstance();
         calendar.set(2020, Calendar.JUNE, 3, 4, 1, 0);
         calendar.setTimeZone(TimeZone.getTimeZone("UTC+1"));
-        when(this.discussionService.countByEntityReferences("test-type", asList("test-ref"))).thenReturn(12L);
-        when(this.discussionService.countByEntityReferences("test-type", asList("test-ref", "*"))).thenReturn(123L);
         DiscussionReference discussionReference1 = new DiscussionReference("hint", "d1-ref");
         DiscussionReference discussionReference2 = new DiscussionReference("hint", "d2-ref");
         DiscussionReference discussionReference3 = new DiscussionReference("hint", "d3-ref");
         Discussion discussion1 = new Discussion(discussionReference1, "d1-ttl", "d1-desc", calendar.getTime(), null);
         Discussion discussion2 = new Discussion(discussionReference2, "d2-ttl", "d2-desc", calendar.getTime(), null);
         Discussion discussion3 = new Discussion(discussionReference3, "d3-ttl", "d3-desc", calendar.getTime(), null);
-        when(this.discussionService.findByEntityReferences("test-type", asList("test-ref"), 0, 10))
-            .thenReturn(asList(discussion1, discussion2));
-        when(this.discussionService.findByEntityReferences("test-type", asList("test-ref", "*"), 0, 10))
-            .thenReturn(asList(discussion1, discussion2, discussion3));
-        when(this.messageService.countByDiscussion(discussion1)).thenReturn(5L);
-        when(this.messageService.countByDiscussion(discussion2)).thenReturn(15L);
+        when(this.discussionService.findPageByEntityReferences("test-type", asList("test-ref"), 0, 10))
+            .thenReturn(new DiscussionsPage(asList(discussion1, discussion2), 12L));
+        when(this.discussionService.findPageByEntityReferences("test-type", asList("test-ref", "*"), 0, 10))
+            .thenReturn(new DiscussionsPage(asList(discussion1, discussion2, discussion3), 123L));
+        when(this.messageService.countByDiscussions(any())).thenReturn(
+            Map.of(discussionReference1, 5L, discussionReference2, 15L, discussionReference3, 0L));
         when(this.discussionReferencesSerializer.serialize(discussionReference1)).thenReturn("ref1");
         when(this.discussionReferencesSerializer.serialize(discussionReference2)).thenReturn("ref2");
         when(this.discussionReferencesSerializer.serialize(discussionReference3)).thenReturn("ref3");
@@ -162,6 +190,8 @@ class DefaultDiscussionRESTTest
             joker);
         assertEquals(200, response.getStatus());
         assertEquals(expected, response.getEntity());
+        verify(this.messageService, never()).countByDiscussion(any());
+        verify(this.discussionService, never()).countByEntityReferences(any(), any());
     }
 
     @Test
@@ -174,10 +204,8 @@ class DefaultDiscussionRESTTest
         actorDescriptor.setLink(URI.create("xwiki:XWiki.U1"));
 
         when(this.discussionsActorServiceResolver.get("testtype")).thenReturn(discussionsActorService);
-        when(discussionsActorService.listUsers(this.discussionReference)).thenReturn(Stream.of(
-            actorDescriptor
-        ));
-        when(discussionsActorService.countUsers(this.discussionReference)).thenReturn(1L);
+        when(discussionsActorService.listUsers(this.discussionReference, 0, 0))
+            .thenReturn(new ActorsPage(List.of(actorDescriptor), 1));
         when(this.documentReferenceResolver.resolve("xwiki:XWiki.U1"))
             .thenReturn(documentReference);
         when(this.urlSerializer.serialize(documentReference)).thenReturn("https://xwiki.org/U1");
@@ -190,6 +218,22 @@ class DefaultDiscussionRESTTest
         assertEquals(expected, response.getEntity());
     }
 
+    @Test
+    void listusersPage()
+    {
+        DiscussionsActorService discussionsActorService = mock(DiscussionsActorService.class);
+        when(this.discussionsActorServiceResolver.get("testtype")).thenReturn(discussionsActorService);
+        when(discussionsActorService.listUsers(this.discussionReference, 20, 10))
+            .thenReturn(new ActorsPage(List.of(), 25));
+
+        Response response = this.target.listusers("testtype", "ref", 21, 10, 2);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("{\"reqNo\":2,\"totalrows\":25,\"rows\":[],\"offset\":21,\"returnedrows\":0}",
+            response.getEntity());
+        verify(discussionsActorService, never()).countUsers(any());
+    }
+
     @Test
     void create() throws Exception
     {
@@ -0,0 +1,169 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
+import org.xwiki.contrib.discussions.DiscussionService;
+import org.xwiki.contrib.discussions.DiscussionsActorServiceResolver;
+import org.xwiki.contrib.discussions.MessageService;
+import org.xwiki.contrib.discussions.domain.ActorDescriptor;
+import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.DiscussionPage;
+import org.xwiki.contrib.discussions.domain.DiscussionPageMessage;
+import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.MessagePermissions;
+import org.xwiki.contrib.discussions.domain.references.ActorReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
+
+/**
+ * Assembles the {@link DiscussionPage} view models. The contents, the permissions and the authors of the messages of
+ * a page are loaded in batch, and each author is resolved once per page.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = { DiscussionPageBuilder.class })
+@Singleton
+public class DiscussionPageBuilder
+{
+    private static final int CURSOR_PAGE_INDEX = -1;
+
+    @Inject
+    private DiscussionService discussionService;
+
+    @Inject
+    private MessageService messageService;
+
+    @Inject
+    private DiscussionsActorServiceResolver actorsServiceResolver;
+
+    @Inject
+    private DiscussionReferencesSerializer discussionReferencesSerializer;
+
+    /**
+     * Build the page of the messages of a discussion following a cursor.
+     *
+     * @param reference the reference of the discussion
+     * @param cursor the reference of the last message of the previous page, or {@code null} to get the first page
+     * @param size the maximum number of messages of the page
+     * @return the page, or {@link Optional#empty()} if the discussion is not found or cannot be viewed by the current
+     *     user
+     */
+    public Optional<DiscussionPage> build(DiscussionReference reference, MessageReference cursor, int size)
+    {
+        return getDiscussion(reference).map(discussion -> {
+            List<Message> messages;
+            if (cursor == null) {
+                messages = this.messageService.getByDiscussionAfter(reference, null, size);
+            } else {
+                // A deleted cursor message ends the pagination instead of restarting from the first page.
+                messages = this.messageService.getByReference(cursor)
+                    .map(after -> this.messageService.getByDiscussionAfter(reference, after, size))
+                    .orElse(List.of());
+            }
+            return build(discussion, messages, this.messageService.countByDiscussion(discussion), CURSOR_PAGE_INDEX,
+                size);
+        });
+    }
+
+    /**
+     * Build a page of the messages of a discussion by index.
+     *
+     * @param reference the reference of the discussion
+     * @param pageIndex the index of the page, a negative index targets the last page
+     * @param size the number of messages per page
+     * @return the page, or {@link Optional#empty()} if the discussion is not found or cannot be viewed by the current
+     *     user
+     */
+    public Optional<DiscussionPage> build(DiscussionReference reference, int pageIndex, int size)
+    {
+        return getDiscussion(reference).map(discussion -> {
+            // Counted once, for the index of the last page and for the page itself.
+            long count = this.messageService.countByDiscussion(discussion);
+            int index = pageIndex;
+            if (index < 0) {
+                index = size > 0 ? (int) Math.max(0, (count - 1) / size) : 0;
+            }
+            List<Message> messages = this.messageService.getByDiscussion(reference, index * size, size);
+            return build(discussion, messages, count, index, size);
+        });
+    }
+
+    private Optional<Discussion> getDiscussion(DiscussionReference reference)
+    {
+        if (this.discussionService.canViewDiscussion(reference)) {
+            return this.discussionService.get(reference);
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    private DiscussionPage build(Discussion discussion, List<Message> messages, long count, int pageIndex, int size)
+    {
+        List<MessageReference> messageReferences =
+            messages.stream().map(Message::getReference).collect(Collectors.toList());
+        Map<MessageReference, String> contents = this.messageService.renderContents(messageReferences);
+        Map<MessageReference, MessagePermissions> permissions = this.messageService.getPermissions(messages);
+        Map<String, Map<String, ActorDescriptor>> actors = resolveActors(messages);
+
+        List<DiscussionPageMessage> pageMessages = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            ActorReference actor = message.getActorReference();
+            pageMessages.add(new DiscussionPageMessage(message,
+                this.discussionReferencesSerializer.serialize(message.getReference()),
+                contents.getOrDefault(message.getReference(), ""),
+                actors.get(actor.getType()).get(actor.getReference()),
+                permissions.getOrDefault(message.getReference(), new MessagePermissions(0))));
+        }
+
+        String nextCursor = null;
+        if (size > 0 && messages.size() == size) {
+            nextCursor = pageMessages.get(pageMessages.size() - 1).getReference();
+        }
+        return new DiscussionPage(discussion,
+            this.discussionReferencesSerializer.serialize(discussion.getReference()),
+            count, pageIndex, pageMessages, nextCursor);
+    }
+
+    private Map<String, Map<String, ActorDescriptor>> resolveActors(List<Message> messages)
+    {
+        // The authors are resolved in batch, by actor type.
+        Map<String, List<String>> referencesByType = messages.stream()
+            .map(Message::getActorReference)
+            .collect(Collectors.groupingBy(ActorReference::getType,
+                Collectors.mapping(ActorReference::getReference, Collectors.toList())));
+        Map<String, Map<String, ActorDescriptor>> actors = new HashMap<>();
+        referencesByType.forEach((type, references) ->
+            actors.put(type, this.actorsServiceResolver.get(type).resolveAll(references)));
+        return actors;
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.xwiki.contrib.discussions.script;
 
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -30,12 +33,15 @@ import org.xwiki.contrib.discussions.DiscussionsRightService;
 import org.xwiki.contrib.discussions.MessageService;
 import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.MessagePermissions;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.script.service.ScriptService;
 import org.xwiki.security.authorization.ContextualAuthorizationManager;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.security.authorization.RuleState;
+import org.xwiki.stability.Unstable;
 
 /**
  * Script service dedicated to the discussions rights.
@@ -94,6 +100,20 @@ public class DiscussionRightsScriptService implements ScriptService
         return this.messageService.canDelete(message);
     }
 
+    /**
+     * Evaluates the permissions of the current user on a list of messages at once, to avoid evaluating the rights on
+     * their discussion for each message.
+     *
+     * @param messages the messages
+     * @return the permissions of the current user, by message reference
+     * @since 3.2.1
+     */
+    @Unstable
+    public Map<MessageReference, MessagePermissions> getMessagePermissions(List<Message> messages)
+    {
+        return this.messageService.getPermissions(messages);
+    }
+
     /**
      * Allows a user to read a discussion. This operation requires the programming right.
      *
@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.script;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.DiscussionsEventsMetrics;
+import org.xwiki.contrib.discussions.store.MessageHolderCacheMetrics;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Script service exposing metrics about the discussions caches and events dispatch, to monitor their efficiency.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component
+@Named("discussions.metrics")
+@Singleton
+@Unstable
+public class DiscussionsMetricsScriptService implements ScriptService
+{
+    @Inject
+    private MessageHolderCacheMetrics messageHolderCacheMetrics;
+
+    @Inject
+    private DiscussionsEventsMetrics discussionsEventsMetrics;
+
+    /**
+     * @return the number of lookups of the holder page of a message answered by the cache of the current cluster
+     *     node, positively or negatively, since the node started
+     */
+    public long getMessageHolderCacheHitCount()
+    {
+        return this.messageHolderCacheMetrics.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups of the holder page of a message not answered by the cache of the current cluster
+     *     node, since the node started
+     */
+    public long getMessageHolderCacheMissCount()
+    {
+        return this.messageHolderCacheMetrics.getMissCount();
+    }
+
+    /**
+     * @return the number of discussions events dispatched asynchronously by the current cluster node, since the node
+     *     started
+     */
+    public long getEventsAsyncCount()
+    {
+        return this.discussionsEventsMetrics.getAsyncCount();
+    }
+
+    /**
+     * @return the number of discussions events dispatched in the thread which sent them because the asynchronous
+     *     dispatch queue was full, since the node started
+     */
+    public long getEventsCallerRunsCount()
+    {
+        return this.discussionsEventsMetrics.getCallerRunsCount();
+    }
+
+    /**
+     * @return the number of discussions events waiting to be dispatched asynchronously
+     */
+    public int getEventsQueueSize()
+    {
+        return this.discussionsEventsMetrics.getQueueSize();
+    }
+}
@@ -19,8 +19,10 @@
  */
 package org.xwiki.contrib.discussions.script;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -40,13 +42,16 @@ import org.xwiki.contrib.discussions.MessageService;
 import org.xwiki.contrib.discussions.domain.ActorDescriptor;
 import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.DiscussionContext;
+import org.xwiki.contrib.discussions.domain.DiscussionPage;
 import org.xwiki.contrib.discussions.domain.references.ActorReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
 import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.ThreadedMessage;
 import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
+import org.xwiki.contrib.discussions.internal.DiscussionPageBuilder;
 import org.xwiki.contrib.discussions.internal.QueryStringService;
 import org.xwiki.contrib.discussions.store.MessageHolderReferenceService;
 import org.xwiki.model.reference.DocumentReference;
@@ -105,6 +110,9 @@ public class DiscussionsScriptService implements ScriptService
     @Inject
     private MessageHolderReferenceService messageHolderReferenceService;
 
+    @Inject
+    private DiscussionPageBuilder discussionPageBuilder;
+
     /**
      * Creates a discussion context.
      *
@@ -268,6 +276,95 @@ public class DiscussionsScriptService implements ScriptService
         }
     }
 
+    /**
+     * Return the messages of a discussion following a given message. Contrary to
+     * {@link #getMessagesByDiscussion(Discussion, int, int)}, the pages stay stable while messages are added.
+     *
+     * @param discussion the discussion
+     * @param after the reference of the last message of the previous page, or {@code null} to get the first page
+     * @param limit the maximum number of messages to return
+     * @return the messages of the discussion, empty when the message of the cursor no longer exists
+     * @since 3.2.1
+     */
+    @Unstable
+    public List<Message> getMessagesByDiscussionAfter(Discussion discussion, MessageReference after, int limit)
+    {
+        if (this.discussionService.canViewDiscussion(discussion.getReference())) {
+            Message cursor = null;
+            if (after != null) {
+                Optional<Message> cursorMessage = this.messageService.getByReference(after);
+                if (!cursorMessage.isPresent()) {
+                    // The cursor message has been deleted: restarting from the first page would show the same
+                    // messages again.
+                    return List.of();
+                }
+                cursor = cursorMessage.get();
+            }
+            return this.messageService.getByDiscussionAfter(discussion.getReference(), cursor, limit);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Return a page of the messages of a discussion following a cursor, with everything needed to display them.
+     *
+     * @param reference the serialized reference of the discussion
+     * @param cursor the serialized reference of the last message of the previous page (see
+     *     {@link DiscussionPage#getNextCursor()}), or {@code null} to get the first page
+     * @param size the maximum number of messages of the page
+     * @return the page, or {@code null} if the discussion is not found or cannot be viewed by the current user
+     * @since 3.2.1
+     */
+    @Unstable
+    public DiscussionPage getDiscussionPage(String reference, String cursor, int size)
+    {
+        MessageReference cursorReference = null;
+        if (cursor != null) {
+            cursorReference = this.discussionReferencesResolver.resolve(cursor, MessageReference.class);
+        }
+        return this.discussionPageBuilder.build(
+            this.discussionReferencesResolver.resolve(reference, DiscussionReference.class), cursorReference, size)
+            .orElse(null);
+    }
+
+    /**
+     * Return a page of the messages of a discussion by index, with everything needed to display them.
+     *
+     * @param reference the serialized reference of the discussion
+     * @param pageIndex the index of the page, a negative index targets the last page
+     * @param size the number of messages per page
+     * @return the page, or {@code null} if the discussion is not found or cannot be viewed by the current user
+     * @since 3.2.1
+     */
+    @Unstable
+    public DiscussionPage getDiscussionPageAt(String reference, int pageIndex, int size)
+    {
+        return this.discussionPageBuilder.build(
+            this.discussionReferencesResolver.resolve(reference, DiscussionReference.class), pageIndex, size)
+            .orElse(null);
+    }
+
+    /**
+     * Return the messages of a discussion, assembled as reply trees and paginated by root message.
+     *
+     * @param discussion the discussion
+     * @param offset the offset of the first root message
+     * @param limit the maximum number of root messages, or {@code 0} to get all of them
+     * @param maxDepth the maximum depth of the replies, the replies nested deeper are flattened at this depth
+     * @return the root messages with their replies, or {@code null} if the current user cannot view the discussion
+     * @since 3.2.1
+     */
+    @Unstable
+    public List<ThreadedMessage> getMessageThread(Discussion discussion, int offset, int limit, int maxDepth)
+    {
+        if (this.discussionService.canViewDiscussion(discussion.getReference())) {
+            return this.messageService.getThread(discussion.getReference(), offset, limit, maxDepth);
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Return the number of messages in a discussion.
      *
@@ -445,4 +542,17 @@ public class DiscussionsScriptService implements ScriptService
     {
         return this.messageService.getByReference(reference).orElse(null);
     }
+
+    /**
+     * Retrieve messages by reference, in batch.
+     *
+     * @param references the references of the messages
+     * @return the messages found, by reference, in the order of the given references
+     * @since 3.2.1
+     */
+    @Unstable
+    public Map<MessageReference, Message> getMessages(Collection<MessageReference> references)
+    {
+        return this.messageService.getByReferences(references);
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.discussions.script.DiscussionsMetricsScriptService;
+import org.xwiki.contrib.discussions.store.MessageHolderCacheMetrics;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test of {@link DiscussionsMetricsScriptService}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@ComponentTest
+class DiscussionsMetricsScriptServiceTest
+{
+    @InjectMockComponents
+    private DiscussionsMetricsScriptService target;
+
+    @MockComponent
+    private MessageHolderCacheMetrics messageHolderCacheMetrics;
+
+    @MockComponent
+    private DiscussionsEventsMetrics discussionsEventsMetrics;
+
+    @Test
+    void getMessageHolderCacheCounts()
+    {
+        when(this.messageHolderCacheMetrics.getHitCount()).thenReturn(12L);
+        when(this.messageHolderCacheMetrics.getMissCount()).thenReturn(3L);
+
+        assertEquals(12L, this.target.getMessageHolderCacheHitCount());
+        assertEquals(3L, this.target.getMessageHolderCacheMissCount());
+    }
+
+    @Test
+    void getEventsCounts()
+    {
+        when(this.discussionsEventsMetrics.getAsyncCount()).thenReturn(42L);
+        when(this.discussionsEventsMetrics.getCallerRunsCount()).thenReturn(2L);
+        when(this.discussionsEventsMetrics.getQueueSize()).thenReturn(7);
+
+        assertEquals(42L, this.target.getEventsAsyncCount());
+        assertEquals(2L, this.target.getEventsCallerRunsCount());
+        assertEquals(7, this.target.getEventsQueueSize());
+    }
+}
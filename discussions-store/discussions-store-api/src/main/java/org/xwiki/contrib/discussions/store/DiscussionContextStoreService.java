@@ -20,7 +20,10 @@
 package org.xwiki.contrib.discussions.store;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.discussions.DiscussionException;
@@ -28,6 +31,7 @@ import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata;
 
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -111,4 +115,50 @@ public interface DiscussionContextStoreService
      * @return the list of the discussion contexts
      */
     List<BaseObject> findByDiscussionReference(DiscussionReference reference);
+
+    /**
+     * Search the entity references of the discussion contexts of a given type linked to a discussion, without loading
+     * the discussion contexts.
+     *
+     * @param reference the reference of the discussion
+     * @param entityReferenceType the type of the entity references of the discussion contexts
+     * @param offset the offset
+     * @param limit the limit, {@code 0} for no limit
+     * @return the distinct entity references, sorted
+     * @since 3.2.1
+     */
+    default List<String> findEntityReferencesByDiscussionReference(DiscussionReference reference,
+        String entityReferenceType, int offset, int limit)
+    {
+        Stream<String> entityReferences = getEntityReferences(reference, entityReferenceType).skip(offset);
+        if (limit > 0) {
+            entityReferences = entityReferences.limit(limit);
+        }
+        return entityReferences.collect(Collectors.toList());
+    }
+
+    /**
+     * Count the distinct entity references of the discussion contexts of a given type linked to a discussion.
+     *
+     * @param reference the reference of the discussion
+     * @param entityReferenceType the type of the entity references of the discussion contexts
+     * @return the number of distinct entity references
+     * @since 3.2.1
+     */
+    default long countEntityReferencesByDiscussionReference(DiscussionReference reference,
+        String entityReferenceType)
+    {
+        return getEntityReferences(reference, entityReferenceType).count();
+    }
+
+    private Stream<String> getEntityReferences(DiscussionReference reference, String entityReferenceType)
+    {
+        // By default, the discussion contexts are loaded.
+        return findByDiscussionReference(reference).stream()
+            .filter(discussionContext -> Objects.equals(entityReferenceType,
+                discussionContext.getStringValue(DiscussionContextMetadata.ENTITY_REFERENCE_TYPE_NAME)))
+            .map(discussionContext -> discussionContext.getStringValue(DiscussionContextMetadata.ENTITY_REFERENCE_NAME))
+            .distinct()
+            .sorted();
+    }
 }
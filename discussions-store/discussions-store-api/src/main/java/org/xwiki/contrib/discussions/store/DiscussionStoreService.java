@@ -22,6 +22,7 @@ package org.xwiki.contrib.discussions.store;
 import java.util.List;
 import java.util.Optional;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.discussions.DiscussionException;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
@@ -61,7 +62,7 @@ public interface DiscussionStoreService
     Optional<BaseObject> get(DiscussionReference reference);
 
     /**
-     * Find the list of discussions attached to the list of discussion context references.
+     * Find the list of discussions attached to exactly the given discussion contexts: all of them and no other one.
      *
      * @param discussionContextReferences the list of discussion context reference
      * @return the list of discussions
@@ -108,10 +109,31 @@ public interface DiscussionStoreService
      */
     long countByEntityReferences(String type, List<String> references);
 
+    /**
+     * Find a page of the discussions attached to discussion contexts of the given type, along with the total number of
+     * discussions. By default, the discussions are counted with {@link #countByEntityReferences(String, List)} and
+     * then found with {@link #findByEntityReferences(String, List, Integer, Integer)}, the implementations able to
+     * compute both in a single search can override this method.
+     *
+     * @param type the entity type
+     * @param references the entity reference
+     * @param offset the offset
+     * @param limit the limit
+     * @return the total number of discussions and the paginated list of results
+     * @since 3.2.1
+     */
+    default Pair<Long, List<BaseObject>> findPageByEntityReferences(String type, List<String> references,
+        Integer offset, Integer limit)
+    {
+        return Pair.of(countByEntityReferences(type, references),
+            findByEntityReferences(type, references, offset, limit));
+    }
+
     /**
      * Update the update date of the discussion.
      *
      * @param discussionReference the reference of the discussion
      */
     void touch(DiscussionReference discussionReference);
+
 }
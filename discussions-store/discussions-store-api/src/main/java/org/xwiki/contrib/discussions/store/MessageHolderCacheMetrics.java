@@ -0,0 +1,45 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Provides metrics about the cache of the holder pages of the messages on the current cluster node, to monitor its
+ * efficiency.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Unstable
+@Role
+public interface MessageHolderCacheMetrics
+{
+    /**
+     * @return the number of lookups answered by the cache, positively or negatively, since the startup
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups not answered by the cache since the startup
+     */
+    long getMissCount();
+}
@@ -19,20 +19,36 @@
  */
 package org.xwiki.contrib.discussions.store;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.apache.commons.lang3.StringUtils;
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.discussions.DiscussionException;
+import org.xwiki.contrib.discussions.DiscussionReferencesResolver;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
+import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.MessageContent;
 import org.xwiki.contrib.discussions.domain.references.ActorReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
+import org.xwiki.contrib.discussions.store.meta.MessageMetadata;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.rendering.syntax.Syntax;
 
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.web.Utils;
 
 /**
  * Low-level storage service for the message objects.
@@ -86,6 +102,89 @@ public interface MessageStoreService
      */
     List<BaseObject> getByDiscussion(DiscussionReference discussionReference, int offset, int limit);
 
+    /**
+     * Returns a paginated list of messages of a discussion. Contrary to
+     * {@link #getByDiscussion(DiscussionReference, int, int)}, the messages are built directly from the stored
+     * values, without loading the documents holding them. Use the former when the message objects are needed.
+     *
+     * @param discussion the discussion
+     * @param offset the offset
+     * @param limit the limit
+     * @return the list of messages
+     * @since 3.2.1
+     */
+    default List<Message> getMessagesByDiscussion(Discussion discussion, int offset, int limit)
+    {
+        return toMessages(getByDiscussion(discussion.getReference(), offset, limit), discussion);
+    }
+
+    /**
+     * Returns the messages of a discussion following a given message, ordered by update date and reference. Contrary
+     * to {@link #getMessagesByDiscussion(Discussion, int, int)}, the cost of the query does not depend on the depth
+     * of the page and the pages stay stable while messages are added to the discussion. By default, all the messages
+     * of the discussion are loaded with {@link #getByDiscussion(DiscussionReference, int, int)}.
+     *
+     * @param discussion the discussion
+     * @param after the last message of the previous page, or {@code null} to get the first page
+     * @param limit the maximum number of messages to return
+     * @return the list of messages
+     * @since 3.2.1
+     */
+    default List<Message> getMessagesByDiscussionAfter(Discussion discussion, Message after, int limit)
+    {
+        Stream<Message> messages = getAllMessages(discussion).stream();
+        if (after != null) {
+            messages = messages.filter(message -> getMessagesOrder().compare(message, after) > 0);
+        }
+        if (limit > 0) {
+            messages = messages.limit(limit);
+        }
+        return messages.collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a paginated list of the root messages of a discussion, ordered by update date and reference. The root
+     * messages are the messages which are not replies, and the replies to a message which does not exist anymore.
+     * By default, all the messages of the discussion are loaded with
+     * {@link #getByDiscussion(DiscussionReference, int, int)}.
+     *
+     * @param discussion the discussion
+     * @param offset the offset
+     * @param limit the limit
+     * @return the list of root messages
+     * @since 3.2.1
+     */
+    default List<Message> getRootMessagesByDiscussion(Discussion discussion, int offset, int limit)
+    {
+        List<Message> messages = getAllMessages(discussion);
+        Set<MessageReference> references = messages.stream().map(Message::getReference).collect(Collectors.toSet());
+        Stream<Message> roots = messages.stream()
+            .filter(message -> message.getReplyTo() == null || !references.contains(message.getReplyTo()))
+            .skip(offset);
+        if (limit > 0) {
+            roots = roots.limit(limit);
+        }
+        return roots.collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the direct replies to the given messages of a discussion, ordered by update date and reference. By
+     * default, all the messages of the discussion are loaded with
+     * {@link #getByDiscussion(DiscussionReference, int, int)}.
+     *
+     * @param discussion the discussion
+     * @param parents the references of the messages to get the replies of
+     * @return the list of replies
+     * @since 3.2.1
+     */
+    default List<Message> getRepliesByMessages(Discussion discussion, Collection<MessageReference> parents)
+    {
+        Set<MessageReference> parentReferences = new HashSet<>(parents);
+        return getAllMessages(discussion).stream()
+            .filter(message -> message.getReplyTo() != null && parentReferences.contains(message.getReplyTo()))
+            .collect(Collectors.toList());
+    }
+
     /**
      * Returns the number of messages of a discussion.
      *
@@ -94,6 +193,23 @@ public interface MessageStoreService
      */
     long countByDiscussion(DiscussionReference discussionReference);
 
+    /**
+     * Returns the number of messages of several discussions, counted with a single grouped query. By default, each
+     * discussion is counted with {@link #countByDiscussion(DiscussionReference)}.
+     *
+     * @param discussionReferences the discussion references
+     * @return the count of messages, by discussion reference, in the order of the given references
+     * @since 3.2.1
+     */
+    default Map<DiscussionReference, Long> countByDiscussions(Collection<DiscussionReference> discussionReferences)
+    {
+        Map<DiscussionReference, Long> counts = new LinkedHashMap<>();
+        for (DiscussionReference discussionReference : discussionReferences) {
+            counts.put(discussionReference, countByDiscussion(discussionReference));
+        }
+        return counts;
+    }
+
     /**
      * Get a message by its unique reference.
      *
@@ -102,6 +218,23 @@ public interface MessageStoreService
      */
     Optional<BaseObject> getByReference(MessageReference reference);
 
+    /**
+     * Get messages by their unique references. Contrary to calling {@link #getByReference(MessageReference)} for
+     * each reference, the holders of the messages are resolved with a single query.
+     *
+     * @param references the message references
+     * @return the objects of the messages found, by reference, in the order of the given references
+     * @since 3.2.1
+     */
+    default Map<MessageReference, BaseObject> getByReferences(Collection<MessageReference> references)
+    {
+        Map<MessageReference, BaseObject> messages = new LinkedHashMap<>();
+        for (MessageReference reference : references) {
+            getByReference(reference).ifPresent(message -> messages.put(reference, message));
+        }
+        return messages;
+    }
+
     /**
      * Get a message by the entity reference of its message object.
      *
@@ -116,4 +249,42 @@ public interface MessageStoreService
      * @param reference the message reference
      */
     void delete(MessageReference reference);
+
+    private List<Message> getAllMessages(Discussion discussion)
+    {
+        List<Message> messages = toMessages(getByDiscussion(discussion.getReference(), 0, 0), discussion);
+        messages.sort(getMessagesOrder());
+        return messages;
+    }
+
+    private static Comparator<Message> getMessagesOrder()
+    {
+        return Comparator.comparing(Message::getUpdateDate)
+            .thenComparing(message -> message.getReference().getReference());
+    }
+
+    private List<Message> toMessages(List<BaseObject> messageObjects, Discussion discussion)
+    {
+        // The default implementations cannot be injected with the resolver.
+        DiscussionReferencesResolver resolver = Utils.getComponent((Type) DiscussionReferencesResolver.class);
+        List<Message> messages = new ArrayList<>(messageObjects.size());
+        for (BaseObject messageObject : messageObjects) {
+            MessageReference replyTo = null;
+            if (StringUtils.isNotEmpty(messageObject.getStringValue(MessageMetadata.REPLY_TO_NAME))) {
+                replyTo = resolver.resolve(messageObject.getStringValue(MessageMetadata.REPLY_TO_NAME),
+                    MessageReference.class);
+            }
+            messages.add(new Message(
+                resolver.resolve(messageObject.getStringValue(MessageMetadata.REFERENCE_NAME), MessageReference.class),
+                new MessageContent(messageObject.getLargeStringValue(MessageMetadata.CONTENT_NAME),
+                    messageObject.getOwnerDocument().getSyntax()),
+                new ActorReference(messageObject.getStringValue(MessageMetadata.AUTHOR_TYPE_NAME),
+                    messageObject.getStringValue(MessageMetadata.AUTHOR_REFERENCE_NAME)),
+                messageObject.getDateValue(MessageMetadata.CREATE_DATE_NAME),
+                messageObject.getDateValue(MessageMetadata.UPDATE_DATE_NAME),
+                discussion,
+                replyTo));
+        }
+        return messages;
+    }
 }
@@ -0,0 +1,39 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Generates the unique identifiers used in the names of the pages holding the discussion entities. The implementation
+ * to use is selected with the {@code discussions.store.pageIdGenerator} property of {@code xwiki.properties}, whose
+ * value is the hint of the component.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Role
+public interface PageHolderIdGenerator
+{
+    /**
+     * @return a new unique identifier, that can be used in a page name
+     */
+    String generate();
+}
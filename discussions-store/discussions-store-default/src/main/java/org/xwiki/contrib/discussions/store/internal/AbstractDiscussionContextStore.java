@@ -23,12 +23,15 @@ import java.util.List;
 import java.util.Optional;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import org.slf4j.Logger;
 import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
 import org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata;
 import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 
@@ -49,11 +52,32 @@ public abstract class AbstractDiscussionContextStore
     @Inject
     protected DiscussionReferencesSerializer discussionReferencesSerializer;
 
+    @Inject
+    private PageHolderReferenceResolver pageHolderReferenceResolver;
+
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localEntityReferenceSerializer;
+
     @Inject
     private Logger logger;
 
     protected Optional<String> findDiscussionContextPage(DiscussionContextReference reference)
     {
+        return findDiscussionContextPage(reference, null);
+    }
+
+    protected Optional<String> findDiscussionContextPage(DiscussionContextReference reference,
+        DiscussionContextEntityReference entityReference)
+    {
+        Optional<String> holder = this.pageHolderReferenceResolver.getDiscussionContextDocument(reference,
+            entityReference)
+            .map(document -> this.localEntityReferenceSerializer.serialize(document.getDocumentReference()));
+        if (holder.isPresent()) {
+            return holder;
+        }
+        // Fallback for the discussion contexts which are not stored at their expected location, or whose entity
+        // reference is not known.
         try {
             List<String> execute =
                 this.queryManager
@@ -67,7 +67,7 @@ public class DefaultDiscussionContextMetadataStoreService extends AbstractDiscus
     @Override
     public boolean loadMetadata(DiscussionContext discussionContext)
     {
-        return this.findDiscussionContextPage(discussionContext.getReference())
+        return this.findDiscussionContextPage(discussionContext.getReference(), discussionContext.getEntityReference())
             .map(discussionContextPage -> {
                 DocumentReference documentReference = this.documentReferenceResolver.resolve(discussionContextPage);
                 return loadMetadata(documentReference, discussionContext);
@@ -113,7 +113,8 @@ public class DefaultDiscussionContextMetadataStoreService extends AbstractDiscus
     @Override
     public boolean saveMetadata(DiscussionContext discussionContext, Map<String, String> values)
     {
-        Optional<String> discussionContextPage = this.findDiscussionContextPage(discussionContext.getReference());
+        Optional<String> discussionContextPage =
+            this.findDiscussionContextPage(discussionContext.getReference(), discussionContext.getEntityReference());
         XWikiContext context = this.xcontextProvider.get();
         boolean result = false;
         if (discussionContextPage.isPresent()) {
@@ -19,7 +19,6 @@
  */
 package org.xwiki.contrib.discussions.store.internal;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -39,8 +38,9 @@ import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityRe
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.store.DiscussionContextStoreService;
+import org.xwiki.contrib.discussions.store.DiscussionStoreService;
 import org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata;
-import org.xwiki.localization.ContextualLocalizationManager;
+import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
@@ -54,7 +54,6 @@ import com.xpn.xwiki.objects.BaseObject;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCauseMessage;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.CREATION_DATE_NAME;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.DESCRIPTION_NAME;
-import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.DISCUSSIONS_NAME;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.ENTITY_REFERENCE_NAME;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.ENTITY_REFERENCE_TYPE_NAME;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.NAME_NAME;
@@ -72,21 +71,52 @@ import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata
 public class DefaultDiscussionContextStoreService extends AbstractDiscussionContextStore
     implements DiscussionContextStoreService
 {
+    private static final int MAX_PAGE_GENERATION_ATTEMPTS = 3;
+
+    private static final String TYPE_PARAMETER = "type";
+
+    private static final String REFERENCE_PARAMETER = "reference";
+
+    // Joins the discussion contexts with the list of discussion contexts of the discussion.
+    private static final String DISCUSSION_REFERENCE_FROM = "from XWikiDocument as doc, "
+        + "BaseObject as obj, "
+        + "BaseObject as discussionObj, "
+        + "com.xpn.xwiki.objects.StringProperty as reference_field, "
+        + "com.xpn.xwiki.objects.StringProperty as discussion_reference_field, "
+        + "com.xpn.xwiki.objects.DBStringListProperty as discussion_contexts_field ";
+
+    private static final String DISCUSSION_REFERENCE_WHERE = String.format("where doc.fullName=obj.name "
+        + "and obj.className='%s' "
+        + "and reference_field.id.id=obj.id "
+        + "and reference_field.id.name = '%s' "
+        + "and discussionObj.className='%s' "
+        + "and discussion_reference_field.id.id=discussionObj.id "
+        + "and discussion_reference_field.id.name = '%s' "
+        + "and discussion_reference_field.value = :reference "
+        + "and discussion_contexts_field.id.id=discussionObj.id "
+        + "and discussion_contexts_field.id.name = '%s' "
+        + "and reference_field.value in elements(discussion_contexts_field.list) ",
+        DiscussionContextMetadata.XCLASS_FULLNAME, REFERENCE_NAME, DiscussionMetadata.XCLASS_FULLNAME,
+        DiscussionMetadata.REFERENCE_NAME, DiscussionMetadata.DISCUSSION_CONTEXTS_NAME);
+
     @Inject
     private Logger logger;
 
     @Inject
     private Provider<XWikiContext> xcontextProvider;
 
-    @Inject
-    private ContextualLocalizationManager localizationManager;
-
     @Inject
     private PageHolderReferenceFactory pageHolderReferenceFactory;
 
     @Inject
     private DocumentAuthorsManager documentAuthorsManager;
 
+    @Inject
+    private DiscussionStoreService discussionStoreService;
+
+    @Inject
+    private StoreIdentityMap storeIdentityMap;
+
     @Override
     public DiscussionContextReference create(String applicationHint, String name, String description,
         DiscussionContextEntityReference entityReference,
@@ -112,6 +142,7 @@ public class DefaultDiscussionContextStoreService extends AbstractDiscussionCont
             document.setHidden(true);
             this.documentAuthorsManager.setDocumentAuthors(document.getAuthors(), null, configurationParameters);
             context.getWiki().saveDocument(document, context);
+            this.storeIdentityMap.put(reference, object);
 
             result = reference;
         } catch (XWikiException e) {
@@ -136,7 +167,10 @@ public class DefaultDiscussionContextStoreService extends AbstractDiscussionCont
             object.set(ENTITY_REFERENCE_NAME, entityReference.getReference(), context);
             try {
                 context.getWiki().saveDocument(object.getOwnerDocument(), "Update discussion context", true, context);
+                this.storeIdentityMap.put(reference, object);
             } catch (XWikiException e) {
+                // The object was modified, it does not match the stored discussion context anymore.
+                this.storeIdentityMap.remove(reference);
                 throw new DiscussionException(String.format("Error while saving document to update discussion "
                     + "context with reference [%s]", reference), e);
             }
@@ -148,12 +182,18 @@ public class DefaultDiscussionContextStoreService extends AbstractDiscussionCont
 
     @Override
     public Optional<BaseObject> get(DiscussionContextReference reference)
+    {
+        return this.storeIdentityMap.get(reference, this::getStored);
+    }
+
+    private Optional<BaseObject> getStored(DiscussionContextReference reference)
     {
         Optional<String> discussionContextPage = this.findDiscussionContextPage(reference);
         if (discussionContextPage.isPresent()) {
             String page = discussionContextPage.get();
             try {
-                return this.mapToBaseObject(page);
+                // The object is not copied here, the identity map copies it.
+                return this.getStoredObject(page);
             } catch (XWikiException e) {
                 this.logger.warn("Error when getting discussion context information from [{}]: [{}]", page,
                     ExceptionUtils.getRootCauseMessage(e));
@@ -170,39 +210,25 @@ public class DefaultDiscussionContextStoreService extends AbstractDiscussionCont
         return Optional.of(document.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE));
     }
 
+    private Optional<BaseObject> getStoredObject(String result) throws XWikiException
+    {
+        XWikiDocument document = this.xcontextProvider.get().getWiki()
+            .getDocument(result, EntityType.DOCUMENT, this.xcontextProvider.get());
+        return Optional.of(document.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE));
+    }
+
     @Override
     public boolean link(DiscussionContextReference discussionContextReference, DiscussionReference discussionReference)
     {
-        return get(discussionContextReference)
-            .map(discussionContext -> {
-                List listValue = new ArrayList(discussionContext.getListValue(DISCUSSIONS_NAME));
-                String serializedReference = this.discussionReferencesSerializer.serialize(discussionReference);
-                if (!listValue.contains(serializedReference)) {
-                    listValue.add(serializedReference);
-                    discussionContext.setDBStringListValue(DISCUSSIONS_NAME, listValue);
-                    save(discussionContext, true, "discussions.store.discussionContext.linkDiscussion");
-                    return true;
-                }
-                return false;
-            }).orElse(false);
+        // The links are only stored on the discussion side, the list of discussions of a context is unbounded.
+        return this.discussionStoreService.link(discussionReference, discussionContextReference);
     }
 
     @Override
     public boolean unlink(DiscussionContextReference discussionContextReference,
         DiscussionReference discussionReference)
     {
-        return get(discussionContextReference)
-            .map(discussionContext -> {
-                List listValue = new ArrayList(discussionContext.getListValue(DISCUSSIONS_NAME));
-                String serializedReference = this.discussionReferencesSerializer.serialize(discussionReference);
-                if (listValue.contains(serializedReference)) {
-                    listValue.remove(serializedReference);
-                    discussionContext.setDBStringListValue(DISCUSSIONS_NAME, listValue);
-                    save(discussionContext, true, "discussions.store.discussionContext.unlinkDiscussion");
-                    return true;
-                }
-                return false;
-            }).orElse(false);
+        return this.discussionStoreService.unlink(discussionReference, discussionContextReference);
     }
 
     @Override
@@ -229,7 +255,7 @@ public class DefaultDiscussionContextStoreService extends AbstractDiscussionCont
                 DiscussionContextMetadata.XCLASS_FULLNAME, REFERENCE_NAME,
                 ENTITY_REFERENCE_TYPE_NAME, ENTITY_REFERENCE_NAME),
                 Query.HQL)
-                .bindValue("type", entityReference.getType())
+                .bindValue(TYPE_PARAMETER, entityReference.getType())
                 .bindValue(ENTITY_REFERENCE_NAME, entityReference.getReference())
                 .execute();
 
@@ -255,17 +281,10 @@ public class DefaultDiscussionContextStoreService extends AbstractDiscussionCont
     public List<BaseObject> findByDiscussionReference(DiscussionReference reference)
     {
         try {
-            return this.queryManager.createQuery(String.format("select doc.fullName "
-                    + "from XWikiDocument as doc, "
-                    + "BaseObject as obj, "
-                    + "DBStringListProperty as discussions "
-                    + "where doc.fullName=obj.name "
-                    + "and obj.className='%s' "
-                    + "and discussions.id.id=obj.id "
-                    + "and discussions.name = '%s' "
-                    + "and :reference in elements(discussions.list) ",
-                DiscussionContextMetadata.XCLASS_FULLNAME, DISCUSSIONS_NAME), Query.HQL)
-                .bindValue("reference", this.discussionReferencesSerializer.serialize(reference))
+            return this.queryManager.createQuery("select distinct doc.fullName "
+                    + DISCUSSION_REFERENCE_FROM
+                    + DISCUSSION_REFERENCE_WHERE, Query.HQL)
+                .bindValue(REFERENCE_PARAMETER, this.discussionReferencesSerializer.serialize(reference))
                 .<String>execute()
                 .stream()
                 .map(ref -> {
@@ -285,16 +304,75 @@ public class DefaultDiscussionContextStoreService extends AbstractDiscussionCont
         }
     }
 
+    @Override
+    public List<String> findEntityReferencesByDiscussionReference(DiscussionReference reference,
+        String entityReferenceType, int offset, int limit)
+    {
+        try {
+            // Only the entity references are selected, the discussion context documents are not loaded.
+            return createEntityReferencesQuery("select distinct entity_reference_field.value ",
+                "order by entity_reference_field.value", reference, entityReferenceType)
+                .setOffset(offset)
+                .setLimit(limit)
+                .execute();
+        } catch (QueryException e) {
+            this.logger.warn("Failed to query the entity references of the discussion contexts of type [{}] linked "
+                + "to the discussion [{}]. Cause: [{}].", entityReferenceType, reference, getRootCauseMessage(e));
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public long countEntityReferencesByDiscussionReference(DiscussionReference reference,
+        String entityReferenceType)
+    {
+        try {
+            List<Long> counts = createEntityReferencesQuery("select count(distinct entity_reference_field.value) ",
+                "", reference, entityReferenceType).execute();
+            return counts.isEmpty() ? 0 : counts.get(0);
+        } catch (QueryException e) {
+            this.logger.warn("Failed to count the entity references of the discussion contexts of type [{}] linked "
+                + "to the discussion [{}]. Cause: [{}].", entityReferenceType, reference, getRootCauseMessage(e));
+            return 0;
+        }
+    }
+
+    private Query createEntityReferencesQuery(String select, String orderBy, DiscussionReference reference,
+        String entityReferenceType) throws QueryException
+    {
+        return this.queryManager.createQuery(select
+                + DISCUSSION_REFERENCE_FROM
+                + ", com.xpn.xwiki.objects.StringProperty as type_field, "
+                + "com.xpn.xwiki.objects.StringProperty as entity_reference_field "
+                + DISCUSSION_REFERENCE_WHERE
+                + String.format("and type_field.id.id=obj.id "
+                    + "and type_field.id.name = '%s' "
+                    + "and entity_reference_field.id.id=obj.id "
+                    + "and entity_reference_field.id.name = '%s' "
+                    + "and type_field.value = :type ", ENTITY_REFERENCE_TYPE_NAME, ENTITY_REFERENCE_NAME)
+                + orderBy,
+                Query.HQL)
+            .bindValue(REFERENCE_PARAMETER, this.discussionReferencesSerializer.serialize(reference))
+            .bindValue(TYPE_PARAMETER, entityReferenceType);
+    }
+
     private XWikiDocument generateUniquePage(String applicationHint, String name,
         DiscussionContextEntityReference contextEntityReference,
-        DiscussionStoreConfigurationParameters configurationParameters) throws XWikiException
+        DiscussionStoreConfigurationParameters configurationParameters) throws XWikiException, DiscussionException
     {
-        XWikiDocument document;
         XWikiContext context = getContext();
-        DocumentReference documentReference = this.pageHolderReferenceFactory.createPageHolderReference(
-            PageHolderReferenceFactory.DiscussionEntity.DISCUSSION_CONTEXT, name, applicationHint,
-            contextEntityReference, configurationParameters);
-        document = context.getWiki().getDocument(documentReference, context);
+        XWikiDocument document = null;
+        // The holder page must not exist yet, otherwise its content and rights would not be the expected ones.
+        for (int i = 0; i < MAX_PAGE_GENERATION_ATTEMPTS && (document == null || !document.isNew()); i++) {
+            DocumentReference documentReference = this.pageHolderReferenceFactory.createPageHolderReference(
+                PageHolderReferenceFactory.DiscussionEntity.DISCUSSION_CONTEXT, name, applicationHint,
+                contextEntityReference, configurationParameters);
+            document = context.getWiki().getDocument(documentReference, context);
+        }
+        if (!document.isNew()) {
+            throw new DiscussionException(
+                String.format("Failed to generate a new page to hold the discussion context [%s].", name));
+        }
         document.setHidden(true);
         context.getWiki().saveDocument(document, context);
         return document;
@@ -304,15 +382,4 @@ public class DefaultDiscussionContextStoreService extends AbstractDiscussionCont
     {
         return this.xcontextProvider.get();
     }
-
-    private void save(BaseObject discussionContext, boolean minor, String translationKey)
-    {
-        XWikiContext context = this.getContext();
-        try {
-            context.getWiki().saveDocument(discussionContext.getOwnerDocument(),
-                this.localizationManager.getTranslationPlain(translationKey), minor, context);
-        } catch (XWikiException e) {
-            this.logger.warn("Failed to save the discussion context. Cause: [{}]", getRootCauseMessage(e));
-        }
-    }
 }
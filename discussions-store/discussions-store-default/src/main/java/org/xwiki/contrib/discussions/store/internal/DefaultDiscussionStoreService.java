@@ -21,8 +21,10 @@ package org.xwiki.contrib.discussions.store.internal;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -39,7 +41,6 @@ import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
 import org.xwiki.contrib.discussions.store.DiscussionStoreService;
 import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
-import org.xwiki.localization.ContextualLocalizationManager;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
@@ -72,6 +73,41 @@ import static org.xwiki.query.Query.XWQL;
 @Singleton
 public class DefaultDiscussionStoreService implements DiscussionStoreService
 {
+    private static final String TYPE_PARAMETER = "type";
+
+    private static final String REFERENCES_PARAMETER = "references";
+
+    // Selects the discussions linked to the discussion contexts of the requested entities.
+    private static final String ENTITY_REFERENCES_FROM = "FROM XWikiDocument  doc, "
+        + "XWikiDocument docDC, "
+        + "BaseObject obj, "
+        + "BaseObject objDC, "
+        + "DBStringListProperty discussionContextReference, "
+        + "StringProperty discussionContextReferenceField, "
+        + "StringProperty discussionReferenceField, "
+        + "StringProperty discussionContextERType, "
+        + "StringProperty discussionContextERRef ";
+
+    private static final String ENTITY_REFERENCES_WHERE = "where doc.fullName = obj.name "
+        + "AND docDC.fullName = objDC.name "
+        + "AND obj.className='Discussions.Code.DiscussionClass' "
+        + "AND objDC.className='Discussions.Code.DiscussionContextClass' "
+        + "AND discussionContextReference.id.id = obj.id "
+        + "AND discussionContextReference.name = 'discussionContexts' "
+        + "AND discussionReferenceField.id.id = obj.id "
+        + "AND discussionReferenceField.name = 'reference' "
+        + "AND discussionContextReferenceField.id.id = objDC.id "
+        + "AND discussionContextReferenceField.name = 'reference' "
+        + "AND discussionContextERType.id.id = objDC.id "
+        + "AND discussionContextERType.name = 'entityReferenceType' "
+        + "AND discussionContextERRef.id.id = objDC.id "
+        + "AND discussionContextERRef.name = 'entityReference' "
+        + "AND discussionContextReferenceField.value IN elements(discussionContextReference.list) "
+        + "AND discussionContextERType.value = :type "
+        + "AND discussionContextERRef.value IN :references ";
+
+    private static final int MAX_PAGE_GENERATION_ATTEMPTS = 3;
+
     @Inject
     private Logger logger;
 
@@ -88,14 +124,23 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
     private DiscussionReferencesResolver discussionReferencesResolver;
 
     @Inject
-    private ContextualLocalizationManager localizationManager;
+    private PageHolderReferenceFactory pageHolderReferenceFactory;
 
     @Inject
-    private PageHolderReferenceFactory pageHolderReferenceFactory;
+    private PageHolderReferenceResolver pageHolderReferenceResolver;
 
     @Inject
     private DocumentAuthorsManager documentAuthorsManager;
 
+    @Inject
+    private DiscussionTouchBuffer discussionTouchBuffer;
+
+    @Inject
+    private StoreIdentityMap storeIdentityMap;
+
+    @Inject
+    private DiscussionHolderUpdater discussionHolderUpdater;
+
     @Override
     public BaseObject create(String applicationHint, String title, String description,
         String mainDocument, DiscussionStoreConfigurationParameters configurationParameters) throws
@@ -119,6 +164,7 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
             document.setHidden(true);
             documentAuthorsManager.setDocumentAuthors(document.getAuthors(), null, configurationParameters);
             context.getWiki().saveDocument(document, context);
+            this.storeIdentityMap.put(reference, object);
             result = object;
         } catch (XWikiException e) {
             throw new DiscussionException(String.format("Failed to create a Discussion with title=[%s], "
@@ -131,6 +177,23 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
     @Override
     public Optional<BaseObject> get(DiscussionReference reference)
     {
+        Optional<BaseObject> discussion = this.storeIdentityMap.get(reference, this::getStored);
+        Date pendingUpdateDate = this.discussionTouchBuffer.getPendingUpdateDate(reference);
+        if (pendingUpdateDate != null) {
+            // The returned object is a copy, so this does not change the document cached by XWiki.
+            discussion.ifPresent(object -> object.setDateValue(UPDATE_DATE_NAME, pendingUpdateDate));
+        }
+        return discussion;
+    }
+
+    private Optional<BaseObject> getStored(DiscussionReference reference)
+    {
+        Optional<XWikiDocument> holder = this.pageHolderReferenceResolver.getDiscussionDocument(reference);
+        // The object is not copied here, the identity map copies it.
+        if (holder.isPresent()) {
+            return Optional.of(holder.get().getXObject(DiscussionMetadata.XCLASS_REFERENCE));
+        }
+        // Fallback for the discussions which are not stored at their expected location.
         try {
             List<String> execute =
                 this.queryManager
@@ -148,7 +211,7 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
             }
             String result = execute.get(0);
 
-            return mapToBaseObject(result);
+            return getStoredObject(result);
         } catch (QueryException | XWikiException e) {
             this.logger.warn("Failed to get the Discussion with reference=[{}]. Cause: [{}]", reference,
                 getRootCauseMessage(e));
@@ -163,55 +226,73 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
         return Optional.of(document.getXObject(DiscussionMetadata.XCLASS_REFERENCE));
     }
 
+    private Optional<BaseObject> getStoredObject(String result) throws XWikiException
+    {
+        XWikiDocument document = this.xcontextProvider.get().getWiki()
+            .getDocument(result, EntityType.DOCUMENT, this.xcontextProvider.get());
+        return Optional.of(document.getXObject(DiscussionMetadata.XCLASS_REFERENCE));
+    }
+
+    private Optional<BaseObject> loadDiscussion(String pageName, boolean copy)
+    {
+        try {
+            return copy ? mapToBaseObject(pageName) : getStoredObject(pageName);
+        } catch (XWikiException e) {
+            this.logger.warn("Failed to load the discussion held by [{}]. Cause: [{}]", pageName,
+                getRootCauseMessage(e));
+            return Optional.empty();
+        }
+    }
+
     @Override
     public List<BaseObject> findByDiscussionContexts(List<DiscussionContextReference> discussionContextReferences)
     {
+        Set<String> serializedReferences = new LinkedHashSet<>();
+        for (DiscussionContextReference discussionContextReference : discussionContextReferences) {
+            serializedReferences.add(this.discussionReferencesSerializer.serialize(discussionContextReference));
+        }
+        if (serializedReferences.isEmpty()) {
+            return emptyList();
+        }
         try {
-            // Selects the discussions that are linked EXACTLY to the requested discussion contexts.
-            List<List<String>> subResults = new ArrayList<>();
-            for (DiscussionContextReference discussionContextReference : discussionContextReferences) {
-                // Selects the discussions that are linked to the request contexts individually.
-                subResults.add(this.queryManager.createQuery(String.format(
-                    "select str_field.value "
-                        + "from XWikiDocument as doc , "
-                        + "BaseObject as obj , "
-                        + "com.xpn.xwiki.objects.DBStringListProperty as field , "
-                        + "com.xpn.xwiki.objects.StringProperty as str_field "
-                        + "where (:discussionContextReference in elements(field.list)) "
-                        + "and doc.fullName=obj.name "
-                        + "and obj.className='%s' "
-                        + "and field.id.id=obj.id "
-                        + "and str_field.id.id=obj.id "
-                        + "and field.id.name='discussionContexts' "
-                        + "and str_field.id.name='reference' ",
-                        DiscussionMetadata.XCLASS_FULLNAME), Query.HQL)
-                    .bindValue("discussionContextReference",
-                        this.discussionReferencesSerializer.serialize(discussionContextReference))
-                    .execute());
-            }
-            // Selects the discussions that are linked to exactly as much contexts as the number requested.
-            subResults.add(this.queryManager.createQuery(String.format(
-                "select str_field.value "
+            // Selects the discussions that are linked to exactly the requested discussion contexts: all of them, and no
+            // other one.
+            List<Object[]> rows = this.queryManager.createQuery(String.format(
+                "select doc.fullName, discussionReference.value "
                     + "from XWikiDocument as doc , "
                     + "BaseObject as obj , "
-                    + "com.xpn.xwiki.objects.DBStringListProperty as field , "
-                    + "com.xpn.xwiki.objects.StringProperty as str_field "
+                    + "com.xpn.xwiki.objects.StringProperty as discussionReference , "
+                    + "com.xpn.xwiki.objects.DBStringListProperty as field "
+                    + "join field.list as discussionContext "
                     + "where doc.fullName=obj.name "
                     + "and obj.className='%s' "
+                    + "and discussionReference.id.id=obj.id "
+                    + "and discussionReference.id.name='%s' "
                     + "and field.id.id=obj.id "
-                    + "and str_field.id.id=obj.id "
-                    + "and field.id.name='discussionContexts' "
-                    + "and str_field.id.name='reference' "
-                    + "GROUP BY str_field.value HAVING sum(size(field.list)) >= :contextsListSize",
-                    DiscussionMetadata.XCLASS_FULLNAME), Query.HQL)
-                .bindValue("contextsListSize", (long) discussionContextReferences.size()).execute());
-
-            return intersection(subResults).stream()
-                .map(result -> this.discussionReferencesResolver.resolve(result, DiscussionReference.class))
-                .map(this::get)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toList());
+                    + "and field.id.name='%s' "
+                    + "and size(field.list) = :contextsSize "
+                    + "and discussionContext in (:discussionContextReferences) "
+                    + "group by doc.fullName, discussionReference.value "
+                    + "having count(distinct discussionContext) = :contextsListSize",
+                    DiscussionMetadata.XCLASS_FULLNAME, REFERENCE_NAME, DISCUSSION_CONTEXTS_NAME), Query.HQL)
+                .bindValue("discussionContextReferences", new ArrayList<>(serializedReferences))
+                .bindValue("contextsSize", serializedReferences.size())
+                .bindValue("contextsListSize", (long) serializedReferences.size())
+                .execute();
+
+            List<BaseObject> discussions = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                String pageName = (String) row[0];
+                DiscussionReference reference =
+                    this.discussionReferencesResolver.resolve((String) row[1], DiscussionReference.class);
+                // The discussions already loaded during the request are not loaded again, and the others are kept
+                // for the rest of the request.
+                Optional<BaseObject> discussion = reference != null
+                    ? this.storeIdentityMap.get(reference, key -> loadDiscussion(pageName, false))
+                    : loadDiscussion(pageName, true);
+                discussion.ifPresent(discussions::add);
+            }
+            return discussions;
         } catch (QueryException e) {
             this.logger.warn("Failed to retrieve the discussions link to the discussion contexts [{}]. Cause: [{}]",
                 discussionContextReferences, getRootCauseMessage(e));
@@ -226,38 +307,14 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
     {
         try {
             Query query = this.queryManager.createQuery("SELECT distinct doc.fullName, discussionUpdateDate.value "
-                + "FROM XWikiDocument  doc, "
-                + "XWikiDocument docDC, "
-                + "BaseObject obj, "
-                + "BaseObject objDC, "
-                + "DBStringListProperty discussionContextReference, "
-                + "DateProperty as discussionUpdateDate, "
-                + "StringProperty discussionContextReferenceField, "
-                + "StringProperty discussionReferenceField, "
-                + "StringProperty discussionContextERType, "
-                + "StringProperty discussionContextERRef "
-                + "where doc.fullName = obj.name "
-                + "AND docDC.fullName = objDC.name "
-                + "AND obj.className='Discussions.Code.DiscussionClass' "
-                + "AND objDC.className='Discussions.Code.DiscussionContextClass' "
-                + "AND discussionContextReference.id.id = obj.id "
-                + "AND discussionContextReference.name = 'discussionContexts' "
+                + ENTITY_REFERENCES_FROM
+                + ", DateProperty as discussionUpdateDate "
+                + ENTITY_REFERENCES_WHERE
                 + "AND discussionUpdateDate.id.id = obj.id "
                 + "AND discussionUpdateDate.name = '" + UPDATE_DATE_NAME + "' "
-                + "AND discussionReferenceField.id.id = obj.id "
-                + "AND discussionReferenceField.name = 'reference' "
-                + "AND discussionContextReferenceField.id.id = objDC.id "
-                + "AND discussionContextReferenceField.name = 'reference' "
-                + "AND discussionContextERType.id.id = objDC.id "
-                + "AND discussionContextERType.name = 'entityReferenceType' "
-                + "AND discussionContextERRef.id.id = objDC.id "
-                + "AND discussionContextERRef.name = 'entityReference' "
-                + "AND discussionContextReferenceField.value IN elements(discussionContextReference.list) "
-                + "AND discussionContextERType.value = :type "
-                + "AND discussionContextERRef.value IN :references "
                 + "ORDER BY discussionUpdateDate.value DESC", Query.HQL)
-                .bindValue("type", type)
-                .bindValue("references", references);
+                .bindValue(TYPE_PARAMETER, type)
+                .bindValue(REFERENCES_PARAMETER, references);
             if (offset != null) {
                 query = query.setOffset(offset);
             }
@@ -291,34 +348,10 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
         long count;
         try {
             List<Long> execute = this.queryManager.createQuery("SELECT count(distinct discussionReferenceField.value) "
-                + "FROM XWikiDocument  doc, "
-                + "XWikiDocument docDC, "
-                + "BaseObject obj, "
-                + "BaseObject objDC, "
-                + "DBStringListProperty discussionContextReference, "
-                + "StringProperty discussionContextReferenceField, "
-                + "StringProperty discussionReferenceField, "
-                + "StringProperty discussionContextERType, "
-                + "StringProperty discussionContextERRef "
-                + "where doc.fullName = obj.name "
-                + "AND docDC.fullName = objDC.name "
-                + "AND obj.className='Discussions.Code.DiscussionClass' "
-                + "AND objDC.className='Discussions.Code.DiscussionContextClass' "
-                + "AND discussionContextReference.id.id = obj.id "
-                + "AND discussionContextReference.name = 'discussionContexts' "
-                + "AND discussionReferenceField.id.id = obj.id "
-                + "AND discussionReferenceField.name = 'reference' "
-                + "AND discussionContextReferenceField.id.id = objDC.id "
-                + "AND discussionContextReferenceField.name = 'reference' "
-                + "AND discussionContextERType.id.id = objDC.id "
-                + "AND discussionContextERType.name = 'entityReferenceType' "
-                + "AND discussionContextERRef.id.id = objDC.id "
-                + "AND discussionContextERRef.name = 'entityReference' "
-                + "AND discussionContextReferenceField.value IN elements(discussionContextReference.list) "
-                + "AND discussionContextERType.value = :type "
-                + "AND discussionContextERRef.value IN :references", Query.HQL)
-                .bindValue("type", type)
-                .bindValue("references", references).execute();
+                + ENTITY_REFERENCES_FROM
+                + ENTITY_REFERENCES_WHERE, Query.HQL)
+                .bindValue(TYPE_PARAMETER, type)
+                .bindValue(REFERENCES_PARAMETER, references).execute();
             count = execute.get(0);
         } catch (QueryException e) {
             this.logger
@@ -332,58 +365,88 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
     @Override
     public void touch(DiscussionReference discussionReference)
     {
-        get(discussionReference).ifPresent(discussion -> {
-            discussion.setDateValue(UPDATE_DATE_NAME, new Date());
-            save(discussion, true, "discussions.store.discussion.updateDate");
-        });
+        if (this.discussionTouchBuffer.isEnabled()) {
+            this.discussionTouchBuffer.touch(discussionReference);
+        } else {
+            Optional<DocumentReference> holder = get(discussionReference).map(BaseObject::getDocumentReference);
+            if (holder.isPresent()) {
+                try {
+                    this.discussionHolderUpdater.update(holder.get(), discussionReference, discussion -> {
+                        discussion.setDateValue(UPDATE_DATE_NAME, new Date());
+                        return true;
+                    }, true, "discussions.store.discussion.updateDate");
+                } catch (XWikiException e) {
+                    this.logger.warn("Failed to save the update date of the discussion [{}]. Cause: [{}]",
+                        discussionReference, getRootCauseMessage(e));
+                }
+            }
+        }
     }
 
     @Override
     public boolean link(DiscussionReference discussionReference, DiscussionContextReference discussionContextReference)
     {
-        return get(discussionReference)
-            .map(discussion -> {
-                List listValue = new ArrayList(discussion.getListValue(DISCUSSION_CONTEXTS_NAME));
-                String serializedReference = this.discussionReferencesSerializer.serialize(discussionContextReference);
-                if (!listValue.contains(serializedReference)) {
-                    listValue.add(serializedReference);
-                    discussion.setDBStringListValue(DISCUSSION_CONTEXTS_NAME, listValue);
-                    save(discussion, true, "discussions.store.discussion.linkContext");
-                    return true;
-                }
-                return false;
-            }).orElse(false);
+        return updateDiscussionContexts(discussionReference, discussionContextReference, true,
+            "discussions.store.discussion.linkContext");
     }
 
     @Override
     public boolean unlink(DiscussionReference discussionReference,
         DiscussionContextReference discussionContextReference)
     {
-        return get(discussionReference)
-            .map(
-                discussion -> {
-                    List listValue = new ArrayList(discussion.getListValue(DISCUSSION_CONTEXTS_NAME));
-                    String serializedReference = this.discussionReferencesSerializer
-                        .serialize(discussionContextReference);
-                    if (listValue.contains(serializedReference)) {
-                        listValue.remove(serializedReference);
-                        discussion.setDBStringListValue(DISCUSSION_CONTEXTS_NAME, listValue);
-                        save(discussion, true, "discussions.store.discussion.unlinkContext");
-                        return true;
-                    }
-                    return false;
-                }).orElse(false);
+        return updateDiscussionContexts(discussionReference, discussionContextReference, false,
+            "discussions.store.discussion.unlinkContext");
+    }
+
+    private boolean updateDiscussionContexts(DiscussionReference discussionReference,
+        DiscussionContextReference discussionContextReference, boolean link, String translationKey)
+    {
+        Optional<DocumentReference> holder = get(discussionReference).map(BaseObject::getDocumentReference);
+        if (!holder.isPresent()) {
+            return false;
+        }
+        String serializedReference = this.discussionReferencesSerializer.serialize(discussionContextReference);
+        try {
+            // The links are not part of the history of the discussion, no new version of the document is created for
+            // them.
+            return this.discussionHolderUpdater.update(holder.get(), discussionReference, discussion -> {
+                List<String> discussionContexts = new ArrayList<>(discussion.getListValue(DISCUSSION_CONTEXTS_NAME));
+                boolean updated;
+                if (link) {
+                    updated = !discussionContexts.contains(serializedReference)
+                        && discussionContexts.add(serializedReference);
+                } else {
+                    updated = discussionContexts.remove(serializedReference);
+                }
+                if (updated) {
+                    discussion.setDBStringListValue(DISCUSSION_CONTEXTS_NAME, discussionContexts);
+                    discussion.setDateValue(UPDATE_DATE_NAME, new Date());
+                }
+                return updated;
+            }, false, translationKey);
+        } catch (XWikiException e) {
+            this.logger.warn("Failed to update the link between the discussion [{}] and the discussion context [{}]. "
+                + "Cause: [{}]", discussionReference, discussionContextReference, getRootCauseMessage(e));
+            return false;
+        }
     }
 
     private XWikiDocument generateUniquePage(String applicationHint, String title,
-        DiscussionStoreConfigurationParameters configurationParameters) throws XWikiException
+        DiscussionStoreConfigurationParameters configurationParameters) throws XWikiException, DiscussionException
     {
-        XWikiDocument document;
-        DocumentReference documentReference = this.pageHolderReferenceFactory.createPageHolderReference(
-            PageHolderReferenceFactory.DiscussionEntity.DISCUSSION, title, applicationHint, null,
-            configurationParameters);
         XWikiContext context = getContext();
-        document = context.getWiki().getDocument(documentReference, context);
+        XWikiDocument document = null;
+        // The holder page must not exist yet, otherwise its content and rights would not be the expected ones.
+        for (int i = 0; i < MAX_PAGE_GENERATION_ATTEMPTS && (document == null || !document.isNew()); i++) {
+            DocumentReference documentReference = this.pageHolderReferenceFactory.createPageHolderReference(
+                PageHolderReferenceFactory.DiscussionEntity.DISCUSSION, title, applicationHint, null,
+                configurationParameters);
+            document = context.getWiki().getDocument(documentReference, context);
+        }
+        if (!document.isNew()) {
+            throw new DiscussionException(
+                String.format("Failed to generate a new page to hold the discussion [%s].", title));
+        }
         document.setHidden(true);
         context.getWiki().saveDocument(document, context);
         return document;
@@ -393,31 +456,4 @@ public class DefaultDiscussionStoreService implements DiscussionStoreService
     {
         return this.xcontextProvider.get();
     }
-
-    private void save(BaseObject discussion, boolean minor, String translationKey)
-    {
-        XWikiContext context = getContext();
-        try {
-            discussion.setDateValue(UPDATE_DATE_NAME, new Date());
-            context.getWiki().saveDocument(discussion.getOwnerDocument(),
-                this.localizationManager.getTranslationPlain(translationKey), minor, context);
-        } catch (XWikiException e) {
-            this.logger.warn("Failed to save the discussion context. Cause: [{}]", getRootCauseMessage(e));
-        }
-    }
-
-    /**
-     * Returns the intersection of the provided lists.
-     *
-     * @param lists the lists
-     * @return the element commons to all the provided lists
-     */
-    private List<String> intersection(List<List<String>> lists)
-    {
-        List<String> ret = lists.get(0);
-        for (int i = 1; i < lists.size(); i++) {
-            ret.retainAll(lists.get(i));
-        }
-        return ret;
-    }
 }
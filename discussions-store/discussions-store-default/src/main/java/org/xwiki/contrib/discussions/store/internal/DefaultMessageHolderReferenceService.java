@@ -46,12 +46,26 @@ public class DefaultMessageHolderReferenceService implements MessageHolderRefere
 {
     private static final String MESSAGE_HOLDER_REFERENCE_SESSION_ATTRIBUTE = "xwikiDiscussionsMessageHolderReferences";
 
+    private static final int SESSION_LOCKS_COUNT = 64;
+
     @Inject
     private Provider<XWikiContext> contextProvider;
 
     @Inject
     private PageHolderReferenceFactory pageHolderReferenceFactory;
 
+    private final Object[] sessionLocks = new Object[SESSION_LOCKS_COUNT];
+
+    /**
+     * Default constructor.
+     */
+    public DefaultMessageHolderReferenceService()
+    {
+        for (int i = 0; i < SESSION_LOCKS_COUNT; i++) {
+            this.sessionLocks[i] = new Object();
+        }
+    }
+
     private HttpSession getCurrentSession()
     {
         XWikiContext context = this.contextProvider.get();
@@ -64,8 +78,18 @@ public class DefaultMessageHolderReferenceService implements MessageHolderRefere
         MessageHolderReferenceSession messageHolderReferenceSession =
             (MessageHolderReferenceSession) currentSession.getAttribute(MESSAGE_HOLDER_REFERENCE_SESSION_ATTRIBUTE);
         if (messageHolderReferenceSession == null) {
-            messageHolderReferenceSession = new MessageHolderReferenceSession(currentSession.getId());
-            currentSession.setAttribute(MESSAGE_HOLDER_REFERENCE_SESSION_ATTRIBUTE, messageHolderReferenceSession);
+            // Only the creation of the session attribute needs to be guarded, and only against the other requests of
+            // the same session: the map it holds is concurrent.
+            String sessionId = currentSession.getId();
+            synchronized (this.sessionLocks[Math.floorMod(sessionId.hashCode(), SESSION_LOCKS_COUNT)]) {
+                messageHolderReferenceSession = (MessageHolderReferenceSession) currentSession
+                    .getAttribute(MESSAGE_HOLDER_REFERENCE_SESSION_ATTRIBUTE);
+                if (messageHolderReferenceSession == null) {
+                    messageHolderReferenceSession = new MessageHolderReferenceSession(sessionId);
+                    currentSession.setAttribute(MESSAGE_HOLDER_REFERENCE_SESSION_ATTRIBUTE,
+                        messageHolderReferenceSession);
+                }
+            }
         }
         return messageHolderReferenceSession.getMessageHolders();
     }
@@ -82,28 +106,15 @@ public class DefaultMessageHolderReferenceService implements MessageHolderRefere
     public DocumentReference getNextMessageHolderReference(DiscussionReference discussionReference,
         DiscussionStoreConfigurationParameters configurationParameters)
     {
-        synchronized (this) {
-            Map<DiscussionReference, DocumentReference> temporaryReferencesMapForCurrentSession =
-                this.getTemporaryReferencesMapForCurrentSession();
-            temporaryReferencesMapForCurrentSession.putIfAbsent(discussionReference,
-                createTemporaryMessageReference(discussionReference, configurationParameters)
-            );
-            return temporaryReferencesMapForCurrentSession.get(discussionReference);
-        }
+        return this.getTemporaryReferencesMapForCurrentSession().computeIfAbsent(discussionReference,
+            key -> createTemporaryMessageReference(key, configurationParameters));
     }
 
     @Override
     public void consumeReference(DiscussionReference discussionReference, DocumentReference documentReference)
     {
-        synchronized (this) {
-            Map<DiscussionReference, DocumentReference> temporaryReferencesMapForCurrentSession =
-                this.getTemporaryReferencesMapForCurrentSession();
-
-            // We only perform the removal in case of match between the given document reference and the one stored in
-            // the map: it might avoid unseen bugs and shouldn't be very expensive.
-            if (documentReference.equals(temporaryReferencesMapForCurrentSession.get(discussionReference))) {
-                temporaryReferencesMapForCurrentSession.remove(discussionReference);
-            }
-        }
+        // We only perform the removal in case of match between the given document reference and the one stored in
+        // the map: it might avoid unseen bugs and shouldn't be very expensive.
+        this.getTemporaryReferencesMapForCurrentSession().remove(discussionReference, documentReference);
     }
 }
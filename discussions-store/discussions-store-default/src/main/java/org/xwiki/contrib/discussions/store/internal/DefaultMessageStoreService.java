@@ -19,8 +19,13 @@
  */
 package org.xwiki.contrib.discussions.store.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -28,11 +33,16 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.discussions.DiscussionException;
+import org.xwiki.contrib.discussions.DiscussionReferencesInterner;
+import org.xwiki.contrib.discussions.DiscussionReferencesResolver;
 import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
+import org.xwiki.contrib.discussions.domain.Discussion;
 import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.MessageContent;
 import org.xwiki.contrib.discussions.domain.references.ActorReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
@@ -47,6 +57,7 @@ import org.xwiki.model.reference.EntityReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
+import org.xwiki.rendering.parser.ParseException;
 import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.store.TemporaryAttachmentSessionsManager;
 
@@ -76,6 +87,11 @@ import static org.xwiki.contrib.discussions.store.meta.MessageMetadata.UPDATE_DA
 @Singleton
 public class DefaultMessageStoreService implements MessageStoreService
 {
+    // Keeps the IN clauses of the batch queries below the limit of the most restrictive databases.
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int MAX_PAGE_GENERATION_ATTEMPTS = 3;
+
     @Inject
     private Logger logger;
 
@@ -88,6 +104,12 @@ public class DefaultMessageStoreService implements MessageStoreService
     @Inject
     private DiscussionReferencesSerializer discussionReferencesSerializer;
 
+    @Inject
+    private DiscussionReferencesResolver discussionReferencesResolver;
+
+    @Inject
+    private DiscussionReferencesInterner discussionReferencesInterner;
+
     @Inject
     private MessageHolderReferenceService messageHolderReferenceService;
 
@@ -100,6 +122,12 @@ public class DefaultMessageStoreService implements MessageStoreService
     @Inject
     private DocumentAuthorsManager documentAuthorsManager;
 
+    @Inject
+    private MessageHolderCache messageHolderCache;
+
+    @Inject
+    private StoreIdentityMap storeIdentityMap;
+
     @Override
     public BaseObject create(String content, Syntax syntax, ActorReference authorReference,
         DiscussionReference discussionReference, String title,
@@ -141,6 +169,8 @@ public class DefaultMessageStoreService implements MessageStoreService
             this.handleTemporaryUploadedAttachments(configurationParameters, document);
             this.documentRedirectionManager.handleCreatingRedirection(document, configurationParameters);
             context.getWiki().saveDocument(document, context);
+            this.messageHolderCache.set(serializedReference, messageHolderReference);
+            this.storeIdentityMap.put(messageReference, messageBaseObject);
 
             result = messageBaseObject;
         } catch (XWikiException e) {
@@ -218,6 +248,202 @@ public class DefaultMessageStoreService implements MessageStoreService
         }
     }
 
+    @Override
+    public List<Message> getMessagesByDiscussion(Discussion discussion, int offset, int limit)
+    {
+        DiscussionReference discussionReference = discussion.getReference();
+        try {
+            List<Object[]> rows = createMessagesQuery(discussionReference, "")
+                .setOffset(offset)
+                .setLimit(limit)
+                .execute();
+            return toMessages(rows, discussion);
+        } catch (QueryException e) {
+            this.logger.warn(
+                "Failed to get the list Message for discussionReference=[{}], offset=[{}], limit=[{}]. Cause: [{}].",
+                discussionReference, offset, limit, getRootCauseMessage(e));
+            return emptyList();
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesByDiscussionAfter(Discussion discussion, Message after, int limit)
+    {
+        DiscussionReference discussionReference = discussion.getReference();
+        try {
+            Query query;
+            if (after == null) {
+                query = createMessagesQuery(discussionReference, "");
+            } else {
+                // Seek after the (update date, reference) of the cursor, following the order of the query.
+                query = createMessagesQuery(discussionReference, "and (obj_updateDate.value > :cursorDate "
+                    + "or (obj_updateDate.value = :cursorDate and obj_reference.value > :cursorReference)) ")
+                    .bindValue("cursorDate", after.getUpdateDate())
+                    .bindValue("cursorReference", this.discussionReferencesSerializer.serialize(after.getReference()));
+            }
+            List<Object[]> rows = query.setLimit(limit).execute();
+            return toMessages(rows, discussion);
+        } catch (QueryException e) {
+            this.logger.warn(
+                "Failed to get the list Message for discussionReference=[{}], after=[{}], limit=[{}]. Cause: [{}].",
+                discussionReference, after, limit, getRootCauseMessage(e));
+            return emptyList();
+        }
+    }
+
+    @Override
+    public List<Message> getRootMessagesByDiscussion(Discussion discussion, int offset, int limit)
+    {
+        DiscussionReference discussionReference = discussion.getReference();
+        try {
+            // A reply is displayed as a root when the message it replies to does not exist anymore. The reply to
+            // field is empty on the messages which are not replies, which never matches the reference of a message.
+            List<Object[]> rows = createMessagesQuery(discussionReference, String.format(
+                "and not exists (select parentReference.id.id "
+                    + "from com.xpn.xwiki.objects.StringProperty as rootReplyTo , "
+                    + "com.xpn.xwiki.objects.StringProperty as parentReference "
+                    + "where rootReplyTo.id.id=obj.id and rootReplyTo.id.name='%s' "
+                    + "and parentReference.id.name='%s' and parentReference.value=rootReplyTo.value) ",
+                REPLY_TO_NAME, REFERENCE_NAME))
+                .setOffset(offset)
+                .setLimit(limit)
+                .execute();
+            return toMessages(rows, discussion);
+        } catch (QueryException e) {
+            this.logger.warn(
+                "Failed to get the root messages for discussionReference=[{}], offset=[{}], limit=[{}]. "
+                    + "Cause: [{}].",
+                discussionReference, offset, limit, getRootCauseMessage(e));
+            return emptyList();
+        }
+    }
+
+    @Override
+    public List<Message> getRepliesByMessages(Discussion discussion, Collection<MessageReference> parents)
+    {
+        List<String> serializedParents = new ArrayList<>(parents.size());
+        for (MessageReference parent : parents) {
+            serializedParents.add(this.discussionReferencesSerializer.serialize(parent));
+        }
+        List<Message> replies = new ArrayList<>();
+        for (int start = 0; start < serializedParents.size(); start += BATCH_SIZE) {
+            List<String> batch =
+                serializedParents.subList(start, Math.min(start + BATCH_SIZE, serializedParents.size()));
+            replies.addAll(getRepliesByMessages(discussion, batch));
+        }
+        return replies;
+    }
+
+    private List<Message> getRepliesByMessages(Discussion discussion, List<String> serializedParents)
+    {
+        DiscussionReference discussionReference = discussion.getReference();
+        try {
+            List<Object[]> rows = createMessagesQuery(discussionReference, String.format(
+                "and exists (select parentReplyTo.id.id "
+                    + "from com.xpn.xwiki.objects.StringProperty as parentReplyTo "
+                    + "where parentReplyTo.id.id=obj.id and parentReplyTo.id.name='%s' "
+                    + "and parentReplyTo.value in (:parents)) ",
+                REPLY_TO_NAME))
+                .bindValue("parents", serializedParents)
+                .execute();
+            return toMessages(rows, discussion);
+        } catch (QueryException e) {
+            this.logger.warn("Failed to get the replies for discussionReference=[{}], parents=[{}]. Cause: [{}].",
+                discussionReference, serializedParents, getRootCauseMessage(e));
+            return emptyList();
+        }
+    }
+
+    private Query createMessagesQuery(DiscussionReference discussionReference, String extraCondition)
+        throws QueryException
+    {
+        // The reply to field is only set on replies, hence the sub-select instead of a join.
+        return this.queryManager.createQuery(String.format(
+            " select obj_reference.value, "
+                + "obj_content.value, "
+                + "doc.syntaxId, "
+                + "obj_authorType.value, "
+                + "obj_authorReference.value, "
+                + "obj_createDate.value, "
+                + "obj_updateDate.value, "
+                + "(select obj_replyTo.value "
+                + "from com.xpn.xwiki.objects.StringProperty as obj_replyTo "
+                + "where obj_replyTo.id.id=obj.id and obj_replyTo.id.name='%s') "
+                + "from XWikiDocument as doc , "
+                + "BaseObject as obj , "
+                + "com.xpn.xwiki.objects.StringProperty as obj_discussionReference , "
+                + "com.xpn.xwiki.objects.StringProperty as obj_reference , "
+                + "com.xpn.xwiki.objects.LargeStringProperty as obj_content , "
+                + "com.xpn.xwiki.objects.StringProperty as obj_authorType , "
+                + "com.xpn.xwiki.objects.StringProperty as obj_authorReference , "
+                + "com.xpn.xwiki.objects.DateProperty as obj_createDate , "
+                + "com.xpn.xwiki.objects.DateProperty as obj_updateDate "
+                + "where obj_discussionReference.value = :discussionReference "
+                + "and doc.fullName=obj.name and obj.className='%s' "
+                + "and obj_discussionReference.id.id=obj.id "
+                + "and obj_reference.id.id=obj.id "
+                + "and obj_content.id.id=obj.id "
+                + "and obj_authorType.id.id=obj.id "
+                + "and obj_authorReference.id.id=obj.id "
+                + "and obj_createDate.id.id=obj.id "
+                + "and obj_updateDate.id.id=obj.id "
+                + "and obj_discussionReference.id.name='%s' "
+                + "and obj_reference.id.name='%s' "
+                + "and obj_content.id.name='%s' "
+                + "and obj_authorType.id.name='%s' "
+                + "and obj_authorReference.id.name='%s' "
+                + "and obj_createDate.id.name='%s' "
+                + "and obj_updateDate.id.name='%s' "
+                + "%s"
+                + "order by obj_updateDate.value, obj_reference.value",
+            REPLY_TO_NAME, MessageMetadata.XCLASS_FULLNAME, DISCUSSION_REFERENCE_NAME, REFERENCE_NAME,
+            CONTENT_NAME, AUTHOR_TYPE_NAME, AUTHOR_REFERENCE_NAME, CREATE_DATE_NAME, UPDATE_DATE_NAME,
+            extraCondition), Query.HQL)
+            .bindValue("discussionReference", this.discussionReferencesSerializer.serialize(discussionReference));
+    }
+
+    private List<Message> toMessages(List<Object[]> rows, Discussion discussion)
+    {
+        List<Message> messages = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            messages.add(toMessage(row, discussion));
+        }
+        return messages;
+    }
+
+    private Message toMessage(Object[] row, Discussion discussion)
+    {
+        MessageReference reference =
+            this.discussionReferencesResolver.resolve((String) row[0], MessageReference.class);
+        MessageReference replyTo = null;
+        String replyToValue = (String) row[7];
+        if (!StringUtils.isEmpty(replyToValue)) {
+            replyTo = this.discussionReferencesResolver.resolve(replyToValue, MessageReference.class);
+        }
+        return new Message(
+            reference,
+            new MessageContent((String) row[1], parseSyntax((String) row[2], reference)),
+            this.discussionReferencesInterner.intern(new ActorReference((String) row[3], (String) row[4])),
+            (Date) row[5],
+            (Date) row[6],
+            discussion,
+            replyTo
+        );
+    }
+
+    private Syntax parseSyntax(String syntaxId, MessageReference reference)
+    {
+        Syntax syntax;
+        try {
+            syntax = Syntax.valueOf(syntaxId);
+        } catch (ParseException e) {
+            this.logger.warn("Failed to parse the syntax [{}] of message [{}], falling back to [{}]. Cause: [{}].",
+                syntaxId, reference, Syntax.XWIKI_2_1, getRootCauseMessage(e));
+            syntax = Syntax.XWIKI_2_1;
+        }
+        return syntax;
+    }
+
     private List<BaseObject> getBaseObjects(List<String> pageNames)
         throws XWikiException
     {
@@ -239,6 +465,16 @@ public class DefaultMessageStoreService implements MessageStoreService
     @Override
     public Optional<BaseObject> getByReference(MessageReference reference)
     {
+        return this.storeIdentityMap.get(reference, this::getStoredByReference);
+    }
+
+    private Optional<BaseObject> getStoredByReference(MessageReference reference)
+    {
+        String serializedReference = this.discussionReferencesSerializer.serialize(reference);
+        Optional<BaseObject> cached = getCachedMessage(serializedReference);
+        if (cached.isPresent() || this.messageHolderCache.isMissing(serializedReference)) {
+            return cached;
+        }
         try {
             List<String> pageNames = this.queryManager.createQuery(String.format(
                 " select doc.fullName "
@@ -251,11 +487,17 @@ public class DefaultMessageStoreService implements MessageStoreService
                     + "and obj_reference.id.id=obj.id "
                     + "and obj_reference.id.name='%s' ",
                 MessageMetadata.XCLASS_FULLNAME, REFERENCE_NAME), Query.HQL)
-                .bindValue("reference", this.discussionReferencesSerializer.serialize(reference))
+                .bindValue("reference", serializedReference)
                 .execute();
 
-            return getBaseObjects(pageNames)
+            Optional<BaseObject> message = getBaseObjects(pageNames)
                 .stream().findFirst();
+            if (message.isPresent()) {
+                this.messageHolderCache.set(serializedReference, message.get().getDocumentReference());
+            } else {
+                this.messageHolderCache.setMissing(serializedReference);
+            }
+            return message;
         } catch (QueryException | XWikiException e) {
             this.logger.warn(
                 "Failed to get the Message for reference=[{}]. Cause: [{}].",
@@ -264,6 +506,114 @@ public class DefaultMessageStoreService implements MessageStoreService
         }
     }
 
+    private Optional<BaseObject> getCachedMessage(String serializedReference)
+    {
+        Optional<BaseObject> result = Optional.empty();
+        DocumentReference holder = this.messageHolderCache.get(serializedReference);
+        if (holder != null) {
+            XWikiContext context = this.xcontextProvider.get();
+            try {
+                BaseObject messageObject =
+                    context.getWiki().getDocument(holder, context).getXObject(MessageMetadata.XCLASS_REFERENCE);
+                if (messageObject != null
+                    && serializedReference.equals(messageObject.getStringValue(REFERENCE_NAME)))
+                {
+                    result = Optional.of(messageObject);
+                }
+            } catch (XWikiException e) {
+                this.logger.debug("Failed to load the cached holder [{}] of message [{}]. Cause: [{}].", holder,
+                    serializedReference, getRootCauseMessage(e));
+            }
+            if (!result.isPresent()) {
+                // The cached holder is outdated, resolve the message again.
+                this.messageHolderCache.remove(serializedReference);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<MessageReference, BaseObject> getByReferences(Collection<MessageReference> references)
+    {
+        Map<MessageReference, BaseObject> found = new LinkedHashMap<>();
+        Map<String, MessageReference> toQuery = new LinkedHashMap<>();
+        for (MessageReference reference : references) {
+            Optional<BaseObject> known = this.storeIdentityMap.getIfPresent(reference);
+            if (known.isPresent()) {
+                found.put(reference, known.get());
+                continue;
+            }
+            String serializedReference = this.discussionReferencesSerializer.serialize(reference);
+            Optional<BaseObject> cached = getCachedMessage(serializedReference);
+            if (cached.isPresent()) {
+                found.put(reference, cached.get());
+                this.storeIdentityMap.put(reference, cached.get());
+            } else if (!this.messageHolderCache.isMissing(serializedReference)) {
+                toQuery.put(serializedReference, reference);
+            }
+        }
+
+        List<String> serializedReferences = new ArrayList<>(toQuery.keySet());
+        for (int start = 0; start < serializedReferences.size(); start += BATCH_SIZE) {
+            List<String> batch =
+                serializedReferences.subList(start, Math.min(start + BATCH_SIZE, serializedReferences.size()));
+            getStoredByReferences(batch, toQuery, found);
+        }
+
+        // Return the messages in the order of the requested references.
+        Map<MessageReference, BaseObject> result = new LinkedHashMap<>();
+        for (MessageReference reference : references) {
+            BaseObject messageObject = found.get(reference);
+            if (messageObject != null) {
+                result.put(reference, messageObject);
+            }
+        }
+        return result;
+    }
+
+    private void getStoredByReferences(List<String> serializedReferences, Map<String, MessageReference> references,
+        Map<MessageReference, BaseObject> found)
+    {
+        try {
+            List<Object[]> rows = this.queryManager.createQuery(String.format(
+                " select obj_reference.value, doc.fullName "
+                    + "from XWikiDocument as doc , "
+                    + "BaseObject as obj , "
+                    + "com.xpn.xwiki.objects.StringProperty as obj_reference "
+                    + "where obj_reference.value in (:references) "
+                    + "and doc.fullName=obj.name "
+                    + "and obj.className='%s' "
+                    + "and obj_reference.id.id=obj.id "
+                    + "and obj_reference.id.name='%s' ",
+                MessageMetadata.XCLASS_FULLNAME, REFERENCE_NAME), Query.HQL)
+                .bindValue("references", serializedReferences)
+                .execute();
+
+            XWikiContext context = this.xcontextProvider.get();
+            for (Object[] row : rows) {
+                String serializedReference = (String) row[0];
+                MessageReference reference = references.get(serializedReference);
+                if (reference != null && !found.containsKey(reference)) {
+                    BaseObject messageObject = context.getWiki().getDocument((String) row[1], EntityType.DOCUMENT,
+                        context).getXObject(MessageMetadata.XCLASS_REFERENCE);
+                    if (messageObject != null) {
+                        found.put(reference, messageObject);
+                        this.messageHolderCache.set(serializedReference, messageObject.getDocumentReference());
+                        this.storeIdentityMap.put(reference, messageObject);
+                    }
+                }
+            }
+            for (String serializedReference : serializedReferences) {
+                if (!found.containsKey(references.get(serializedReference))) {
+                    this.messageHolderCache.setMissing(serializedReference);
+                }
+            }
+        } catch (QueryException | XWikiException e) {
+            this.logger.warn("Failed to get the Messages for references=[{}]. Cause: [{}].", serializedReferences,
+                getRootCauseMessage(e));
+        }
+    }
+
     @Override
     public Optional<BaseObject> getByEntityReference(EntityReference entityReference)
     {
@@ -307,6 +657,54 @@ public class DefaultMessageStoreService implements MessageStoreService
         return count;
     }
 
+    @Override
+    public Map<DiscussionReference, Long> countByDiscussions(Collection<DiscussionReference> discussionReferences)
+    {
+        Map<String, DiscussionReference> references = new LinkedHashMap<>();
+        for (DiscussionReference discussionReference : discussionReferences) {
+            references.put(this.discussionReferencesSerializer.serialize(discussionReference), discussionReference);
+        }
+        List<String> serializedReferences = new ArrayList<>(references.keySet());
+        Map<String, Long> counts = new HashMap<>();
+        for (int start = 0; start < serializedReferences.size(); start += BATCH_SIZE) {
+            List<String> batch =
+                serializedReferences.subList(start, Math.min(start + BATCH_SIZE, serializedReferences.size()));
+            countByDiscussions(batch, counts);
+        }
+
+        // The discussions without messages are not returned by the grouped query.
+        Map<DiscussionReference, Long> result = new LinkedHashMap<>();
+        references.forEach((serializedReference, reference) ->
+            result.put(reference, counts.getOrDefault(serializedReference, 0L)));
+        return result;
+    }
+
+    private void countByDiscussions(List<String> serializedReferences, Map<String, Long> counts)
+    {
+        try {
+            List<Object[]> rows = this.queryManager.createQuery(String.format(
+                " select discussionReferenceField.value, count(*) "
+                    + "from XWikiDocument as doc , "
+                    + "BaseObject as obj , "
+                    + "com.xpn.xwiki.objects.StringProperty as discussionReferenceField "
+                    + "where discussionReferenceField.value in (:discussionReferences) "
+                    + "and doc.fullName=obj.name "
+                    + "and obj.className='%s' "
+                    + "and discussionReferenceField.id.id=obj.id "
+                    + "and discussionReferenceField.id.name='%s' "
+                    + "group by discussionReferenceField.value",
+                MessageMetadata.XCLASS_FULLNAME, DISCUSSION_REFERENCE_NAME), Query.HQL)
+                .bindValue("discussionReferences", serializedReferences)
+                .execute();
+            for (Object[] row : rows) {
+                counts.put((String) row[0], ((Number) row[1]).longValue());
+            }
+        } catch (QueryException e) {
+            this.logger.warn("Fail to count the messages with discussionReferences=[{}]. Cause: [{}].",
+                serializedReferences, getRootCauseMessage(e));
+        }
+    }
+
     @Override
     public void delete(MessageReference reference)
     {
@@ -323,13 +721,25 @@ public class DefaultMessageStoreService implements MessageStoreService
     }
 
     private XWikiDocument generateUniquePage(DiscussionReference discussionReference, ActorReference actorReference,
-        DiscussionStoreConfigurationParameters configurationParameters) throws XWikiException
+        DiscussionStoreConfigurationParameters configurationParameters) throws XWikiException, DiscussionException
     {
-        XWikiDocument document;
-        DocumentReference messageHolder = this.messageHolderReferenceService
-            .getNextMessageHolderReference(discussionReference, configurationParameters);
         XWikiContext context = xcontextProvider.get();
-        document = context.getWiki().getDocument(messageHolder, context);
+        XWikiDocument document = null;
+        DocumentReference messageHolder = null;
+        // The holder page must not exist yet, otherwise its content and rights would not be the expected ones.
+        for (int i = 0; i < MAX_PAGE_GENERATION_ATTEMPTS && (document == null || !document.isNew()); i++) {
+            if (messageHolder != null) {
+                this.messageHolderReferenceService.consumeReference(discussionReference, messageHolder);
+            }
+            messageHolder = this.messageHolderReferenceService
+                .getNextMessageHolderReference(discussionReference, configurationParameters);
+            document = context.getWiki().getDocument(messageHolder, context);
+        }
+        if (!document.isNew()) {
+            this.messageHolderReferenceService.consumeReference(discussionReference, messageHolder);
+            throw new DiscussionException(
+                String.format("Failed to generate a new page to hold a message of [%s].", discussionReference));
+        }
         document.setHidden(true);
         this.documentAuthorsManager.setDocumentAuthors(document.getAuthors(), actorReference, configurationParameters);
         this.messageHolderReferenceService.consumeReference(discussionReference, messageHolder);
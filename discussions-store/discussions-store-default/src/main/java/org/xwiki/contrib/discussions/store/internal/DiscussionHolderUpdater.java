@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.function.Predicate;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
+import org.xwiki.localization.ContextualLocalizationManager;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Saves the updates of the existing discussions one at a time per holder page, so that the concurrent updates of a
+ * discussion (e.g., the links to its discussion contexts and its update date) do not overwrite each other. The holder
+ * page is loaded again while holding the lock, so that each update is applied on top of the previous ones.
+ * <p>
+ * The lock is only held on the current cluster node: the updates of the same discussion made concurrently by several
+ * cluster nodes can still overwrite each other.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = DiscussionHolderUpdater.class)
+@Singleton
+public class DiscussionHolderUpdater
+{
+    private static final int LOCKS = 64;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private ContextualLocalizationManager localizationManager;
+
+    @Inject
+    private StoreIdentityMap storeIdentityMap;
+
+    private final Object[] locks = new Object[LOCKS];
+
+    /**
+     * Default constructor.
+     */
+    public DiscussionHolderUpdater()
+    {
+        for (int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Updates a discussion and saves its holder page.
+     *
+     * @param holderReference the reference of the page holding the discussion
+     * @param discussionReference the reference of the discussion
+     * @param update updates the discussion, and returns {@code false} when nothing needs to be saved
+     * @param newVersion {@code true} to create a new version of the holder page, {@code false} when the update is
+     *     not part of the history of the discussion
+     * @param translationKey the translation key of the comment of the save
+     * @return {@code true} if the discussion has been updated and saved, {@code false} otherwise
+     * @throws XWikiException in case of error while loading or saving the holder page
+     */
+    public boolean update(DocumentReference holderReference, DiscussionReference discussionReference,
+        Predicate<BaseObject> update, boolean newVersion, String translationKey) throws XWikiException
+    {
+        XWikiContext context = this.xcontextProvider.get();
+        synchronized (this.locks[Math.floorMod(holderReference.hashCode(), this.locks.length)]) {
+            XWikiDocument document = context.getWiki().getDocument(holderReference, context).clone();
+            BaseObject discussion = document.getXObject(DiscussionMetadata.XCLASS_REFERENCE);
+            if (discussion == null || !update.test(discussion)) {
+                return false;
+            }
+            if (!newVersion) {
+                document.setMetaDataDirty(false);
+                document.setContentDirty(false);
+            }
+            context.getWiki().saveDocument(document, this.localizationManager.getTranslationPlain(translationKey),
+                true, context);
+            this.storeIdentityMap.put(discussionReference, discussion);
+            return true;
+        }
+    }
+}
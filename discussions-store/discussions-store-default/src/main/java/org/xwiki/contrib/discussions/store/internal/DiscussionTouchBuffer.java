@@ -0,0 +1,219 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.store.DiscussionStoreService;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCauseMessage;
+import static org.xwiki.contrib.discussions.store.meta.DiscussionMetadata.UPDATE_DATE_NAME;
+
+/**
+ * Buffers the updates of the update date of the discussions, and saves them periodically so that the discussions
+ * touched many times within the configured window are only saved once. The window is configured with the
+ * {@value #WINDOW_PROPERTY} property of {@code xwiki.properties}, in milliseconds, and {@code 0} disables the buffer.
+ * <p>
+ * The pending update dates are only known by the current node, the other cluster nodes would read the stored update
+ * date until the next flush. The buffer is thus disabled when the remote observation is enabled.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = DiscussionTouchBuffer.class)
+@Singleton
+public class DiscussionTouchBuffer implements Initializable, Disposable
+{
+    /**
+     * The name of the configuration property holding the flush window, in milliseconds.
+     */
+    public static final String WINDOW_PROPERTY = "discussions.touch.window";
+
+    private static final long DEFAULT_WINDOW = 5000L;
+
+    private static final String REMOTE_OBSERVATION_PROPERTY = "observation.remote.enabled";
+
+    private static final long TERMINATION_TIMEOUT = 30L;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Provider<DiscussionStoreService> discussionStoreServiceProvider;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private DiscussionHolderUpdater discussionHolderUpdater;
+
+    @Inject
+    private Logger logger;
+
+    private final Map<Pair<String, DiscussionReference>, Date> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        long window = this.configuration.getProperty(WINDOW_PROPERTY, DEFAULT_WINDOW);
+        if (window > 0 && !this.configuration.getProperty(REMOTE_OBSERVATION_PROPERTY, false)) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(
+                new BasicThreadFactory.Builder().namingPattern("Discussions touch flush").daemon(true).build());
+            this.executor.scheduleWithFixedDelay(createFlushRunnable(), window, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        if (this.executor != null) {
+            // Let the running flush finish, so that it does not save the same discussions as the final flush.
+            this.executor.shutdown();
+            try {
+                if (!this.executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+                    this.logger.warn("The flush of the discussion update dates did not finish in [{}] seconds.",
+                        TERMINATION_TIMEOUT);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Save the updates that are still pending.
+            createFlushRunnable().run();
+        }
+    }
+
+    /**
+     * @return {@code true} if the updates are buffered, {@code false} if they must be saved right away
+     */
+    public boolean isEnabled()
+    {
+        return this.executor != null;
+    }
+
+    /**
+     * Records that a discussion of the current wiki has been updated now.
+     *
+     * @param discussionReference the reference of the discussion
+     */
+    public void touch(DiscussionReference discussionReference)
+    {
+        this.pending.put(getKey(discussionReference), new Date());
+    }
+
+    /**
+     * @param discussionReference the reference of a discussion of the current wiki
+     * @return the update date of the discussion which is not saved yet, or {@code null} if there is none
+     */
+    public Date getPendingUpdateDate(DiscussionReference discussionReference)
+    {
+        return this.pending.get(getKey(discussionReference));
+    }
+
+    /**
+     * Saves the pending update dates.
+     */
+    public void flush()
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        String currentWiki = xcontext.getWikiId();
+        try {
+            for (Map.Entry<Pair<String, DiscussionReference>, Date> entry : new ArrayList<>(this.pending.entrySet())) {
+                xcontext.setWikiId(entry.getKey().getLeft());
+                save(entry.getKey().getRight(), entry.getValue());
+                // The discussion may have been touched again in the meantime, in which case it is saved on the next
+                // flush.
+                this.pending.remove(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            xcontext.setWikiId(currentWiki);
+        }
+    }
+
+    private void save(DiscussionReference discussionReference, Date updateDate)
+    {
+        DocumentReference holder = this.discussionStoreServiceProvider.get().get(discussionReference)
+            .map(BaseObject::getDocumentReference).orElse(null);
+        if (holder != null) {
+            try {
+                // The discussion is saved through the same lock as the other updates of the discussion, so that the
+                // flush does not overwrite them.
+                this.discussionHolderUpdater.update(holder, discussionReference, discussion -> {
+                    Date storedUpdateDate = discussion.getDateValue(UPDATE_DATE_NAME);
+                    if (storedUpdateDate != null && !storedUpdateDate.before(updateDate)) {
+                        // The discussion has been saved since it was touched.
+                        return false;
+                    }
+                    discussion.setDateValue(UPDATE_DATE_NAME, updateDate);
+                    return true;
+                }, true, "discussions.store.discussion.updateDate");
+            } catch (XWikiException e) {
+                this.logger.warn("Failed to save the update date of the discussion [{}]. Cause: [{}]",
+                    discussionReference, getRootCauseMessage(e));
+            }
+        }
+    }
+
+    private Runnable createFlushRunnable()
+    {
+        return new AbstractXWikiRunnable()
+        {
+            @Override
+            protected void runInternal()
+            {
+                flush();
+            }
+        };
+    }
+
+    private Pair<String, DiscussionReference> getKey(DiscussionReference discussionReference)
+    {
+        return Pair.of(this.xcontextProvider.get().getWikiId(), discussionReference);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.contrib.discussions.store.MessageHolderCacheMetrics;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Local cache of the pages holding the messages, indexed by wiki and serialized message reference. The references
+ * that cannot be found are also cached, for a short time. The numbers of hits and misses of the cache are exposed by
+ * the {@code discussions.metrics} script service.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = { MessageHolderCache.class, MessageHolderCacheMetrics.class })
+@Singleton
+public class MessageHolderCache implements MessageHolderCacheMetrics, Initializable, Disposable
+{
+    private static final int CACHE_SIZE = 10000;
+
+    private static final int MISSING_CACHE_SIZE = 1000;
+
+    private static final int MISSING_CACHE_LIFESPAN = 60;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    private Cache<DocumentReference> cache;
+
+    private Cache<Boolean> missingCache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache = this.cacheManager.createNewLocalCache(
+                new LRUCacheConfiguration("discussions.messages.holders", CACHE_SIZE));
+            LRUCacheConfiguration missingConfiguration =
+                new LRUCacheConfiguration("discussions.messages.holders.missing", MISSING_CACHE_SIZE);
+            missingConfiguration.getLRUEvictionConfiguration().setLifespan(MISSING_CACHE_LIFESPAN);
+            this.missingCache = this.cacheManager.createNewLocalCache(missingConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the message holders cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.cache.dispose();
+        this.missingCache.dispose();
+    }
+
+    /**
+     * @param serializedReference the serialized reference of a message of the current wiki
+     * @return the reference of the page holding the message, or {@code null} if it is not in the cache
+     */
+    public DocumentReference get(String serializedReference)
+    {
+        String key = getKey(serializedReference);
+        DocumentReference documentReference = this.cache.get(key);
+        if (documentReference != null || this.missingCache.get(key) != null) {
+            this.hitCount.incrementAndGet();
+        } else {
+            this.missCount.incrementAndGet();
+        }
+        return documentReference;
+    }
+
+    /**
+     * @param serializedReference the serialized reference of a message of the current wiki
+     * @return {@code true} if the message was recently not found
+     */
+    public boolean isMissing(String serializedReference)
+    {
+        return this.missingCache.get(getKey(serializedReference)) != null;
+    }
+
+    /**
+     * @param serializedReference the serialized reference of a message of the current wiki
+     * @param documentReference the reference of the page holding the message
+     */
+    public void set(String serializedReference, DocumentReference documentReference)
+    {
+        String key = getKey(serializedReference);
+        this.missingCache.remove(key);
+        this.cache.set(key, documentReference);
+    }
+
+    /**
+     * Remember that no message can be found for a reference.
+     *
+     * @param serializedReference the serialized reference of a message of the current wiki
+     */
+    public void setMissing(String serializedReference)
+    {
+        String key = getKey(serializedReference);
+        this.cache.remove(key);
+        this.missingCache.set(key, Boolean.TRUE);
+    }
+
+    /**
+     * @param wiki the identifier of the wiki of the message
+     * @param serializedReference the serialized message reference
+     */
+    public void remove(String wiki, String serializedReference)
+    {
+        String key = getKey(wiki, serializedReference);
+        this.cache.remove(key);
+        this.missingCache.remove(key);
+    }
+
+    /**
+     * @param serializedReference the serialized reference of a message of the current wiki
+     */
+    public void remove(String serializedReference)
+    {
+        remove(this.xcontextProvider.get().getWikiId(), serializedReference);
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    private String getKey(String serializedReference)
+    {
+        return getKey(this.xcontextProvider.get().getWikiId(), serializedReference);
+    }
+
+    private String getKey(String wiki, String serializedReference)
+    {
+        // The wiki identifiers cannot contain a colon.
+        return wiki + ':' + serializedReference;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.store.meta.MessageMetadata;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Removes the created and deleted messages from the {@link MessageHolderCache}. The messages are deleted with their
+ * holder pages, and the document events are already sent to the other cluster nodes by XWiki.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component
+@Singleton
+@Named(MessageHolderCacheListener.NAME)
+public class MessageHolderCacheListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "org.xwiki.contrib.discussions.store.internal.MessageHolderCacheListener";
+
+    @Inject
+    private Provider<MessageHolderCache> messageHolderCacheProvider;
+
+    /**
+     * Default constructor.
+     */
+    public MessageHolderCacheListener()
+    {
+        super(NAME, Arrays.asList(new DocumentCreatedEvent(), new DocumentDeletedEvent()));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        // The created messages are removed from the missing messages of the other cluster nodes.
+        XWikiDocument document = event instanceof DocumentCreatedEvent ? (XWikiDocument) source
+            : ((XWikiDocument) source).getOriginalDocument();
+        BaseObject messageObject = document.getXObject(MessageMetadata.XCLASS_REFERENCE);
+        if (messageObject != null) {
+            String wiki = document.getDocumentReference().getWikiReference().getName();
+            this.messageHolderCacheProvider.get()
+                .remove(wiki, messageObject.getStringValue(MessageMetadata.REFERENCE_NAME));
+        }
+    }
+}
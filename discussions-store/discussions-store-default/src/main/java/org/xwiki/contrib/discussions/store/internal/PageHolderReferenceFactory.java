@@ -19,20 +19,27 @@
  */
 package org.xwiki.contrib.discussions.store.internal;
 
-import java.util.UUID;
-
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.store.DiscussionStoreConfiguration;
+import org.xwiki.contrib.discussions.store.PageHolderIdGenerator;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.SpaceReference;
 
+import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCauseMessage;
+
 /**
  * Utility component in charge of generating unique references for the various entities to store.
  *
@@ -64,9 +71,30 @@ public class PageHolderReferenceFactory
         MESSAGE
     }
 
+    /**
+     * The name of the configuration property holding the hint of the {@link PageHolderIdGenerator} to use.
+     */
+    static final String ID_GENERATOR_PROPERTY = "discussions.store.pageIdGenerator";
+
+    private static final String DEFAULT_HINT = "default";
+
     @Inject
     private DiscussionStoreConfigurationFactory discussionStoreConfigurationFactory;
 
+    @Inject
+    private PageHolderIdGenerator defaultIdGenerator;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @Inject
+    private Logger logger;
+
     /**
      * Generate a unique reference for storing the requested entity at the space location retrieved from the given
      * parameters.
@@ -89,7 +117,7 @@ public class PageHolderReferenceFactory
     public DocumentReference createPageHolderReference(DiscussionEntity entity, String name, String applicationHint,
         Object reference, DiscussionStoreConfigurationParameters configurationParameters)
     {
-        String generatedString = UUID.randomUUID().toString();
+        String generatedString = getIdGenerator().generate();
         DiscussionStoreConfiguration discussionStoreConfiguration =
             this.discussionStoreConfigurationFactory.getDiscussionStoreConfiguration(applicationHint);
 
@@ -113,6 +141,7 @@ public class PageHolderReferenceFactory
                 throw new IllegalArgumentException(
                     String.format("The provided entity [%s] is not correct for this method.", entity));
         }
+        // The title stays first to keep the page names readable, so the names only sort by creation for a same title.
         String pageTitle;
         if (StringUtils.isBlank(name)) {
             pageTitle = generatedString;
@@ -121,4 +150,19 @@ public class PageHolderReferenceFactory
         }
         return new DocumentReference(pageTitle, spaceLocation);
     }
+
+    private PageHolderIdGenerator getIdGenerator()
+    {
+        String hint = this.configuration.getProperty(ID_GENERATOR_PROPERTY, DEFAULT_HINT);
+        if (hint == null || DEFAULT_HINT.equals(hint)) {
+            return this.defaultIdGenerator;
+        }
+        try {
+            return this.componentManagerProvider.get().getInstance(PageHolderIdGenerator.class, hint);
+        } catch (ComponentLookupException e) {
+            this.logger.warn("Failed to find the page identifier generator [{}], the default one is used instead. "
+                + "Cause: [{}]", hint, getRootCauseMessage(e));
+            return this.defaultIdGenerator;
+        }
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
+import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
+import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.store.DiscussionStoreConfiguration;
+import org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata;
+import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCauseMessage;
+
+/**
+ * Resolves the page holding an entity directly from its reference, without querying the database.
+ * <p>
+ * The name of the reference of discussions and discussion contexts is the name of the page created by
+ * {@link PageHolderReferenceFactory}, so the page can be found in the space given by the
+ * {@link DiscussionStoreConfiguration} of the application. Since the space might depend on the creation parameters,
+ * the resolved page is only returned if it actually holds the requested entity, and the callers are expected to fall
+ * back to a query otherwise (e.g., for moved pages).
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = PageHolderReferenceResolver.class)
+@Singleton
+public class PageHolderReferenceResolver
+{
+    @Inject
+    private DiscussionStoreConfigurationFactory discussionStoreConfigurationFactory;
+
+    @Inject
+    private DiscussionReferencesSerializer discussionReferencesSerializer;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Load the page holding a discussion.
+     *
+     * @param reference the discussion reference
+     * @return the document holding the discussion, or {@link Optional#empty()} if it is not at its expected location
+     */
+    public Optional<XWikiDocument> getDiscussionDocument(DiscussionReference reference)
+    {
+        DiscussionStoreConfiguration configuration =
+            this.discussionStoreConfigurationFactory.getDiscussionStoreConfiguration(reference.getApplicationHint());
+        SpaceReference space =
+            configuration.getDiscussionSpaceStorageLocation(new DiscussionStoreConfigurationParameters());
+        return getDocument(space, reference, DiscussionMetadata.XCLASS_REFERENCE);
+    }
+
+    /**
+     * Load the page holding a discussion context. The storage location of the discussion contexts can depend on their
+     * entity reference, so the page is only resolved when the entity reference is known.
+     *
+     * @param reference the discussion context reference
+     * @param entityReference the entity reference of the discussion context, or {@code null} if it is not known
+     * @return the document holding the discussion context, or {@link Optional#empty()} if it is not at its expected
+     *     location or if the entity reference is not known
+     */
+    public Optional<XWikiDocument> getDiscussionContextDocument(DiscussionContextReference reference,
+        DiscussionContextEntityReference entityReference)
+    {
+        if (entityReference == null) {
+            return Optional.empty();
+        }
+        DiscussionStoreConfiguration configuration =
+            this.discussionStoreConfigurationFactory.getDiscussionStoreConfiguration(reference.getApplicationHint());
+        SpaceReference space = configuration
+            .getDiscussionContextSpaceStorageLocation(new DiscussionStoreConfigurationParameters(), entityReference);
+        return getDocument(space, reference, DiscussionContextMetadata.XCLASS_REFERENCE);
+    }
+
+    private Optional<XWikiDocument> getDocument(SpaceReference space, AbstractDiscussionReference reference,
+        LocalDocumentReference xclassReference)
+    {
+        Optional<XWikiDocument> result = Optional.empty();
+        if (space != null && StringUtils.isNotBlank(reference.getReference())) {
+            DocumentReference documentReference = new DocumentReference(reference.getReference(), space);
+            XWikiContext context = this.xcontextProvider.get();
+            try {
+                XWikiDocument document = context.getWiki().getDocument(documentReference, context);
+                BaseObject object = document.getXObject(xclassReference);
+                if (!document.isNew() && object != null && Objects.equals(
+                    this.discussionReferencesSerializer.serialize(reference),
+                    object.getStringValue(DiscussionMetadata.REFERENCE_NAME)))
+                {
+                    result = Optional.of(document);
+                }
+            } catch (XWikiException e) {
+                this.logger.debug("Failed to load the holder page [{}] of [{}]. Cause: [{}]", documentReference,
+                    reference, getRootCauseMessage(e));
+            }
+        }
+        return result;
+    }
+}
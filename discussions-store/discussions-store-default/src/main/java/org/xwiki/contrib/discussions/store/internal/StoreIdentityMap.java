@@ -0,0 +1,203 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.contrib.discussions.domain.references.AbstractDiscussionReference;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Identity map of the discussions, discussion contexts and messages loaded during the current request, so that each
+ * of them is loaded at most once per request. The map is bound to the execution context, and is not inherited by the
+ * child execution contexts. Nothing is kept when no execution context is available.
+ * <p>
+ * The objects are kept per wiki, since the wiki of the context can change during an execution. Each caller gets its
+ * own copy of the object, along with its holder page, so that the changes of a caller are not seen by the others until
+ * they are saved. The loaded objects are never modified by the map, so the loaders return the objects of the documents
+ * cached by XWiki without copying them, and each get copies the object once.
+ * <p>
+ * The objects saved by the stores are put back in the map after the save, and the objects whose holder page is
+ * saved or deleted elsewhere are removed from the map by {@link StoreIdentityMapListener}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component(roles = StoreIdentityMap.class)
+@Singleton
+public class StoreIdentityMap
+{
+    private static final String CONTEXT_PROPERTY = "discussions.store.identityMap";
+
+    // Bounds the memory used by the long running executions, such as the jobs.
+    private static final int MAX_SIZE = 500;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /**
+     * Returns the object of the given reference loaded during the current request, or load it.
+     *
+     * @param reference the reference of a discussion, a discussion context or a message
+     * @param loader loads the object when it is not in the map yet, the loaded object is not modified
+     * @param <T> the type of the reference
+     * @return the object of the reference, or {@link Optional#empty()} if it cannot be found
+     */
+    public <T extends AbstractDiscussionReference> Optional<BaseObject> get(T reference,
+        Function<T, Optional<BaseObject>> loader)
+    {
+        Map<Pair<String, AbstractDiscussionReference>, BaseObject> map = getMap();
+        if (map == null) {
+            return loader.apply(reference).map(this::copy);
+        }
+        Pair<String, AbstractDiscussionReference> key = getKey(reference);
+        BaseObject object = map.get(key);
+        if (object != null) {
+            return Optional.of(copy(object));
+        }
+        // The objects which are not found are not kept since they could be created later in the request, and the
+        // loaded ones are kept as is since only copies of them are returned.
+        Optional<BaseObject> loaded = loader.apply(reference);
+        loaded.ifPresent(value -> map.put(key, value));
+        return loaded.map(this::copy);
+    }
+
+    /**
+     * Returns the object of the given reference if it was already loaded during the current request.
+     *
+     * @param reference the reference of a discussion, a discussion context or a message
+     * @return the object of the reference, or {@link Optional#empty()} if it is not in the map
+     */
+    public Optional<BaseObject> getIfPresent(AbstractDiscussionReference reference)
+    {
+        Map<Pair<String, AbstractDiscussionReference>, BaseObject> map = getMap();
+        if (map == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(map.get(getKey(reference))).map(this::copy);
+    }
+
+    /**
+     * Puts an object which was just created or saved in the map.
+     *
+     * @param reference the reference of the object
+     * @param object the object
+     */
+    public void put(AbstractDiscussionReference reference, BaseObject object)
+    {
+        Map<Pair<String, AbstractDiscussionReference>, BaseObject> map = getMap();
+        if (map != null) {
+            // The caller keeps the given object, so a copy is kept instead.
+            map.put(getKey(reference), copy(object));
+        }
+    }
+
+    /**
+     * @param reference the reference of the object to remove from the map
+     */
+    public void remove(AbstractDiscussionReference reference)
+    {
+        Map<Pair<String, AbstractDiscussionReference>, BaseObject> map = getMap();
+        if (map != null) {
+            map.remove(getKey(reference));
+        }
+    }
+
+    /**
+     * Removes the objects held by a page from the map.
+     *
+     * @param holderReference the reference of the holder page
+     */
+    public void remove(DocumentReference holderReference)
+    {
+        Map<Pair<String, AbstractDiscussionReference>, BaseObject> map = getMap();
+        if (map != null) {
+            synchronized (map) {
+                map.values().removeIf(object -> holderReference.equals(object.getDocumentReference()));
+            }
+        }
+    }
+
+    private Pair<String, AbstractDiscussionReference> getKey(AbstractDiscussionReference reference)
+    {
+        return Pair.of(this.xcontextProvider.get().getWikiId(), reference);
+    }
+
+    private BaseObject copy(BaseObject object)
+    {
+        XWikiDocument document = object.getOwnerDocument();
+        if (document == null) {
+            return object.clone();
+        }
+        // The holder page is copied too, so that the copy can be saved by the caller.
+        return document.clone().getXObject(object.getXClassReference(), object.getNumber());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Pair<String, AbstractDiscussionReference>, BaseObject> getMap()
+    {
+        ExecutionContext context = this.execution.getContext();
+        if (context == null) {
+            return null;
+        }
+        Map<Pair<String, AbstractDiscussionReference>, BaseObject> map =
+            (Map<Pair<String, AbstractDiscussionReference>, BaseObject>) context.getProperty(CONTEXT_PROPERTY);
+        if (map == null) {
+            map = Collections.synchronizedMap(new BoundedMap());
+            context.setProperty(CONTEXT_PROPERTY, map);
+        }
+        return map;
+    }
+
+    private static final class BoundedMap extends LinkedHashMap<Pair<String, AbstractDiscussionReference>, BaseObject>
+    {
+        private static final long serialVersionUID = 1L;
+
+        BoundedMap()
+        {
+            super(16, 0.75F, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Pair<String, AbstractDiscussionReference>, BaseObject> eldest)
+        {
+            return size() > MAX_SIZE;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.security.SecureRandom;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.discussions.store.PageHolderIdGenerator;
+
+/**
+ * Generates time-ordered identifiers following the <a href="https://github.com/ulid/spec">ULID</a> layout: 48 bits
+ * of milliseconds since the epoch followed by 80 random bits, encoded with the Crockford base 32 alphabet in 26
+ * characters. The identifiers generated within the same millisecond are incremented from the previous one by a random
+ * step, so that the identifiers of a node are strictly increasing, while the next identifier cannot be guessed from
+ * the previous one. Since the page names start with the title of the entity when it has one, only the pages with the
+ * same title, or without title, are named in creation order.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@Component
+@Singleton
+public class TimeOrderedPageHolderIdGenerator implements PageHolderIdGenerator
+{
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private static final int LENGTH = 26;
+
+    private static final int TIME_LENGTH = 10;
+
+    private static final int BITS_PER_CHAR = 5;
+
+    private static final int CHAR_MASK = 0x1F;
+
+    private static final int RANDOM_HIGH_MASK = 0xFFFF;
+
+    // The characters holding the 16 most significant random bits and the 4 left over by the 64 least significant ones.
+    private static final int RANDOM_HIGH_LENGTH = 4;
+
+    private static final int RANDOM_LOW_LEFTOVER_BITS = 4;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private long lastTime;
+
+    // The 80 random bits: the 16 most significant ones and the 64 least significant ones.
+    private int randomHigh;
+
+    private long randomLow;
+
+    @Override
+    public String generate()
+    {
+        long time;
+        int high;
+        long low;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now > this.lastTime) {
+                this.lastTime = now;
+                this.randomHigh = this.random.nextInt() & RANDOM_HIGH_MASK;
+                this.randomLow = this.random.nextLong();
+            } else {
+                // Same millisecond, or the clock went back: increment the previous identifier by a random step.
+                long previousLow = this.randomLow;
+                this.randomLow += 1 + Integer.toUnsignedLong(this.random.nextInt());
+                if (Long.compareUnsigned(this.randomLow, previousLow) < 0) {
+                    this.randomHigh = (this.randomHigh + 1) & RANDOM_HIGH_MASK;
+                    if (this.randomHigh == 0) {
+                        // The random part overflowed: move to the next millisecond.
+                        this.lastTime++;
+                    }
+                }
+            }
+            time = this.lastTime;
+            high = this.randomHigh;
+            low = this.randomLow;
+        }
+        return encode(time, high, low);
+    }
+
+    private String encode(long time, int high, long low)
+    {
+        char[] chars = new char[LENGTH];
+        long value = time;
+        for (int i = TIME_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (value & CHAR_MASK)];
+            value >>>= BITS_PER_CHAR;
+        }
+        value = low;
+        for (int i = LENGTH - 1; i >= TIME_LENGTH + RANDOM_HIGH_LENGTH; i--) {
+            chars[i] = ALPHABET[(int) (value & CHAR_MASK)];
+            value >>>= BITS_PER_CHAR;
+        }
+        value |= (long) high << RANDOM_LOW_LEFTOVER_BITS;
+        for (int i = TIME_LENGTH + RANDOM_HIGH_LENGTH - 1; i >= TIME_LENGTH; i--) {
+            chars[i] = ALPHABET[(int) (value & CHAR_MASK)];
+            value >>>= BITS_PER_CHAR;
+        }
+        return new String(chars);
+    }
+}
@@ -26,17 +26,20 @@ import javax.inject.Provider;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.xwiki.context.Execution;
 import org.xwiki.contrib.discussions.DiscussionException;
 import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.store.DiscussionStoreService;
 import org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata;
-import org.xwiki.localization.ContextualLocalizationManager;
 import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
+import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.junit5.mockito.ComponentTest;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
 import org.xwiki.test.junit5.mockito.MockComponent;
@@ -48,15 +51,19 @@ import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.DESCRIPTION_NAME;
-import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.DISCUSSIONS_NAME;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.ENTITY_REFERENCE_NAME;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.ENTITY_REFERENCE_TYPE_NAME;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata.NAME_NAME;
@@ -68,6 +75,7 @@ import static org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata
  * @since 2.5.3
  */
 @ComponentTest
+@ComponentList(StoreIdentityMap.class)
 class DefaultDiscussionContextStoreServiceTest
 {
     private static final String GET_QUERY =
@@ -78,10 +86,10 @@ class DefaultDiscussionContextStoreServiceTest
     private DefaultDiscussionContextStoreService service;
 
     @MockComponent
-    private Provider<XWikiContext> xcontextProvider;
+    private Execution execution;
 
     @MockComponent
-    private ContextualLocalizationManager localizationManager;
+    private Provider<XWikiContext> xcontextProvider;
 
     @MockComponent
     private PageHolderReferenceFactory pageHolderReferenceFactory;
@@ -98,6 +106,9 @@ class DefaultDiscussionContextStoreServiceTest
     @MockComponent
     private DiscussionReferencesSerializer discussionReferencesSerializer;
 
+    @MockComponent
+    private DiscussionStoreService discussionStoreService;
+
     private XWikiContext context;
     private XWiki wiki;
 
@@ -108,8 +119,6 @@ class DefaultDiscussionContextStoreServiceTest
         when(this.xcontextProvider.get()).thenReturn(this.context);
         this.wiki = mock(XWiki.class);
         when(this.context.getWiki()).thenReturn(this.wiki);
-        when(this.localizationManager.getTranslationPlain(any()))
-            .then(invocationOnMock -> invocationOnMock.getArgument(0));
     }
 
     @Test
@@ -131,80 +140,76 @@ class DefaultDiscussionContextStoreServiceTest
         when(docObj.clone()).thenReturn(docObj);
         BaseObject baseObject = mock(BaseObject.class);
         when(docObj.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE)).thenReturn(baseObject);
+        mockCopy(docObj, baseObject);
         assertEquals(Optional.of(baseObject), this.service.get(discussionContextReference));
         verify(query1).bindValue("reference", serializedDiscussionContextReference);
         verify(docObj).clone();
     }
 
     @Test
-    void link() throws QueryException, XWikiException
+    void link()
     {
         DiscussionReference discussionReference =
             new DiscussionReference("foo", "myDiscussionReference");
         DiscussionContextReference discussionContextReference =
             new DiscussionContextReference("foo", "myDiscussionContextReference");
-        String serializedDiscussionContextReference = "foo:myDiscussionContextReference";
-        when(this.discussionReferencesSerializer.serialize(discussionContextReference))
-            .thenReturn(serializedDiscussionContextReference);
-        String serializedDiscussionReference = "foo:myDiscussionReference";
-        when(this.discussionReferencesSerializer.serialize(discussionReference))
-            .thenReturn(serializedDiscussionReference);
-
-        Query query1 = mock(Query.class);
-        when(this.queryManager.createQuery(GET_QUERY, Query.XWQL)).thenReturn(query1);
-        when(query1.bindValue("reference", serializedDiscussionContextReference)).thenReturn(query1);
-        String docName = "objDoc1";
-        when(query1.execute()).thenReturn(List.of(docName));
-        XWikiDocument docObj = mock(XWikiDocument.class);
-        when(this.wiki.getDocument(docName, EntityType.DOCUMENT, this.context)).thenReturn(docObj);
-        when(docObj.clone()).thenReturn(docObj);
-        BaseObject baseObject = mock(BaseObject.class);
-        when(docObj.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE)).thenReturn(baseObject);
-        when(baseObject.getListValue(DISCUSSIONS_NAME)).thenReturn(List.of("ref1", "ref2"));
-        when(baseObject.getOwnerDocument()).thenReturn(docObj);
+        when(this.discussionStoreService.link(discussionReference, discussionContextReference)).thenReturn(true);
 
         assertTrue(this.service.link(discussionContextReference, discussionReference));
-        verify(query1).bindValue("reference", serializedDiscussionContextReference);
-        verify(baseObject).setDBStringListValue(DISCUSSIONS_NAME,
-            List.of("ref1", "ref2", serializedDiscussionReference));
-        verify(this.wiki).saveDocument(docObj, "discussions.store.discussionContext.linkDiscussion", true,this.context);
-        verify(docObj).clone();
+        verify(this.discussionStoreService).link(discussionReference, discussionContextReference);
+    }
+
+    @Test
+    void findEntityReferencesByDiscussionReference() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("foo", "myDiscussionReference");
+        when(this.discussionReferencesSerializer.serialize(discussionReference))
+            .thenReturn("foo:myDiscussionReference");
+        Query query = mock(Query.class);
+        when(this.queryManager.createQuery(any(), eq(Query.HQL))).thenReturn(query);
+        when(query.bindValue(any(), any())).thenReturn(query);
+        when(query.setOffset(anyInt())).thenReturn(query);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.<String>execute()).thenReturn(List.of("xwiki:XWiki.U1", "xwiki:XWiki.U2"));
+
+        assertEquals(List.of("xwiki:XWiki.U1", "xwiki:XWiki.U2"),
+            this.service.findEntityReferencesByDiscussionReference(discussionReference, "messagestream-user", 20,
+                10));
+        verify(query).bindValue("type", "messagestream-user");
+        verify(query).bindValue("reference", "foo:myDiscussionReference");
+        verify(query).setOffset(20);
+        verify(query).setLimit(10);
+        verify(this.wiki, never()).getDocument(any(String.class), any(EntityType.class), any());
     }
 
     @Test
-    void unlink() throws QueryException, XWikiException
+    void countEntityReferencesByDiscussionReference() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("foo", "myDiscussionReference");
+        when(this.discussionReferencesSerializer.serialize(discussionReference))
+            .thenReturn("foo:myDiscussionReference");
+        Query query = mock(Query.class);
+        when(this.queryManager.createQuery(startsWith("select count(distinct "), eq(Query.HQL))).thenReturn(query);
+        when(query.bindValue(any(), any())).thenReturn(query);
+        when(query.<Long>execute()).thenReturn(List.of(42L));
+
+        assertEquals(42L,
+            this.service.countEntityReferencesByDiscussionReference(discussionReference, "messagestream-user"));
+        verify(query).bindValue("type", "messagestream-user");
+        verify(query, never()).setLimit(anyInt());
+    }
+
+    @Test
+    void unlink()
     {
         DiscussionReference discussionReference =
             new DiscussionReference("foo", "myDiscussionReference");
         DiscussionContextReference discussionContextReference =
             new DiscussionContextReference("foo", "myDiscussionContextReference");
-        String serializedDiscussionContextReference = "foo:myDiscussionContextReference";
-        when(this.discussionReferencesSerializer.serialize(discussionContextReference))
-            .thenReturn(serializedDiscussionContextReference);
-        String serializedDiscussionReference = "foo:myDiscussionReference";
-        when(this.discussionReferencesSerializer.serialize(discussionReference))
-            .thenReturn(serializedDiscussionReference);
-
-        Query query1 = mock(Query.class);
-        when(this.queryManager.createQuery(GET_QUERY, Query.XWQL)).thenReturn(query1);
-        when(query1.bindValue("reference", serializedDiscussionContextReference)).thenReturn(query1);
-        String docName = "objDoc1";
-        when(query1.execute()).thenReturn(List.of(docName));
-        XWikiDocument docObj = mock(XWikiDocument.class);
-        when(docObj.clone()).thenReturn(docObj);
-        when(this.wiki.getDocument(docName, EntityType.DOCUMENT, this.context)).thenReturn(docObj);
-        BaseObject baseObject = mock(BaseObject.class);
-        when(docObj.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE)).thenReturn(baseObject);
-        when(baseObject.getListValue(DISCUSSIONS_NAME)).thenReturn(
-            List.of("ref1", serializedDiscussionReference, "ref2"));
-        when(baseObject.getOwnerDocument()).thenReturn(docObj);
+        when(this.discussionStoreService.unlink(discussionReference, discussionContextReference)).thenReturn(false);
 
-        assertTrue(this.service.unlink(discussionContextReference, discussionReference));
-        verify(query1).bindValue("reference", serializedDiscussionContextReference);
-        verify(baseObject).setDBStringListValue(DISCUSSIONS_NAME, List.of("ref1", "ref2"));
-        verify(this.wiki).saveDocument(docObj, "discussions.store.discussionContext.unlinkDiscussion", true,
-            this.context);
-        verify(docObj).clone();
+        assertFalse(this.service.unlink(discussionContextReference, discussionReference));
+        verify(this.discussionStoreService).unlink(discussionReference, discussionContextReference);
     }
 
     @Test
@@ -224,7 +229,7 @@ class DefaultDiscussionContextStoreServiceTest
         when(document.clone()).thenReturn(document);
         BaseObject baseObject = mock(BaseObject.class);
         when(document.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE)).thenReturn(baseObject);
-        when(baseObject.getOwnerDocument()).thenReturn(document);
+        mockCopy(document, baseObject);
 
         DiscussionContextEntityReference entityReference = new DiscussionContextEntityReference("myType", "myEntity");
         this.service.updateExistingDiscussionContext(reference, "myName", "myDescription", entityReference);
@@ -273,7 +278,7 @@ class DefaultDiscussionContextStoreServiceTest
         when(document.clone()).thenReturn(document);
         BaseObject baseObject = mock(BaseObject.class);
         when(document.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE)).thenReturn(baseObject);
-        when(baseObject.getOwnerDocument()).thenReturn(document);
+        mockCopy(document, baseObject);
         XWikiException xWikiException = mock(XWikiException.class);
         doThrow(xWikiException).when(this.wiki)
             .saveDocument(document, "Update discussion context", true, this.context);
@@ -286,4 +291,13 @@ class DefaultDiscussionContextStoreServiceTest
             exception.getMessage());
         assertEquals(xWikiException, exception.getCause());
     }
+
+    private void mockCopy(XWikiDocument document, BaseObject object)
+    {
+        // The identity map returns copies of the holder page, which are the mocked page itself here.
+        DocumentReference xclassReference = new DocumentReference("xwiki", "Discussions", "DiscussionContextClass");
+        when(object.getOwnerDocument()).thenReturn(document);
+        when(object.getXClassReference()).thenReturn(xclassReference);
+        when(document.getXObject(xclassReference, 0)).thenReturn(object);
+    }
 }
\ No newline at end of file
@@ -28,6 +28,8 @@ import javax.inject.Provider;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.contrib.discussions.DiscussionReferencesResolver;
 import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
@@ -35,8 +37,10 @@ import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
 import org.xwiki.localization.ContextualLocalizationManager;
 import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryManager;
+import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.junit5.mockito.ComponentTest;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
 import org.xwiki.test.junit5.mockito.MockComponent;
@@ -47,10 +51,14 @@ import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.xwiki.contrib.discussions.store.meta.DiscussionMetadata.DISCUSSION_CONTEXTS_NAME;
@@ -63,6 +71,7 @@ import static org.xwiki.contrib.discussions.store.meta.DiscussionMetadata.UPDATE
  * @since 2.0
  */
 @ComponentTest
+@ComponentList({ StoreIdentityMap.class, DiscussionHolderUpdater.class })
 class DefaultDiscussionStoreServiceTest
 {
     private static final String GET_QUERY =
@@ -72,6 +81,9 @@ class DefaultDiscussionStoreServiceTest
     @InjectMockComponents
     private DefaultDiscussionStoreService storeService;
 
+    @MockComponent
+    private Execution execution;
+
     @MockComponent
     private Provider<XWikiContext> xcontextProvider;
 
@@ -121,6 +133,7 @@ class DefaultDiscussionStoreServiceTest
 
         BaseObject expectedObject = mock(BaseObject.class);
         when(document.getXObject(DiscussionMetadata.XCLASS_REFERENCE)).thenReturn(expectedObject);
+        mockCopy(document, expectedObject);
 
         assertEquals(Optional.of(expectedObject), this.storeService.get(discussionReference));
         verify(query).bindValue("reference", "d1");
@@ -130,76 +143,139 @@ class DefaultDiscussionStoreServiceTest
     @Test
     void link() throws Exception
     {
-        DiscussionReference discussionReference =
-            new DiscussionReference("foo", "myDiscussionReference");
+        DiscussionReference discussionReference = new DiscussionReference("foo", "myDiscussionReference");
         DiscussionContextReference discussionContextReference =
             new DiscussionContextReference("foo", "myDiscussionContextReference");
-
-        String serializedDiscussionReference = "foo:myDiscussionReference";
         String serializedDiscussionContextReference = "foo:myDiscussionContextReference";
-        when(this.discussionReferencesSerializer.serialize(discussionReference))
-            .thenReturn(serializedDiscussionReference);
         when(this.discussionReferencesSerializer.serialize(discussionContextReference))
             .thenReturn(serializedDiscussionContextReference);
-
-        Query query1 = mock(Query.class);
-        when(this.queryManager.createQuery(GET_QUERY, Query.XWQL)).thenReturn(query1);
-        when(query1.bindValue("reference", serializedDiscussionReference)).thenReturn(query1);
-        String docName = "objDoc1";
-        when(query1.execute()).thenReturn(List.of(docName));
-        XWikiDocument docObj = mock(XWikiDocument.class);
-        when(docObj.clone()).thenReturn(docObj);
-        when(this.wiki.getDocument(docName, EntityType.DOCUMENT, this.context)).thenReturn(docObj);
-        BaseObject baseObject = mock(BaseObject.class);
-        when(docObj.getXObject(DiscussionMetadata.XCLASS_REFERENCE)).thenReturn(baseObject);
+        XWikiDocument document = mockDiscussionHolder(discussionReference);
+        BaseObject baseObject = document.getXObject(DiscussionMetadata.XCLASS_REFERENCE);
         when(baseObject.getListValue(DISCUSSION_CONTEXTS_NAME)).thenReturn(List.of("ref1", "ref2"));
-        when(baseObject.getOwnerDocument()).thenReturn(docObj);
 
         assertTrue(this.storeService.link(discussionReference, discussionContextReference));
-        verify(query1).bindValue("reference", serializedDiscussionReference);
         verify(baseObject).setDBStringListValue(DISCUSSION_CONTEXTS_NAME,
             List.of("ref1", "ref2", serializedDiscussionContextReference));
         verify(baseObject).setDateValue(eq(UPDATE_DATE_NAME), any(Date.class));
-        verify(this.wiki).saveDocument(docObj, "discussions.store.discussion.linkContext", true,this.context);
-        verify(docObj).clone();
+        verify(document).setMetaDataDirty(false);
+        verify(document).setContentDirty(false);
+        verify(this.wiki).saveDocument(document, "discussions.store.discussion.linkContext", true, this.context);
     }
 
     @Test
-    void unlink() throws Exception
+    void linkAlreadyLinked() throws Exception
     {
-        DiscussionReference discussionReference =
-            new DiscussionReference("foo", "myDiscussionReference");
+        DiscussionReference discussionReference = new DiscussionReference("foo", "myDiscussionReference");
         DiscussionContextReference discussionContextReference =
             new DiscussionContextReference("foo", "myDiscussionContextReference");
+        when(this.discussionReferencesSerializer.serialize(discussionContextReference)).thenReturn("ref1");
+        XWikiDocument document = mockDiscussionHolder(discussionReference);
+        BaseObject baseObject = document.getXObject(DiscussionMetadata.XCLASS_REFERENCE);
+        when(baseObject.getListValue(DISCUSSION_CONTEXTS_NAME)).thenReturn(List.of("ref1", "ref2"));
+
+        assertFalse(this.storeService.link(discussionReference, discussionContextReference));
+        verify(this.wiki, never()).saveDocument(any(), any(), anyBoolean(), any());
+    }
 
-        String serializedDiscussionReference = "foo:myDiscussionReference";
+    @Test
+    void unlink() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("foo", "myDiscussionReference");
+        DiscussionContextReference discussionContextReference =
+            new DiscussionContextReference("foo", "myDiscussionContextReference");
         String serializedDiscussionContextReference = "foo:myDiscussionContextReference";
-        when(this.discussionReferencesSerializer.serialize(discussionReference))
-            .thenReturn(serializedDiscussionReference);
         when(this.discussionReferencesSerializer.serialize(discussionContextReference))
             .thenReturn(serializedDiscussionContextReference);
+        XWikiDocument document = mockDiscussionHolder(discussionReference);
+        BaseObject baseObject = document.getXObject(DiscussionMetadata.XCLASS_REFERENCE);
+        when(baseObject.getListValue(DISCUSSION_CONTEXTS_NAME))
+            .thenReturn(List.of("ref1", serializedDiscussionContextReference, "ref2"));
+
+        assertTrue(this.storeService.unlink(discussionReference, discussionContextReference));
+        verify(baseObject).setDBStringListValue(DISCUSSION_CONTEXTS_NAME, List.of("ref1", "ref2"));
+        verify(baseObject).setDateValue(eq(UPDATE_DATE_NAME), any(Date.class));
+        verify(this.wiki).saveDocument(document, "discussions.store.discussion.unlinkContext", true, this.context);
+    }
+
+    @Test
+    void findByDiscussionContexts() throws Exception
+    {
+        DiscussionContextReference context1 = new DiscussionContextReference("foo", "context1");
+        DiscussionContextReference context2 = new DiscussionContextReference("foo", "context2");
+        when(this.discussionReferencesSerializer.serialize(context1)).thenReturn("foo:context1");
+        when(this.discussionReferencesSerializer.serialize(context2)).thenReturn("foo:context2");
 
-        Query query1 = mock(Query.class);
-        when(this.queryManager.createQuery(GET_QUERY, Query.XWQL)).thenReturn(query1);
-        when(query1.bindValue("reference", serializedDiscussionReference)).thenReturn(query1);
+        Query query = mock(Query.class);
+        when(this.queryManager.createQuery(any(), eq(Query.HQL))).thenReturn(query);
+        when(query.bindValue(any(String.class), any())).thenReturn(query);
+        when(query.execute()).thenReturn(List.of(new Object[] { "objDoc1", "foo:discussion" }));
+        when(this.discussionReferencesResolver.resolve("foo:discussion", DiscussionReference.class))
+            .thenReturn(new DiscussionReference("foo", "discussion"));
+        XWikiDocument docObj = mock(XWikiDocument.class);
+        when(docObj.clone()).thenReturn(docObj);
+        when(this.wiki.getDocument("objDoc1", EntityType.DOCUMENT, this.context)).thenReturn(docObj);
+        BaseObject baseObject = mock(BaseObject.class);
+        when(docObj.getXObject(DiscussionMetadata.XCLASS_REFERENCE)).thenReturn(baseObject);
+        mockCopy(docObj, baseObject);
+
+        assertEquals(List.of(baseObject),
+            this.storeService.findByDiscussionContexts(List.of(context1, context2, context1)));
+        verify(query).bindValue("discussionContextReferences", List.of("foo:context1", "foo:context2"));
+        verify(query).bindValue("contextsSize", 2);
+        verify(query).bindValue("contextsListSize", 2L);
+        verify(this.queryManager).createQuery(any(), eq(Query.HQL));
+    }
+
+    @Test
+    void getLoadsOncePerRequest() throws Exception
+    {
+        when(this.execution.getContext()).thenReturn(new ExecutionContext());
+        DiscussionReference discussionReference = new DiscussionReference("foo", "myDiscussionReference");
+        XWikiDocument docObj = mockDiscussionHolder(discussionReference);
+        BaseObject baseObject = docObj.getXObject(DiscussionMetadata.XCLASS_REFERENCE);
+
+        assertSame(baseObject, this.storeService.get(discussionReference).get());
+        this.storeService.touch(discussionReference);
+        assertSame(baseObject, this.storeService.get(discussionReference).get());
+
+        verify(this.queryManager).createQuery(GET_QUERY, Query.XWQL);
+        verify(baseObject).setDateValue(eq(UPDATE_DATE_NAME), any(Date.class));
+        verify(this.wiki).saveDocument(docObj, "discussions.store.discussion.updateDate", true, this.context);
+    }
+
+    private XWikiDocument mockDiscussionDocument(DiscussionReference discussionReference) throws Exception
+    {
+        when(this.discussionReferencesSerializer.serialize(discussionReference)).thenReturn("foo:discussion");
+        Query query = mock(Query.class);
+        when(this.queryManager.createQuery(GET_QUERY, Query.XWQL)).thenReturn(query);
+        when(query.bindValue("reference", "foo:discussion")).thenReturn(query);
         String docName = "objDoc1";
-        when(query1.execute()).thenReturn(List.of(docName));
+        when(query.execute()).thenReturn(List.of(docName));
         XWikiDocument docObj = mock(XWikiDocument.class);
         when(docObj.clone()).thenReturn(docObj);
         when(this.wiki.getDocument(docName, EntityType.DOCUMENT, this.context)).thenReturn(docObj);
         BaseObject baseObject = mock(BaseObject.class);
         when(docObj.getXObject(DiscussionMetadata.XCLASS_REFERENCE)).thenReturn(baseObject);
-        when(baseObject.getListValue(DISCUSSION_CONTEXTS_NAME)).thenReturn(List.of("ref1",
-            serializedDiscussionContextReference, "ref2"));
-        when(baseObject.getOwnerDocument()).thenReturn(docObj);
+        mockCopy(docObj, baseObject);
+        return docObj;
+    }
 
-        assertTrue(this.storeService.unlink(discussionReference, discussionContextReference));
-        verify(query1).bindValue("reference", serializedDiscussionReference);
-        verify(baseObject).setDBStringListValue(DISCUSSION_CONTEXTS_NAME,
-            List.of("ref1", "ref2"));
-        verify(baseObject).setDateValue(eq(UPDATE_DATE_NAME), any(Date.class));
-        verify(this.wiki).saveDocument(docObj, "discussions.store.discussion.unlinkContext", true,this.context);
-        verify(docObj).clone();
+    private XWikiDocument mockDiscussionHolder(DiscussionReference discussionReference) throws Exception
+    {
+        XWikiDocument docObj = mockDiscussionDocument(discussionReference);
+        DocumentReference documentReference = new DocumentReference("xwiki", "Discussions", "objDoc1");
+        when(docObj.getXObject(DiscussionMetadata.XCLASS_REFERENCE).getDocumentReference())
+            .thenReturn(documentReference);
+        when(this.wiki.getDocument(documentReference, this.context)).thenReturn(docObj);
+        return docObj;
     }
 
+    private void mockCopy(XWikiDocument document, BaseObject object)
+    {
+        // The identity map returns copies of the holder page, which are the mocked page itself here.
+        DocumentReference xclassReference = new DocumentReference("xwiki", "Discussions", "DiscussionClass");
+        when(object.getOwnerDocument()).thenReturn(document);
+        when(object.getXClassReference()).thenReturn(xclassReference);
+        when(document.getXObject(xclassReference, 0)).thenReturn(object);
+    }
 }
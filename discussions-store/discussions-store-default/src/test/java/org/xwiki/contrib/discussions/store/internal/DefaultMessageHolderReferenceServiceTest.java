@@ -19,6 +19,18 @@
  */
 package org.xwiki.contrib.discussions.store.internal;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Provider;
 import javax.servlet.http.HttpSession;
 
@@ -143,4 +155,53 @@ class DefaultMessageHolderReferenceServiceTest
         this.messageHolderReferenceService.consumeReference(discussionReference, registeredReference);
         assertTrue(messageHolderReferenceSession.getMessageHolders().isEmpty());
     }
+
+    @Test
+    void getNextMessageHolderReferenceConcurrently() throws Exception
+    {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        when(this.httpSession.getId()).thenReturn("someId45");
+        when(this.httpSession.getAttribute(any())).then(invocationOnMock ->
+            attributes.get(invocationOnMock.<String>getArgument(0)));
+        doAnswer(invocationOnMock -> attributes.put(invocationOnMock.getArgument(0), invocationOnMock.getArgument(1)))
+            .when(this.httpSession).setAttribute(any(), any());
+
+        DiscussionReference discussionReference = new DiscussionReference("someHint", "discussion");
+        DiscussionStoreConfigurationParameters configurationParameters = new DiscussionStoreConfigurationParameters();
+        when(this.pageHolderReferenceFactory
+            .createPageHolderReference(PageHolderReferenceFactory.DiscussionEntity.MESSAGE,
+                "", "someHint", discussionReference, configurationParameters))
+            .then(invocationOnMock -> new DocumentReference("xwiki", "Space", "Page-" + System.nanoTime()));
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int iterations = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Set<DocumentReference>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    Set<DocumentReference> references = new HashSet<>();
+                    for (int j = 0; j < iterations; j++) {
+                        references.add(this.messageHolderReferenceService
+                            .getNextMessageHolderReference(discussionReference, configurationParameters));
+                    }
+                    return references;
+                }));
+            }
+            start.countDown();
+
+            Set<DocumentReference> references = new HashSet<>();
+            for (Future<Set<DocumentReference>> future : futures) {
+                references.addAll(future.get(30, TimeUnit.SECONDS));
+            }
+            // All the concurrent requests of the session share the same session attribute and holder reference.
+            assertEquals(1, references.size());
+            verify(this.httpSession).setAttribute(eq(MESSAGE_HOLDER_REFERENCE_SESSION_ATTRIBUTE),
+                any(MessageHolderReferenceSession.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
\ No newline at end of file
@@ -20,8 +20,11 @@
 
 package org.xwiki.contrib.discussions.store.internal;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.inject.Provider;
@@ -30,9 +33,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.mockito.Mock;
+import org.xwiki.context.Execution;
+import org.xwiki.contrib.discussions.DiscussionReferencesInterner;
 import org.xwiki.contrib.discussions.DiscussionReferencesResolver;
 import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
+import org.xwiki.contrib.discussions.domain.Discussion;
+import org.xwiki.contrib.discussions.domain.Message;
+import org.xwiki.contrib.discussions.domain.MessageContent;
 import org.xwiki.contrib.discussions.domain.references.ActorReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.domain.references.MessageReference;
@@ -43,6 +51,7 @@ import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryManager;
+import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.junit5.LogCaptureExtension;
 import org.xwiki.test.junit5.mockito.ComponentTest;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
@@ -58,8 +67,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.xwiki.contrib.discussions.store.meta.MessageMetadata.AUTHOR_REFERENCE_NAME;
@@ -74,11 +85,15 @@ import static org.xwiki.test.LogLevel.DEBUG;
  * Test of {@link DefaultMessageStoreService}.
  */
 @ComponentTest
+@ComponentList(StoreIdentityMap.class)
 class DefaultMessageStoreServiceTest
 {
     @InjectMockComponents
     private DefaultMessageStoreService defaultMessageStoreService;
 
+    @MockComponent
+    private Execution execution;
+
     @RegisterExtension
     LogCaptureExtension logCapture = new LogCaptureExtension(DEBUG);
 
@@ -94,6 +109,9 @@ class DefaultMessageStoreServiceTest
     @MockComponent
     private DiscussionReferencesSerializer discussionReferencesSerializer;
 
+    @MockComponent
+    private DiscussionReferencesInterner discussionReferencesInterner;
+
     @MockComponent
     private DiscussionStoreConfigurationFactory discussionStoreConfigurationFactory;
 
@@ -103,6 +121,9 @@ class DefaultMessageStoreServiceTest
     @MockComponent
     private DocumentRedirectionManager documentRedirectionManager;
 
+    @MockComponent
+    private MessageHolderCache messageHolderCache;
+
     @Mock
     private XWikiContext xWikiContext;
 
@@ -114,6 +135,8 @@ class DefaultMessageStoreServiceTest
     {
         when(this.xcontextProvider.get()).thenReturn(this.xWikiContext);
         when(this.xWikiContext.getWiki()).thenReturn(this.xWiki);
+        when(this.discussionReferencesInterner.intern(any(ActorReference.class)))
+            .then(invocation -> invocation.getArgument(0));
     }
 
     @Test
@@ -153,6 +176,31 @@ class DefaultMessageStoreServiceTest
         verify(this.documentRedirectionManager).handleCreatingRedirection(document, parameters);
     }
 
+    @Test
+    void createWhenHolderExists() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("hint", "discussionReference");
+        DiscussionStoreConfigurationParameters parameters = new DiscussionStoreConfigurationParameters();
+        DocumentReference existingHolderReference = new DocumentReference("xwiki", "Discussion", "Message1");
+        DocumentReference newHolderReference = new DocumentReference("xwiki", "Discussion", "Message2");
+        when(this.messageHolderReferenceService.getNextMessageHolderReference(discussionReference, parameters))
+            .thenReturn(existingHolderReference, newHolderReference);
+        XWikiDocument existingDocument = mock(XWikiDocument.class);
+        when(this.xWiki.getDocument(existingHolderReference, this.xWikiContext)).thenReturn(existingDocument);
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(this.xWiki.getDocument(newHolderReference, this.xWikiContext)).thenReturn(document);
+        when(document.isNew()).thenReturn(true);
+        when(document.getDocumentReference()).thenReturn(newHolderReference);
+        BaseObject messageBaseObject = mock(BaseObject.class);
+        when(document.newXObject(MessageMetadata.XCLASS_REFERENCE, this.xWikiContext)).thenReturn(messageBaseObject);
+
+        assertSame(messageBaseObject, this.defaultMessageStoreService.create("content", XWIKI_2_1,
+            new ActorReference("authorType", "authorReference"), discussionReference, "title", parameters));
+        verify(this.messageHolderReferenceService).consumeReference(discussionReference, existingHolderReference);
+        verify(this.xWiki, never()).saveDocument(eq(existingDocument), any(XWikiContext.class));
+        verify(this.xWiki).saveDocument(document, this.xWikiContext);
+    }
+
     @Test
     void getByDiscussion() throws Exception
     {
@@ -181,6 +229,138 @@ class DefaultMessageStoreServiceTest
         assertEquals(asList(r1MessageObject, r2MessageObject), actual);
     }
 
+    @Test
+    void getMessagesByDiscussion() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("hint", "discussionReference");
+        Discussion discussion = mock(Discussion.class);
+        when(discussion.getReference()).thenReturn(discussionReference);
+        when(this.discussionReferencesSerializer.serialize(discussionReference))
+            .thenReturn("discussionReference;hint=hint");
+
+        Query query = mock(Query.class);
+        Date createDate = new Date(1);
+        Date updateDate = new Date(2);
+        List<Object> value = asList(
+            new Object[] { "m1", "content1", "xwiki/2.1", "user", "XWiki.U1", createDate, updateDate, null },
+            new Object[] { "m2", "content2", "xwiki/2.1", "user", "XWiki.U2", createDate, updateDate, "m1" });
+        when(this.queryManager.createQuery(any(), eq(Query.HQL))).thenReturn(query);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.setOffset(anyInt())).thenReturn(query);
+        when(query.bindValue("discussionReference", "discussionReference;hint=hint")).thenReturn(query);
+        when(query.execute()).thenReturn(value);
+
+        MessageReference m1 = new MessageReference("hint", "m1");
+        MessageReference m2 = new MessageReference("hint", "m2");
+        when(this.discussionReferencesResolver.resolve("m1", MessageReference.class)).thenReturn(m1);
+        when(this.discussionReferencesResolver.resolve("m2", MessageReference.class)).thenReturn(m2);
+
+        List<Message> actual = this.defaultMessageStoreService.getMessagesByDiscussion(discussion, 0, 10);
+
+        assertEquals(asList(
+            new Message(m1, new MessageContent("content1", XWIKI_2_1), new ActorReference("user", "XWiki.U1"),
+                createDate, updateDate, discussion, null),
+            new Message(m2, new MessageContent("content2", XWIKI_2_1), new ActorReference("user", "XWiki.U2"),
+                createDate, updateDate, discussion, m1)), actual);
+        verify(query).setOffset(0);
+        verify(query).setLimit(10);
+    }
+
+    @Test
+    void getMessagesByDiscussionAfter() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("hint", "discussionReference");
+        Discussion discussion = mock(Discussion.class);
+        when(discussion.getReference()).thenReturn(discussionReference);
+        when(this.discussionReferencesSerializer.serialize(discussionReference))
+            .thenReturn("discussionReference;hint=hint");
+        MessageReference m1 = new MessageReference("hint", "m1");
+        MessageReference m2 = new MessageReference("hint", "m2");
+        when(this.discussionReferencesSerializer.serialize(m1)).thenReturn("m1");
+        when(this.discussionReferencesResolver.resolve("m2", MessageReference.class)).thenReturn(m2);
+        Date date = new Date(1);
+        Message after = new Message(m1, new MessageContent("content1", XWIKI_2_1),
+            new ActorReference("user", "XWiki.U1"), date, date, discussion, null);
+
+        Query query = mock(Query.class);
+        List<Object> value = Collections.singletonList(
+            new Object[] { "m2", "content2", "xwiki/2.1", "user", "XWiki.U2", date, date, null });
+        when(this.queryManager.createQuery(any(), eq(Query.HQL))).thenReturn(query);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.bindValue(any(String.class), any())).thenReturn(query);
+        when(query.execute()).thenReturn(value);
+
+        List<Message> actual = this.defaultMessageStoreService.getMessagesByDiscussionAfter(discussion, after, 10);
+
+        assertEquals(Collections.singletonList(
+            new Message(m2, new MessageContent("content2", XWIKI_2_1), new ActorReference("user", "XWiki.U2"),
+                date, date, discussion, null)), actual);
+        verify(query).bindValue("cursorDate", date);
+        verify(query).bindValue("cursorReference", "m1");
+        verify(query).setLimit(10);
+    }
+
+    @Test
+    void getRootMessagesByDiscussion() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("hint", "discussionReference");
+        Discussion discussion = mock(Discussion.class);
+        when(discussion.getReference()).thenReturn(discussionReference);
+        when(this.discussionReferencesSerializer.serialize(discussionReference))
+            .thenReturn("discussionReference;hint=hint");
+        MessageReference m1 = new MessageReference("hint", "m1");
+        when(this.discussionReferencesResolver.resolve("m1", MessageReference.class)).thenReturn(m1);
+        Date date = new Date(1);
+
+        Query query = mock(Query.class);
+        List<Object> value = Collections.singletonList(
+            new Object[] { "m1", "content1", "xwiki/2.1", "user", "XWiki.U1", date, date, null });
+        when(this.queryManager.createQuery(contains("not exists"), eq(Query.HQL))).thenReturn(query);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.setOffset(anyInt())).thenReturn(query);
+        when(query.bindValue(any(String.class), any())).thenReturn(query);
+        when(query.execute()).thenReturn(value);
+
+        List<Message> actual = this.defaultMessageStoreService.getRootMessagesByDiscussion(discussion, 5, 10);
+
+        assertEquals(Collections.singletonList(
+            new Message(m1, new MessageContent("content1", XWIKI_2_1), new ActorReference("user", "XWiki.U1"),
+                date, date, discussion, null)), actual);
+        verify(query).setOffset(5);
+        verify(query).setLimit(10);
+    }
+
+    @Test
+    void getRepliesByMessages() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("hint", "discussionReference");
+        Discussion discussion = mock(Discussion.class);
+        when(discussion.getReference()).thenReturn(discussionReference);
+        when(this.discussionReferencesSerializer.serialize(discussionReference))
+            .thenReturn("discussionReference;hint=hint");
+        MessageReference m1 = new MessageReference("hint", "m1");
+        MessageReference m2 = new MessageReference("hint", "m2");
+        when(this.discussionReferencesSerializer.serialize(m1)).thenReturn("m1");
+        when(this.discussionReferencesResolver.resolve("m1", MessageReference.class)).thenReturn(m1);
+        when(this.discussionReferencesResolver.resolve("m2", MessageReference.class)).thenReturn(m2);
+        Date date = new Date(1);
+
+        Query query = mock(Query.class);
+        List<Object> value = Collections.singletonList(
+            new Object[] { "m2", "content2", "xwiki/2.1", "user", "XWiki.U2", date, date, "m1" });
+        when(this.queryManager.createQuery(contains("in (:parents)"), eq(Query.HQL))).thenReturn(query);
+        when(query.bindValue(any(String.class), any())).thenReturn(query);
+        when(query.execute()).thenReturn(value);
+
+        List<Message> actual = this.defaultMessageStoreService.getRepliesByMessages(discussion, List.of(m1));
+
+        assertEquals(Collections.singletonList(
+            new Message(m2, new MessageContent("content2", XWIKI_2_1), new ActorReference("user", "XWiki.U2"),
+                date, date, discussion, m1)), actual);
+        verify(query).bindValue("parents", List.of("m1"));
+        verify(query, never()).setLimit(anyInt());
+    }
+
     @Test
     void getByReference() throws Exception
     {
@@ -196,9 +376,109 @@ class DefaultMessageStoreServiceTest
         when(this.xWiki.getDocument("docRef1", EntityType.DOCUMENT, this.xWikiContext))
             .thenReturn(xWikiDocument);
         when(xWikiDocument.getXObject(MessageMetadata.XCLASS_REFERENCE)).thenReturn(messageBaseObject1);
+        mockCopy(xWikiDocument, messageBaseObject1);
 
         when(this.discussionReferencesResolver.resolve("docRef1", MessageReference.class)).thenReturn(messageReference);
         Optional<BaseObject> actual = this.defaultMessageStoreService.getByReference(messageReference);
         assertEquals(Optional.of(messageBaseObject1), actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    void getByReferenceCached() throws Exception
+    {
+        MessageReference messageReference = new MessageReference("hint", "docRef1");
+        when(this.discussionReferencesSerializer.serialize(messageReference)).thenReturn("reference");
+        DocumentReference holderReference = new DocumentReference("xwiki", "Discussion", "docRef1");
+        when(this.messageHolderCache.get("reference")).thenReturn(holderReference);
+        XWikiDocument xWikiDocument = mock(XWikiDocument.class);
+        when(this.xWiki.getDocument(holderReference, this.xWikiContext)).thenReturn(xWikiDocument);
+        BaseObject messageBaseObject = mock(BaseObject.class);
+        when(xWikiDocument.getXObject(MessageMetadata.XCLASS_REFERENCE)).thenReturn(messageBaseObject);
+        when(messageBaseObject.getStringValue(REFERENCE_NAME)).thenReturn("reference");
+        mockCopy(xWikiDocument, messageBaseObject);
+
+        assertEquals(Optional.of(messageBaseObject), this.defaultMessageStoreService.getByReference(messageReference));
+        verify(this.queryManager, never()).createQuery(any(), any());
+    }
+
+    @Test
+    void getByReferenceMissing() throws Exception
+    {
+        MessageReference messageReference = new MessageReference("hint", "docRef1");
+        when(this.discussionReferencesSerializer.serialize(messageReference)).thenReturn("reference");
+        when(this.messageHolderCache.isMissing("reference")).thenReturn(true);
+
+        assertEquals(Optional.empty(), this.defaultMessageStoreService.getByReference(messageReference));
+        verify(this.queryManager, never()).createQuery(any(), any());
+    }
+
+    @Test
+    void getByReferences() throws Exception
+    {
+        MessageReference cachedReference = new MessageReference("hint", "cached");
+        MessageReference storedReference = new MessageReference("hint", "stored");
+        MessageReference unknownReference = new MessageReference("hint", "unknown");
+        when(this.discussionReferencesSerializer.serialize(cachedReference)).thenReturn("cached");
+        when(this.discussionReferencesSerializer.serialize(storedReference)).thenReturn("stored");
+        when(this.discussionReferencesSerializer.serialize(unknownReference)).thenReturn("unknown");
+
+        DocumentReference cachedHolder = new DocumentReference("xwiki", "Discussion", "cached");
+        when(this.messageHolderCache.get("cached")).thenReturn(cachedHolder);
+        XWikiDocument cachedDocument = mock(XWikiDocument.class);
+        when(this.xWiki.getDocument(cachedHolder, this.xWikiContext)).thenReturn(cachedDocument);
+        BaseObject cachedObject = mock(BaseObject.class);
+        when(cachedDocument.getXObject(MessageMetadata.XCLASS_REFERENCE)).thenReturn(cachedObject);
+        when(cachedObject.getStringValue(REFERENCE_NAME)).thenReturn("cached");
+
+        Query query = mock(Query.class);
+        when(this.queryManager.createQuery(any(), any())).thenReturn(query);
+        when(query.bindValue("references", List.of("stored", "unknown"))).thenReturn(query);
+        when(query.execute()).thenReturn(List.<Object>of(new Object[] { "stored", "Discussion.stored" }));
+        XWikiDocument storedDocument = mock(XWikiDocument.class);
+        when(this.xWiki.getDocument("Discussion.stored", EntityType.DOCUMENT, this.xWikiContext))
+            .thenReturn(storedDocument);
+        BaseObject storedObject = mock(BaseObject.class);
+        when(storedDocument.getXObject(MessageMetadata.XCLASS_REFERENCE)).thenReturn(storedObject);
+        DocumentReference storedHolder = new DocumentReference("xwiki", "Discussion", "stored");
+        when(storedObject.getDocumentReference()).thenReturn(storedHolder);
+
+        Map<MessageReference, BaseObject> actual = this.defaultMessageStoreService
+            .getByReferences(List.of(storedReference, unknownReference, cachedReference));
+
+        assertEquals(List.of(storedReference, cachedReference), new ArrayList<>(actual.keySet()));
+        assertSame(storedObject, actual.get(storedReference));
+        assertSame(cachedObject, actual.get(cachedReference));
+        verify(this.queryManager).createQuery(any(), any());
+        verify(this.messageHolderCache).set("stored", storedHolder);
+        verify(this.messageHolderCache).setMissing("unknown");
+    }
+
+    @Test
+    void countByDiscussions() throws Exception
+    {
+        DiscussionReference discussion1 = new DiscussionReference("hint", "d1");
+        DiscussionReference discussion2 = new DiscussionReference("hint", "d2");
+        when(this.discussionReferencesSerializer.serialize(discussion1)).thenReturn("d1");
+        when(this.discussionReferencesSerializer.serialize(discussion2)).thenReturn("d2");
+        Query query = mock(Query.class);
+        when(this.queryManager.createQuery(any(), any())).thenReturn(query);
+        when(query.bindValue("discussionReferences", List.of("d1", "d2"))).thenReturn(query);
+        when(query.execute()).thenReturn(List.<Object>of(new Object[] { "d2", 3L }));
+
+        Map<DiscussionReference, Long> actual =
+            this.defaultMessageStoreService.countByDiscussions(List.of(discussion1, discussion2));
+
+        assertEquals(List.of(discussion1, discussion2), new ArrayList<>(actual.keySet()));
+        assertEquals(Map.of(discussion1, 0L, discussion2, 3L), actual);
+        verify(this.queryManager).createQuery(any(), any());
+    }
+
+    private void mockCopy(XWikiDocument document, BaseObject object)
+    {
+        // The identity map returns copies of the holder page, which are the mocked page itself here.
+        DocumentReference xclassReference = new DocumentReference("xwiki", "Discussions", "MessageClass");
+        when(object.getOwnerDocument()).thenReturn(document);
+        when(object.getXClassReference()).thenReturn(xclassReference);
+        when(document.getXObject(xclassReference, 0)).thenReturn(object);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.Date;
+import java.util.Optional;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.store.DiscussionStoreService;
+import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
+import org.xwiki.localization.ContextualLocalizationManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.xwiki.contrib.discussions.store.meta.DiscussionMetadata.UPDATE_DATE_NAME;
+
+/**
+ * Tests for {@link DiscussionTouchBuffer}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+@ComponentList(DiscussionHolderUpdater.class)
+class DiscussionTouchBufferTest
+{
+    @InjectMockComponents
+    private DiscussionTouchBuffer touchBuffer;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @MockComponent
+    private Provider<DiscussionStoreService> discussionStoreServiceProvider;
+
+    @MockComponent
+    private Provider<XWikiContext> xcontextProvider;
+
+    @MockComponent
+    private ContextualLocalizationManager localizationManager;
+
+    @MockComponent
+    private StoreIdentityMap storeIdentityMap;
+
+    private DiscussionStoreService discussionStoreService;
+
+    private XWikiContext context;
+
+    private XWiki wiki;
+
+    @BeforeComponent
+    void configure()
+    {
+        // Use a long window so that the scheduled flush does not run during the tests.
+        when(this.configuration.getProperty(DiscussionTouchBuffer.WINDOW_PROPERTY, 5000L)).thenReturn(3600000L);
+        when(this.configuration.getProperty("observation.remote.enabled", false)).thenReturn(false);
+    }
+
+    @BeforeEach
+    void setup()
+    {
+        this.context = mock(XWikiContext.class);
+        when(this.xcontextProvider.get()).thenReturn(this.context);
+        when(this.context.getWikiId()).thenReturn("wiki");
+        this.wiki = mock(XWiki.class);
+        when(this.context.getWiki()).thenReturn(this.wiki);
+        this.discussionStoreService = mock(DiscussionStoreService.class);
+        when(this.discussionStoreServiceProvider.get()).thenReturn(this.discussionStoreService);
+        when(this.localizationManager.getTranslationPlain(any()))
+            .then(invocationOnMock -> invocationOnMock.getArgument(0));
+    }
+
+    @Test
+    void touchAndFlush() throws Exception
+    {
+        assertTrue(this.touchBuffer.isEnabled());
+        DiscussionReference discussionReference = new DiscussionReference("foo", "discussion");
+        BaseObject discussion = mockDiscussion(discussionReference);
+        XWikiDocument document = discussion.getOwnerDocument();
+
+        this.touchBuffer.touch(discussionReference);
+        this.touchBuffer.touch(discussionReference);
+        Date pendingUpdateDate = this.touchBuffer.getPendingUpdateDate(discussionReference);
+        assertNotNull(pendingUpdateDate);
+
+        this.touchBuffer.flush();
+
+        assertNull(this.touchBuffer.getPendingUpdateDate(discussionReference));
+        verify(discussion).setDateValue(UPDATE_DATE_NAME, pendingUpdateDate);
+        verify(this.wiki).saveDocument(document, "discussions.store.discussion.updateDate", true,
+            this.context);
+    }
+
+    @Test
+    void flushMissingDiscussion() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("foo", "discussion");
+        when(this.discussionStoreService.get(discussionReference)).thenReturn(Optional.empty());
+
+        this.touchBuffer.touch(discussionReference);
+        this.touchBuffer.flush();
+
+        assertNull(this.touchBuffer.getPendingUpdateDate(discussionReference));
+        verify(this.wiki, never()).saveDocument(any(), any(), anyBoolean(), any());
+    }
+
+    @Test
+    void flushDiscussionSavedSinceTouched() throws Exception
+    {
+        DiscussionReference discussionReference = new DiscussionReference("foo", "discussion");
+        BaseObject discussion = mockDiscussion(discussionReference);
+        this.touchBuffer.touch(discussionReference);
+        // The discussion has been linked to a context after being touched.
+        when(discussion.getDateValue(UPDATE_DATE_NAME)).thenReturn(new Date(Long.MAX_VALUE));
+
+        this.touchBuffer.flush();
+
+        assertNull(this.touchBuffer.getPendingUpdateDate(discussionReference));
+        verify(discussion, never()).setDateValue(any(), any());
+        verify(this.wiki, never()).saveDocument(any(), any(), anyBoolean(), any());
+    }
+
+    private BaseObject mockDiscussion(DiscussionReference discussionReference) throws Exception
+    {
+        DocumentReference holderReference = new DocumentReference("wiki", "Discussions", "discussion");
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.clone()).thenReturn(document);
+        when(this.wiki.getDocument(holderReference, this.context)).thenReturn(document);
+        BaseObject discussion = mock(BaseObject.class);
+        when(discussion.getOwnerDocument()).thenReturn(document);
+        when(discussion.getDocumentReference()).thenReturn(holderReference);
+        when(document.getXObject(DiscussionMetadata.XCLASS_REFERENCE)).thenReturn(discussion);
+        when(this.discussionStoreService.get(discussionReference)).thenReturn(Optional.of(discussion));
+        return discussion;
+    }
+}
@@ -19,16 +19,25 @@
  */
 package org.xwiki.contrib.discussions.store.internal;
 
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.contrib.discussions.DiscussionStoreConfigurationParameters;
 import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
 import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
 import org.xwiki.contrib.discussions.store.DiscussionStoreConfiguration;
+import org.xwiki.contrib.discussions.store.PageHolderIdGenerator;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectComponentManager;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
 import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.test.mockito.MockitoComponentManager;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
@@ -48,6 +57,33 @@ class PageHolderReferenceFactoryTest
     @MockComponent
     private DiscussionStoreConfigurationFactory discussionStoreConfigurationFactory;
 
+    @MockComponent
+    private PageHolderIdGenerator idGenerator;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @MockComponent
+    @Named("uuid")
+    private PageHolderIdGenerator uuidGenerator;
+
+    @MockComponent
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @InjectComponentManager
+    private MockitoComponentManager componentManager;
+
+    @BeforeEach
+    void setup()
+    {
+        when(this.configuration.getProperty(PageHolderReferenceFactory.ID_GENERATOR_PROPERTY, "default"))
+            .thenReturn("default");
+        when(this.idGenerator.generate()).thenReturn("01ARZ3NDEKTSV4RRFFQ69G5FAV");
+        when(this.componentManagerProvider.get()).thenReturn(this.componentManager);
+    }
+
     @Test
     void createPageHolderReferenceForDiscussionContext()
     {
@@ -93,7 +129,29 @@ class PageHolderReferenceFactoryTest
         assertNotNull(documentReference);
 
         assertEquals(spaceReference, documentReference.getParent());
-        assertFalse(documentReference.getName().isEmpty());
+        assertEquals("01ARZ3NDEKTSV4RRFFQ69G5FAV", documentReference.getName());
+    }
+
+    @Test
+    void createPageHolderReferenceWithConfiguredGenerator()
+    {
+        when(this.configuration.getProperty(PageHolderReferenceFactory.ID_GENERATOR_PROPERTY, "default"))
+            .thenReturn("uuid");
+        when(this.uuidGenerator.generate()).thenReturn("0b5e4f04-5b62-4f5a-8e07-9e1f4d2f6f1a");
+        String applicationHint = "someApp";
+        DiscussionStoreConfigurationParameters parameters = mock(DiscussionStoreConfigurationParameters.class);
+
+        DiscussionStoreConfiguration discussionStoreConfiguration = mock(DiscussionStoreConfiguration.class);
+        when(this.discussionStoreConfigurationFactory.getDiscussionStoreConfiguration(applicationHint))
+            .thenReturn(discussionStoreConfiguration);
+        SpaceReference spaceReference = new SpaceReference("xwiki", "Discussions");
+        when(discussionStoreConfiguration.getDiscussionSpaceStorageLocation(parameters)).thenReturn(spaceReference);
+
+        DocumentReference documentReference = this.referenceFactory.createPageHolderReference(
+            PageHolderReferenceFactory.DiscussionEntity.DISCUSSION,
+            "title", applicationHint, null, parameters);
+
+        assertEquals("title-0b5e4f04-5b62-4f5a-8e07-9e1f4d2f6f1a", documentReference.getName());
     }
 
     @Test
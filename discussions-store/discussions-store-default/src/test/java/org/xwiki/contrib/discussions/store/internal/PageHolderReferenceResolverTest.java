@@ -0,0 +1,163 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.Optional;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.discussions.DiscussionReferencesSerializer;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextEntityReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionContextReference;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.store.DiscussionStoreConfiguration;
+import org.xwiki.contrib.discussions.store.meta.DiscussionContextMetadata;
+import org.xwiki.contrib.discussions.store.meta.DiscussionMetadata;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PageHolderReferenceResolver}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class PageHolderReferenceResolverTest
+{
+    private static final DiscussionReference DISCUSSION_REFERENCE = new DiscussionReference("someApp", "discussion42");
+
+    private static final DocumentReference HOLDER_REFERENCE =
+        new DocumentReference("discussion42", new SpaceReference("xwiki", "Discussions", "Discussion"));
+
+    @InjectMockComponents
+    private PageHolderReferenceResolver referenceResolver;
+
+    @MockComponent
+    private DiscussionStoreConfigurationFactory discussionStoreConfigurationFactory;
+
+    @MockComponent
+    private DiscussionReferencesSerializer discussionReferencesSerializer;
+
+    @MockComponent
+    private Provider<XWikiContext> xcontextProvider;
+
+    private XWikiContext context;
+
+    private DiscussionStoreConfiguration discussionStoreConfiguration;
+
+    private XWiki wiki;
+
+    private XWikiDocument document;
+
+    private BaseObject discussionObject;
+
+    @BeforeEach
+    void setup() throws Exception
+    {
+        this.context = mock(XWikiContext.class);
+        when(this.xcontextProvider.get()).thenReturn(this.context);
+        this.wiki = mock(XWiki.class);
+        when(this.context.getWiki()).thenReturn(this.wiki);
+
+        this.discussionStoreConfiguration = mock(DiscussionStoreConfiguration.class);
+        when(this.discussionStoreConfigurationFactory.getDiscussionStoreConfiguration("someApp"))
+            .thenReturn(this.discussionStoreConfiguration);
+        when(this.discussionStoreConfiguration.getDiscussionSpaceStorageLocation(any()))
+            .thenReturn(HOLDER_REFERENCE.getLastSpaceReference());
+        when(this.discussionReferencesSerializer.serialize(DISCUSSION_REFERENCE)).thenReturn("someApp:discussion42");
+
+        this.document = mock(XWikiDocument.class);
+        when(this.wiki.getDocument(HOLDER_REFERENCE, this.context)).thenReturn(this.document);
+        this.discussionObject = mock(BaseObject.class);
+        when(this.document.getXObject(DiscussionMetadata.XCLASS_REFERENCE)).thenReturn(this.discussionObject);
+    }
+
+    @Test
+    void getDiscussionDocument()
+    {
+        when(this.discussionObject.getStringValue(DiscussionMetadata.REFERENCE_NAME))
+            .thenReturn("someApp:discussion42");
+
+        assertEquals(Optional.of(this.document), this.referenceResolver.getDiscussionDocument(DISCUSSION_REFERENCE));
+    }
+
+    @Test
+    void getDiscussionDocumentNew()
+    {
+        when(this.document.isNew()).thenReturn(true);
+
+        assertEquals(Optional.empty(), this.referenceResolver.getDiscussionDocument(DISCUSSION_REFERENCE));
+    }
+
+    @Test
+    void getDiscussionDocumentOtherReference()
+    {
+        when(this.discussionObject.getStringValue(DiscussionMetadata.REFERENCE_NAME)).thenReturn("someApp:other");
+
+        assertEquals(Optional.empty(), this.referenceResolver.getDiscussionDocument(DISCUSSION_REFERENCE));
+    }
+
+    @Test
+    void getDiscussionContextDocument() throws Exception
+    {
+        DiscussionContextReference contextReference = new DiscussionContextReference("someApp", "context42");
+        DiscussionContextEntityReference entityReference = new DiscussionContextEntityReference("type", "entity");
+        DocumentReference contextHolderReference =
+            new DocumentReference("context42", new SpaceReference("xwiki", "Discussions", "DiscussionContext"));
+        when(this.discussionStoreConfiguration.getDiscussionContextSpaceStorageLocation(any(), eq(entityReference)))
+            .thenReturn(contextHolderReference.getLastSpaceReference());
+        when(this.discussionReferencesSerializer.serialize(contextReference)).thenReturn("someApp:context42");
+        XWikiDocument contextDocument = mock(XWikiDocument.class);
+        when(this.wiki.getDocument(contextHolderReference, this.context)).thenReturn(contextDocument);
+        BaseObject contextObject = mock(BaseObject.class);
+        when(contextDocument.getXObject(DiscussionContextMetadata.XCLASS_REFERENCE)).thenReturn(contextObject);
+        when(contextObject.getStringValue(DiscussionContextMetadata.REFERENCE_NAME)).thenReturn("someApp:context42");
+
+        assertEquals(Optional.of(contextDocument),
+            this.referenceResolver.getDiscussionContextDocument(contextReference, entityReference));
+    }
+
+    @Test
+    void getDiscussionContextDocumentWithoutEntityReference()
+    {
+        DiscussionContextReference contextReference = new DiscussionContextReference("someApp", "context42");
+
+        assertEquals(Optional.empty(), this.referenceResolver.getDiscussionContextDocument(contextReference, null));
+        verify(this.discussionStoreConfiguration, never()).getDiscussionContextSpaceStorageLocation(any(), any());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.contrib.discussions.domain.references.DiscussionReference;
+import org.xwiki.contrib.discussions.domain.references.MessageReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link StoreIdentityMap}.
+ *
+ * @version $Id$
+ * @since 3.2.1
+ */
+@ComponentTest
+class StoreIdentityMapTest
+{
+    private static final DocumentReference HOLDER = new DocumentReference("xwiki", "Discussions", "D1");
+
+    private static final DocumentReference XCLASS = new DocumentReference("xwiki", "Discussions", "DiscussionClass");
+
+    private static final DiscussionReference DISCUSSION = new DiscussionReference("hint", "D1");
+
+    @InjectMockComponents
+    private StoreIdentityMap identityMap;
+
+    @MockComponent
+    private Execution execution;
+
+    @MockComponent
+    private Provider<XWikiContext> xcontextProvider;
+
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    private XWikiContext context;
+
+    private BaseObject object;
+
+    @BeforeEach
+    void setup()
+    {
+        when(this.execution.getContext()).thenReturn(new ExecutionContext());
+        this.context = mock(XWikiContext.class);
+        when(this.xcontextProvider.get()).thenReturn(this.context);
+        when(this.context.getWikiId()).thenReturn("xwiki");
+        // The copies of the object are the object itself, unless stated otherwise.
+        this.object = mockObject();
+        XWikiDocument document = this.object.getOwnerDocument();
+        when(document.clone()).thenReturn(document);
+        when(document.getXObject(XCLASS, 0)).thenReturn(this.object);
+    }
+
+    private BaseObject mockObject()
+    {
+        BaseObject baseObject = mock(BaseObject.class);
+        when(baseObject.getDocumentReference()).thenReturn(HOLDER);
+        when(baseObject.getXClassReference()).thenReturn(XCLASS);
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(baseObject.getOwnerDocument()).thenReturn(document);
+        return baseObject;
+    }
+
+    private <T> Function<T, Optional<BaseObject>> loader(BaseObject result)
+    {
+        return reference -> {
+            this.loadCount.incrementAndGet();
+            return Optional.ofNullable(result);
+        };
+    }
+
+    @Test
+    void getLoadsOnce()
+    {
+        assertSame(this.object, this.identityMap.get(DISCUSSION, loader(this.object)).get());
+        assertSame(this.object, this.identityMap.get(DISCUSSION, loader(this.object)).get());
+        assertEquals(1, this.loadCount.get());
+
+        // References of different types are distinct even with the same values.
+        this.identityMap.get(new MessageReference("hint", "D1"), loader(this.object));
+        assertEquals(2, this.loadCount.get());
+    }
+
+    @Test
+    void getDoesNotKeepMissingObjects()
+    {
+        assertEquals(Optional.empty(), this.identityMap.get(DISCUSSION, loader(null)));
+        assertSame(this.object, this.identityMap.get(DISCUSSION, loader(this.object)).get());
+        assertEquals(2, this.loadCount.get());
+    }
+
+    @Test
+    void putAndRemove()
+    {
+        this.identityMap.put(DISCUSSION, this.object);
+        assertSame(this.object, this.identityMap.get(DISCUSSION, loader(null)).get());
+        assertEquals(0, this.loadCount.get());
+
+        this.identityMap.remove(DISCUSSION);
+        this.identityMap.get(DISCUSSION, loader(this.object));
+        assertEquals(1, this.loadCount.get());
+
+        this.identityMap.remove(HOLDER);
+        this.identityMap.get(DISCUSSION, loader(this.object));
+        assertEquals(2, this.loadCount.get());
+    }
+
+    @Test
+    void getReturnsCopies()
+    {
+        BaseObject stored = mockObject();
+        BaseObject copy = mockObject();
+        XWikiDocument copyDocument = copy.getOwnerDocument();
+        when(stored.getOwnerDocument().clone()).thenReturn(copyDocument);
+        when(copyDocument.clone()).thenReturn(copyDocument);
+        when(copyDocument.getXObject(XCLASS, 0)).thenReturn(copy);
+
+        this.identityMap.put(DISCUSSION, stored);
+        BaseObject result = this.identityMap.get(DISCUSSION, loader(null)).get();
+        assertNotSame(stored, result);
+        assertSame(copy, result);
+    }
+
+    @Test
+    void getCopiesLoadedObjectOnce()
+    {
+        this.identityMap.get(DISCUSSION, loader(this.object));
+        verify(this.object.getOwnerDocument()).clone();
+
+        when(this.execution.getContext()).thenReturn(null);
+        this.identityMap.get(DISCUSSION, loader(this.object));
+        verify(this.object.getOwnerDocument(), times(2)).clone();
+    }
+
+    @Test
+    void getPerWiki()
+    {
+        this.identityMap.get(DISCUSSION, loader(this.object));
+        when(this.context.getWikiId()).thenReturn("subwiki");
+        this.identityMap.get(DISCUSSION, loader(this.object));
+        assertEquals(2, this.loadCount.get());
+    }
+
+    @Test
+    void getWithoutExecutionContext()
+    {
+        when(this.execution.getContext()).thenReturn(null);
+
+        this.identityMap.put(DISCUSSION, this.object);
+        this.identityMap.get(DISCUSSION, loader(this.object));
+        this.identityMap.get(DISCUSSION, loader(this.object));
+        assertEquals(2, this.loadCount.get());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.discussions.store.internal;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link TimeOrderedPageHolderIdGenerator}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class TimeOrderedPageHolderIdGeneratorTest
+{
+    @InjectMockComponents
+    private TimeOrderedPageHolderIdGenerator generator;
+
+    @Test
+    void generate()
+    {
+        long before = System.currentTimeMillis();
+        String previous = this.generator.generate();
+        assertEquals(26, previous.length());
+        assertTrue(previous.matches("[0-9A-HJKMNP-TV-Z]{26}"));
+        // The first characters encode the creation time.
+        assertTrue(previous.substring(0, 10).compareTo(encodeTime(before)) >= 0);
+
+        for (int i = 0; i < 10000; i++) {
+            String next = this.generator.generate();
+            assertTrue(next.compareTo(previous) > 0, String.format("[%s] is not after [%s]", next, previous));
+            previous = next;
+        }
+    }
+
+    private String encodeTime(long time)
+    {
+        String alphabet = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+        StringBuilder builder = new StringBuilder();
+        long value = time;
+        for (int i = 0; i < 10; i++) {
+            builder.insert(0, alphabet.charAt((int) (value & 0x1F)));
+            value >>>= 5;
+        }
+        return builder.toString();
+    }
+}